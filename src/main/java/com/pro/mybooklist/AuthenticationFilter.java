@@ -13,14 +13,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
-import com.pro.mybooklist.model.User;
-import com.pro.mybooklist.model.UserRepository;
 import com.pro.mybooklist.service.AuthenticationService;
+import com.pro.mybooklist.service.PrincipalCache;
 
 @Component
 public class AuthenticationFilter extends OncePerRequestFilter {
@@ -28,7 +26,7 @@ public class AuthenticationFilter extends OncePerRequestFilter {
 	private AuthenticationService jwtService;
 	
 	@Autowired
-	private UserRepository urepository;
+	private PrincipalCache principalCache;
 	
 	@Override
 	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws IOException, ServletException {
@@ -38,16 +36,13 @@ public class AuthenticationFilter extends OncePerRequestFilter {
 		if (jws != null) {
 			String user = jwtService.getAuthUser(request);
 			
-			Optional<User> curruser = urepository.findByUsername(user);
+			Optional<MyUser> curruser = principalCache.getPrincipal(user);
 			
 			Authentication authentication;
 			
 			if (curruser.isPresent()) {
-				boolean enabled = curruser.get().isAccountVerified();
-				MyUser myUser = new MyUser(curruser.get().getId(), user,
-						curruser.get().getPassword(), enabled, true, true, true,
-						AuthorityUtils.createAuthorityList(curruser.get().getRole()));
-				authentication = new UsernamePasswordAuthenticationToken(myUser, null, AuthorityUtils.createAuthorityList(curruser.get().getRole()));
+				MyUser myUser = curruser.get();
+				authentication = new UsernamePasswordAuthenticationToken(myUser, null, myUser.getAuthorities());
 			} else {
 				authentication = new UsernamePasswordAuthenticationToken(12, null, Collections.emptyList());
 			}
@@ -1,5 +1,7 @@
 package com.pro.mybooklist;
 
+import java.util.List;
+
 import com.pro.mybooklist.model.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
@@ -47,11 +49,7 @@ public class MybooklistApplication {
 			Category romance = new Category("Romance");
 			Category horror = new Category("Horror");
 			Category adventure = new Category("Adventure");
-			crepository.save(thriller);
-			crepository.save(sciFi);
-			crepository.save(romance);
-			crepository.save(horror);
-			crepository.save(adventure);
+			crepository.saveAll(List.of(thriller, sciFi, romance, horror, adventure));
 
 			Book book1 = new Book("Great Gatsby", "Scott Fitzgerald", "123GPA123", 1925, 10.9,
 					romance, "https://firebasestorage.googleapis.com/v0/b/mytest-585af.appspot.com/o/covers%2Fddd.webp?alt=media&token=d7f8f06b-86a3-41b9-a5d5-5e05ae1858ad");
@@ -108,32 +106,9 @@ public class MybooklistApplication {
 	
 			
 
-			repository.save(book1);
-			repository.save(book2);
-			repository.save(book3);
-			repository.save(book4);
-			repository.save(book5);
-			repository.save(book6);
-			repository.save(book7);
-			repository.save(book8);
-			repository.save(book9);
-			repository.save(book10);
-			repository.save(book11);
-			repository.save(book12);
-			repository.save(book13);
-			repository.save(book14);
-			repository.save(book15);
-			repository.save(book16);
-			repository.save(book17);
-			repository.save(book18);
-			repository.save(book19);
-			repository.save(book20);
-			repository.save(book21);
-			repository.save(book22);
-			repository.save(book23);
-			repository.save(book24);
-			repository.save(book25);
-			repository.save(book26);
+			repository.saveAll(List.of(book1, book2, book3, book4, book5, book6, book7, book8, book9,
+					book10, book11, book12, book13, book14, book15, book16, book17, book18,
+					book19, book20, book21, book22, book23, book24, book25, book26));
 			
 			String password = "test";
 			BCryptPasswordEncoder bc = new BCryptPasswordEncoder();
@@ -148,53 +123,51 @@ public class MybooklistApplication {
 			User newUser2 = new User("Second", "userRole", "user2", hashPwd, "USER", "mymail232@gmail.com", true);
 			User newAdmin = new User("First", "Admin", "admin", hashPwd, "ADMIN", "mymail2@gmail.com", true);
 			
-			urepository.save(newUser1);
-			urepository.save(newAdmin);
-			urepository.save(newUser2);
+			urepository.saveAll(List.of(newUser1, newAdmin, newUser2));
 			
 			Cart currentCartUser1 = new Cart(true, newUser1);
 			Cart currentCartUser2 = new Cart(true, newUser2);
 			Cart currentCartAdmin = new Cart(true, newAdmin);
-			barepository.save(currentCartUser1);
-			barepository.save(currentCartUser2);
-			barepository.save(currentCartAdmin);
+			barepository.saveAll(List.of(currentCartUser1, currentCartUser2, currentCartAdmin));
 
 			Cart cart1User1 = new Cart(false, newUser1);
 			Cart cart1Admin = new Cart(false, newAdmin);
 			Cart cart2Admin = new Cart(false, newAdmin);
 			
-			barepository.save(cart1User1);
-			barepository.save(cart1Admin);
-			barepository.save(cart2Admin);
+			barepository.saveAll(List.of(cart1User1, cart1Admin, cart2Admin));
 			
 			
-			bbrepository.save(new CartBook(3, cart1User1, book1));
-			bbrepository.save(new CartBook(3, cart1User1, book2));
-			bbrepository.save(new CartBook(2, cart1User1, book3));
-			bbrepository.save(new CartBook(1, cart1User1, book4));
-			bbrepository.save(new CartBook(3, cart1User1, book5));
-			bbrepository.save(new CartBook(2, cart1User1, book6));
-			bbrepository.save(new CartBook(1, cart1User1, book7));
-			bbrepository.save(new CartBook(4, cart1User1, book8));
-			bbrepository.save(new CartBook(3, cart1User1, book9));
-			bbrepository.save(new CartBook(4, cart1User1, book10));
+			bbrepository.saveAll(List.of(
+					new CartBook(3, cart1User1, book1),
+					new CartBook(3, cart1User1, book2),
+					new CartBook(2, cart1User1, book3),
+					new CartBook(1, cart1User1, book4),
+					new CartBook(3, cart1User1, book5),
+					new CartBook(2, cart1User1, book6),
+					new CartBook(1, cart1User1, book7),
+					new CartBook(4, cart1User1, book8),
+					new CartBook(3, cart1User1, book9),
+					new CartBook(4, cart1User1, book10),
 
-			
-			bbrepository.save(new CartBook(1, cart1Admin, book2));
-			bbrepository.save(new CartBook(3, cart1Admin, book11));
-			bbrepository.save(new CartBook(2, cart1Admin, book4));
-			bbrepository.save(new CartBook(1, cart1Admin, book5));
-			bbrepository.save(new CartBook(3, cart1Admin, book7));
-			bbrepository.save(new CartBook(2, cart1Admin, book8));
-			bbrepository.save(new CartBook(1, cart1Admin, book9));
-			bbrepository.save(new CartBook(4, cart1Admin, book10));
-			bbrepository.save(new CartBook(3, cart1Admin, book12));
-			bbrepository.save(new CartBook(4, cart1Admin, book13));
-			bbrepository.save(new CartBook(1, cart1Admin, book14));
-			bbrepository.save(new CartBook(2, cart1Admin, book15));
-			
-			bbrepository.save(new CartBook(1, cart2Admin, book14));
-			bbrepository.save(new CartBook(2, cart2Admin, book15));
+					new CartBook(1, cart1Admin, book2),
+					new CartBook(3, cart1Admin, book11),
+					new CartBook(2, cart1Admin, book4),
+					new CartBook(1, cart1Admin, book5),
+					new CartBook(3, cart1Admin, book7),
+					new CartBook(2, cart1Admin, book8),
+					new CartBook(1, cart1Admin, book9),
+					new CartBook(4, cart1Admin, book10),
+					new CartBook(3, cart1Admin, book12),
+					new CartBook(4, cart1Admin, book13),
+					new CartBook(1, cart1Admin, book14),
+					new CartBook(2, cart1Admin, book15),
+
+					new CartBook(1, cart2Admin, book14),
+					new CartBook(2, cart2Admin, book15)));
+
+			barepository.refreshTotals(cart1User1.getCartid());
+			barepository.refreshTotals(cart1Admin.getCartid());
+			barepository.refreshTotals(cart2Admin.getCartid());
 			
 			orepository.save(new Order("First", "Admin", "Finland", "Helsinki", "Juustenintie 3J 110", "00410", "In progress", "mymail@mail.com", cart1Admin, hashPwd));
 			orepository.save(new Order("First", "Userok","Jiji", "Hur", "Mesti 28 177", "511120", "In progress", "mymail2@mail.com", cart1User1, hashPwd));
@@ -0,0 +1,292 @@
+package com.pro.mybooklist;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.pro.mybooklist.model.Book;
+import com.pro.mybooklist.model.BookRepository;
+import com.pro.mybooklist.model.Cart;
+import com.pro.mybooklist.model.CartBookKey;
+import com.pro.mybooklist.model.CartBookRepository;
+import com.pro.mybooklist.model.CartRepository;
+import com.pro.mybooklist.model.CategoryRepository;
+import com.pro.mybooklist.model.MailOutboxRepository;
+import com.pro.mybooklist.model.Order;
+import com.pro.mybooklist.model.OrderLine;
+import com.pro.mybooklist.model.OrderLineRepository;
+import com.pro.mybooklist.model.OrderRepository;
+import com.pro.mybooklist.model.UserRepository;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.NamedNativeQuery;
+
+// Start up check of the query plans. Every native query of the repositories,
+// including the named ones declared on the entities, is EXPLAINed with
+// placeholder parameters. The derived and JPQL queries are run once with
+// placeholder arguments in a transaction that is rolled back, and the SQL
+// Hibernate sends for them is recorded and EXPLAINed with null parameters.
+// The start up fails if a plan reads a whole table. H2 marks such a read with
+// "tableScan" in the plan.
+//
+// The check is off by default, the test build turns it on with
+// schema.plan-check.enabled=true. It runs the modifying and the FOR UPDATE
+// queries too, only rolled back, so it refuses to run against anything but
+// an in-memory H2 database.
+@Component
+public class QueryPlanCheck {
+	private static final String FULL_SCAN_MARKER = "tableScan";
+	private static final Pattern PARAMETER = Pattern.compile("\\?(\\d+)");
+	private static final String IN_MEMORY_URL_PREFIX = "jdbc:h2:mem:";
+
+	private static final List<Class<?>> REPOSITORIES = List.of(BookRepository.class, CartRepository.class,
+			CartBookRepository.class, OrderRepository.class, OrderLineRepository.class, UserRepository.class,
+			CategoryRepository.class, MailOutboxRepository.class);
+
+	private static final List<Class<?>> ENTITIES = List.of(Book.class, Cart.class, Order.class, OrderLine.class);
+
+	// The queries that read a whole table by design:
+	// - findTopSales and findSales aggregate all the closed carts, only when the
+	// top sales ranking is rebuilt.
+	// - The findAll of the books and of the orders list all of them, for the
+	// catalog cache and the admin.
+	// - findByName of the categories has no index. The application doesn't use
+	// it and the category table holds a handful of rows.
+	private static final Set<String> FULL_SCAN_QUERIES = Set.of("BookRepository.findTopSales",
+			"BookRepository.findSales", "BookRepository.findAll", "OrderRepository.findAll",
+			"CategoryRepository.findByName");
+
+	private static final StatementCapture STATEMENT_CAPTURE = new StatementCapture();
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private ApplicationContext applicationContext;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Value("${schema.plan-check.enabled:false}")
+	private boolean enabled;
+
+	// Every statement Hibernate prepares goes through the capture, it records
+	// them only while the check runs a query on the current thread:
+	@Bean
+	public static HibernatePropertiesCustomizer queryPlanCheckStatementInspector() {
+		return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, STATEMENT_CAPTURE);
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void checkOnStartup() {
+		if (!enabled)
+			return;
+
+		String url = jdbcTemplate.execute((ConnectionCallback<String>) connection -> connection.getMetaData().getURL());
+		if (url == null || !url.startsWith(IN_MEMORY_URL_PREFIX))
+			throw new IllegalStateException(
+					"The query plan check runs only against an in-memory H2 database, not " + url);
+
+		List<String> fullScans = new ArrayList<>();
+
+		for (Map.Entry<String, PreparedQuery> query : this.findQueries().entrySet()) {
+			PreparedQuery preparedQuery = query.getValue();
+			for (String sql : preparedQuery.sqls()) {
+				Object[] parameters = preparedQuery.parameters() != null ? preparedQuery.parameters()
+						: new Object[this.countParameters(sql)];
+				List<String> plan = jdbcTemplate.queryForList("EXPLAIN " + sql, String.class, parameters);
+
+				if (String.join(" ", plan).contains(FULL_SCAN_MARKER))
+					fullScans.add(query.getKey() + ": " + String.join(" ", plan));
+			}
+		}
+
+		if (!fullScans.isEmpty())
+			throw new IllegalStateException("Repository queries planned with a full table scan:\n"
+					+ String.join("\n", fullScans));
+	}
+
+	private Map<String, PreparedQuery> findQueries() {
+		Map<String, PreparedQuery> queries = new LinkedHashMap<>();
+		Map<String, String> namedQueries = new HashMap<>();
+
+		for (Class<?> entity : ENTITIES) {
+			for (NamedNativeQuery namedQuery : entity.getAnnotationsByType(NamedNativeQuery.class))
+				namedQueries.put(namedQuery.name(), namedQuery.query());
+		}
+
+		for (Class<?> repository : REPOSITORIES) {
+			for (Method method : repository.getDeclaredMethods()) {
+				Query query = method.getAnnotation(Query.class);
+				String name = repository.getSimpleName() + "." + method.getName();
+
+				if (method.isBridge() || FULL_SCAN_QUERIES.contains(name))
+					continue;
+
+				if (query == null || !query.nativeQuery()) {
+					queries.put(name, new PreparedQuery(this.captureSql(repository, method), null));
+					continue;
+				}
+
+				String sql = query.value().isEmpty() ? namedQueries.get(query.name()) : query.value();
+				queries.put(name, this.prepare(sql, method.getGenericParameterTypes()));
+			}
+		}
+
+		return queries;
+	}
+
+	// Runs the derived or JPQL query with placeholder arguments and returns the
+	// SQL sent for it. The transaction is rolled back, so the modifying queries
+	// change nothing:
+	private List<String> captureSql(Class<?> repository, Method method) {
+		Object repositoryBean = applicationContext.getBean(repository);
+		List<String> statements = new ArrayList<>();
+
+		transactionTemplate.executeWithoutResult(status -> {
+			status.setRollbackOnly();
+			Object[] arguments = new Object[method.getParameterCount()];
+			for (int i = 0; i < arguments.length; i++) {
+				arguments[i] = this.argumentOf(method.getGenericParameterTypes()[i]);
+			}
+
+			STATEMENT_CAPTURE.start();
+			try {
+				method.invoke(repositoryBean, arguments);
+				entityManager.flush();
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				throw new IllegalStateException(
+						"Could not run " + repository.getSimpleName() + "." + method.getName(), e);
+			} finally {
+				statements.addAll(STATEMENT_CAPTURE.stop());
+			}
+		});
+
+		return statements;
+	}
+
+	private Object argumentOf(Type type) {
+		if (type instanceof ParameterizedType parameterizedType
+				&& Collection.class.isAssignableFrom((Class<?>) parameterizedType.getRawType()))
+			return List.of(this.argumentOf(parameterizedType.getActualTypeArguments()[0]));
+
+		Class<?> parameterClass = (Class<?>) type;
+		if (parameterClass.isAnnotationPresent(Entity.class))
+			return entityManager.getReference(parameterClass, 0L);
+		if (parameterClass == CartBookKey.class)
+			return new CartBookKey(0L, 0L);
+		if (parameterClass == Limit.class)
+			return Limit.of(1);
+		if (parameterClass == Pageable.class)
+			return PageRequest.of(0, 1);
+		if (parameterClass == LocalDateTime.class)
+			return LocalDateTime.now();
+
+		return this.placeholderOf(parameterClass);
+	}
+
+	private int countParameters(String sql) {
+		return (int) sql.chars().filter(c -> c == '?').count();
+	}
+
+	// The ?N parameters are changed to JDBC ones and bound to placeholder
+	// values of their types. A collection parameter (IN ?N) is checked as a
+	// list of one element of its element type:
+	private PreparedQuery prepare(String sql, Type[] parameterTypes) {
+		List<Object> parameters = new ArrayList<>();
+		Matcher matcher = PARAMETER.matcher(sql);
+		StringBuilder jdbcSql = new StringBuilder();
+
+		while (matcher.find()) {
+			Type parameterType = parameterTypes[Integer.parseInt(matcher.group(1)) - 1];
+			if (parameterType instanceof ParameterizedType parameterizedType
+					&& Collection.class.isAssignableFrom((Class<?>) parameterizedType.getRawType())) {
+				parameters.add(this.placeholderOf((Class<?>) parameterizedType.getActualTypeArguments()[0]));
+				matcher.appendReplacement(jdbcSql, "(?)");
+				continue;
+			}
+
+			parameters.add(this.placeholderOf((Class<?>) parameterType));
+			matcher.appendReplacement(jdbcSql, "?");
+		}
+		matcher.appendTail(jdbcSql);
+
+		return new PreparedQuery(List.of(jdbcSql.toString()), parameters.toArray());
+	}
+
+	private Object placeholderOf(Class<?> type) {
+		if (type == Long.class || type == long.class)
+			return 0L;
+		if (type == Integer.class || type == int.class)
+			return 1;
+		if (type == LocalDate.class)
+			return LocalDate.now();
+
+		return "";
+	}
+
+	// The parameters are null for the recorded SQL, whose parameters are bound
+	// to nulls:
+	private record PreparedQuery(List<String> sqls, Object[] parameters) {
+	}
+
+	// Records the SQL of the statements prepared on the thread between start
+	// and stop, and leaves it unchanged:
+	private static class StatementCapture implements StatementInspector {
+		private static final long serialVersionUID = 1L;
+
+		private final transient ThreadLocal<List<String>> statements = new ThreadLocal<>();
+
+		@Override
+		public String inspect(String sql) {
+			List<String> recorded = statements.get();
+			if (recorded != null)
+				recorded.add(sql);
+			return sql;
+		}
+
+		void start() {
+			statements.set(new ArrayList<>());
+		}
+
+		List<String> stop() {
+			List<String> recorded = statements.get();
+			statements.remove();
+			return recorded;
+		}
+	}
+}
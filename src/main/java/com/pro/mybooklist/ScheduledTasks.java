@@ -2,15 +2,15 @@ package com.pro.mybooklist;
 
 import java.time.LocalDate;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
-
-import jakarta.transaction.Transactional;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import com.pro.mybooklist.model.Cart;
+import com.pro.mybooklist.model.CartBookRepository;
 import com.pro.mybooklist.model.CartRepository;
 
 @Component
@@ -18,19 +18,73 @@ public class ScheduledTasks {
 	@Autowired
 	private CartRepository barepository;
 
-	@Scheduled(fixedRate = 1, timeUnit = TimeUnit.DAYS)
-	@Transactional
+	@Autowired
+	private CartBookRepository bbrepository;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Value("${cart.sweep.batch-size:500}")
+	private int batchSize;
+
+	private final AtomicLong sweeps = new AtomicLong();
+	private final AtomicLong deletedCarts = new AtomicLong();
+	private final AtomicLong lastSweepDeletedCarts = new AtomicLong();
+	private final AtomicLong lastSweepBatches = new AtomicLong();
+	private final AtomicLong lastSweepMillis = new AtomicLong();
+
+	// Expired anonymous carts are deleted in batches, each batch is committed
+	// separately so the sweep never holds a long lock or loads all the carts:
+	@Scheduled(cron = "${cart.sweep.cron:0 0 3 * * *}")
 	public void deleteUnusedCarts() {
-		List<Cart> carts = (List<Cart>) barepository.findAll();
-		
-		if (carts.size() > 0) {
-			for (int i = 0; i < carts.size(); i++) {
-				if (carts.get(i).getUser() == null && carts.get(i).isCurrent()) {
-					if (LocalDate.now().isAfter(LocalDate.parse(carts.get(i).getExpiryDate()))) {
-						barepository.delete(carts.get(i));
-					}
-				}
-			}
-		}
+		long start = System.currentTimeMillis();
+		LocalDate today = LocalDate.now();
+		long deletedInSweep = 0;
+		long batches = 0;
+		int deletedInBatch;
+
+		do {
+			deletedInBatch = transactionTemplate.execute(status -> this.deleteExpiredCartsBatch(today));
+			deletedInSweep += deletedInBatch;
+			deletedCarts.addAndGet(deletedInBatch);
+			if (deletedInBatch > 0)
+				batches++;
+		} while (deletedInBatch == batchSize);
+
+		sweeps.incrementAndGet();
+		lastSweepDeletedCarts.set(deletedInSweep);
+		lastSweepBatches.set(batches);
+		lastSweepMillis.set(System.currentTimeMillis() - start);
+	}
+
+	private int deleteExpiredCartsBatch(LocalDate today) {
+		List<Long> expiredCartIds = barepository.findExpiredNoUserCartIds(today, batchSize);
+		if (expiredCartIds.isEmpty())
+			return 0;
+
+		bbrepository.deleteByCartids(expiredCartIds);
+		barepository.deleteByCartids(expiredCartIds);
+
+		return expiredCartIds.size();
+	}
+
+	public long getSweeps() {
+		return sweeps.get();
+	}
+
+	public long getDeletedCarts() {
+		return deletedCarts.get();
+	}
+
+	public long getLastSweepDeletedCarts() {
+		return lastSweepDeletedCarts.get();
+	}
+
+	public long getLastSweepBatches() {
+		return lastSweepBatches.get();
+	}
+
+	public long getLastSweepMillis() {
+		return lastSweepMillis.get();
 	}
 }
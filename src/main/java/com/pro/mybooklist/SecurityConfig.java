@@ -14,7 +14,6 @@ import org.springframework.security.config.annotation.authentication.configurati
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
@@ -46,12 +45,12 @@ public class SecurityConfig {
 				.authorizeHttpRequests((authorizeHttpRequests) -> authorizeHttpRequests
 						.requestMatchers(SWAGGER_PATHS).permitAll()
 						.requestMatchers("/error/**").permitAll()
-						.requestMatchers(HttpMethod.GET, "/books/*", "/books", "/categories", "/topsales", "/booksinorder/*", "/getordertotal/*", "/orders/*", "/booksids/*", "/api/books", "/api/categories").permitAll()
-						.requestMatchers(HttpMethod.POST, "/login", "/signup", "/booksbycategory", "/addbook/*", "/createcart", "/makesale", "/orderbypassword", "/showcart", "/totalofcart", "/checkordernumber").permitAll()
+						.requestMatchers(HttpMethod.GET, "/books/*", "/books", "/bookspage", "/search", "/autocomplete", "/filterbooks", "/categories", "/topsales", "/booksinorder/*", "/getordertotal/*", "/orders/*", "/booksids/*", "/api/books", "/api/categories").permitAll()
+						.requestMatchers(HttpMethod.POST, "/login", "/signup", "/booksbycategory", "/addbook/*", "/changebooks/*", "/createcart", "/carttoken", "/makesale", "/orderbypassword", "/showcart", "/cartview", "/totalofcart", "/checkordernumber").permitAll()
 						.requestMatchers(HttpMethod.PUT, "/reduceitemnoauth/*", "/verify", "/resetpassword").permitAll()
 						.requestMatchers(HttpMethod.DELETE, "/deletebook/*").permitAll()
-						.requestMatchers(HttpMethod.GET, "/users/*", "/showcart/*", "/booksids", "/getcurrenttotal", "/currentcartquantity", "/users/*/orders").authenticated()
-						.requestMatchers(HttpMethod.POST, "/additem/*", "/makesale/*").authenticated()
+						.requestMatchers(HttpMethod.GET, "/users/*", "/showcart/*", "/booksids", "/getcurrenttotal", "/cartview", "/currentcartquantity", "/users/*/orders").authenticated()
+						.requestMatchers(HttpMethod.POST, "/additem/*", "/changeitems", "/makesale/*").authenticated()
 						.requestMatchers(HttpMethod.PUT, "/updateuser/*", "/reduceitem/*", "/changepassword").authenticated()
 						.requestMatchers(HttpMethod.DELETE, "/clearcart/*", "/deleteitem/*").authenticated()
 						.anyRequest().hasAuthority("ADMIN"))
@@ -61,16 +60,13 @@ public class SecurityConfig {
 		return http.build();
 	}
 	
+	// The PasswordEncoder is the PasswordHashingService, so the logins are
+	// hashed within its concurrency limit:
 	@Autowired
-	public void configureGlobal(AuthenticationManagerBuilder auth) throws Exception {
-		auth.userDetailsService(userDetailsService).passwordEncoder(new BCryptPasswordEncoder());
+	public void configureGlobal(AuthenticationManagerBuilder auth, PasswordEncoder passwordEncoder) throws Exception {
+		auth.userDetailsService(userDetailsService).passwordEncoder(passwordEncoder);
 	}
 	
-	@Bean
-	public PasswordEncoder passwordEncoder() {
-		return new BCryptPasswordEncoder();
-	}
-
 	@Bean
 	public AuthenticationManager authenticationManager(AuthenticationConfiguration authConfig) throws Exception {
 		return authConfig.getAuthenticationManager();
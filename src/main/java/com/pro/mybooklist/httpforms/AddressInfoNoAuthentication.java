@@ -11,6 +11,7 @@ public class AddressInfoNoAuthentication {
 	private String note;
 	private Long cartid;
 	private String password;
+	private String token;
 
 	public AddressInfoNoAuthentication() {
 	}
@@ -108,4 +109,12 @@ public class AddressInfoNoAuthentication {
 	public void setPassword(String password) {
 		this.password = password;
 	}
+
+	public String getToken() {
+		return token;
+	}
+
+	public void setToken(String token) {
+		this.token = token;
+	}
 }
@@ -0,0 +1,27 @@
+package com.pro.mybooklist.httpforms;
+
+public class AutocompleteSuggestion {
+	private String text;
+	private String type;
+
+	public AutocompleteSuggestion() {}
+
+	public AutocompleteSuggestion(String text, String type) {
+		super();
+		this.text = text;
+		this.type = type;
+	}
+
+	public String getText() {
+		return text;
+	}
+	public void setText(String text) {
+		this.text = text;
+	}
+	public String getType() {
+		return type;
+	}
+	public void setType(String type) {
+		this.type = type;
+	}
+}
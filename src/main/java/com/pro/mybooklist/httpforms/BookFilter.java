@@ -0,0 +1,69 @@
+package com.pro.mybooklist.httpforms;
+
+import java.util.List;
+
+public class BookFilter {
+	private Double minPrice, maxPrice;
+	private Integer minYear, maxYear;
+	private List<Long> categoryid;
+	private List<String> author;
+	private String sort;
+	private Integer page, size;
+
+	public BookFilter() {}
+
+	public Double getMinPrice() {
+		return minPrice;
+	}
+	public void setMinPrice(Double minPrice) {
+		this.minPrice = minPrice;
+	}
+	public Double getMaxPrice() {
+		return maxPrice;
+	}
+	public void setMaxPrice(Double maxPrice) {
+		this.maxPrice = maxPrice;
+	}
+	public Integer getMinYear() {
+		return minYear;
+	}
+	public void setMinYear(Integer minYear) {
+		this.minYear = minYear;
+	}
+	public Integer getMaxYear() {
+		return maxYear;
+	}
+	public void setMaxYear(Integer maxYear) {
+		this.maxYear = maxYear;
+	}
+	public List<Long> getCategoryid() {
+		return categoryid;
+	}
+	public void setCategoryid(List<Long> categoryid) {
+		this.categoryid = categoryid;
+	}
+	public List<String> getAuthor() {
+		return author;
+	}
+	public void setAuthor(List<String> author) {
+		this.author = author;
+	}
+	public String getSort() {
+		return sort;
+	}
+	public void setSort(String sort) {
+		this.sort = sort;
+	}
+	public Integer getPage() {
+		return page;
+	}
+	public void setPage(Integer page) {
+		this.page = page;
+	}
+	public Integer getSize() {
+		return size;
+	}
+	public void setSize(Integer size) {
+		this.size = size;
+	}
+}
@@ -0,0 +1,64 @@
+package com.pro.mybooklist.httpforms;
+
+import java.util.List;
+
+import com.pro.mybooklist.sqlforms.BookSummary;
+
+public class BookFilterPage {
+	private List<BookSummary> books;
+	private long total;
+	private int page;
+	private int size;
+	private List<FacetCount> categories;
+	private List<FacetCount> authors;
+
+	public BookFilterPage() {}
+
+	public BookFilterPage(List<BookSummary> books, long total, int page, int size, List<FacetCount> categories,
+			List<FacetCount> authors) {
+		super();
+		this.books = books;
+		this.total = total;
+		this.page = page;
+		this.size = size;
+		this.categories = categories;
+		this.authors = authors;
+	}
+
+	public List<BookSummary> getBooks() {
+		return books;
+	}
+	public void setBooks(List<BookSummary> books) {
+		this.books = books;
+	}
+	public long getTotal() {
+		return total;
+	}
+	public void setTotal(long total) {
+		this.total = total;
+	}
+	public int getPage() {
+		return page;
+	}
+	public void setPage(int page) {
+		this.page = page;
+	}
+	public int getSize() {
+		return size;
+	}
+	public void setSize(int size) {
+		this.size = size;
+	}
+	public List<FacetCount> getCategories() {
+		return categories;
+	}
+	public void setCategories(List<FacetCount> categories) {
+		this.categories = categories;
+	}
+	public List<FacetCount> getAuthors() {
+		return authors;
+	}
+	public void setAuthors(List<FacetCount> authors) {
+		this.authors = authors;
+	}
+}
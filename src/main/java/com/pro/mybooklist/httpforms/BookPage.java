@@ -0,0 +1,39 @@
+package com.pro.mybooklist.httpforms;
+
+import java.util.List;
+
+import com.pro.mybooklist.sqlforms.BookSummary;
+
+public class BookPage {
+	private List<BookSummary> books;
+	private Long nextAfterId;
+	private String nextAfterTitle;
+
+	public BookPage() {}
+
+	public BookPage(List<BookSummary> books, Long nextAfterId, String nextAfterTitle) {
+		super();
+		this.books = books;
+		this.nextAfterId = nextAfterId;
+		this.nextAfterTitle = nextAfterTitle;
+	}
+
+	public List<BookSummary> getBooks() {
+		return books;
+	}
+	public void setBooks(List<BookSummary> books) {
+		this.books = books;
+	}
+	public Long getNextAfterId() {
+		return nextAfterId;
+	}
+	public void setNextAfterId(Long nextAfterId) {
+		this.nextAfterId = nextAfterId;
+	}
+	public String getNextAfterTitle() {
+		return nextAfterTitle;
+	}
+	public void setNextAfterTitle(String nextAfterTitle) {
+		this.nextAfterTitle = nextAfterTitle;
+	}
+}
@@ -4,6 +4,7 @@ public class BookQuantityInfo {
 	private int quantity;
 	private Long bookid;
 	private String password;
+	private String token;
 	
 	public BookQuantityInfo() {}
 	
@@ -13,6 +14,14 @@ public class BookQuantityInfo {
 		this.bookid = bookid;
 		this.password = password;
 	}
+	
+	public BookQuantityInfo(int quantity, Long bookid, String password, String token) {
+		super();
+		this.quantity = quantity;
+		this.bookid = bookid;
+		this.password = password;
+		this.token = token;
+	}
 
 	public int getQuantity() {
 		return quantity;
@@ -32,4 +41,10 @@ public class BookQuantityInfo {
 	public void setPassword(String password) {
 		this.password = password;
 	}
+	public String getToken() {
+		return token;
+	}
+	public void setToken(String token) {
+		this.token = token;
+	}
 }
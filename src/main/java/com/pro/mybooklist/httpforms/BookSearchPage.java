@@ -0,0 +1,47 @@
+package com.pro.mybooklist.httpforms;
+
+import java.util.List;
+
+import com.pro.mybooklist.sqlforms.BookSummary;
+
+public class BookSearchPage {
+	private List<BookSummary> books;
+	private long total;
+	private int page;
+	private int size;
+
+	public BookSearchPage() {}
+
+	public BookSearchPage(List<BookSummary> books, long total, int page, int size) {
+		super();
+		this.books = books;
+		this.total = total;
+		this.page = page;
+		this.size = size;
+	}
+
+	public List<BookSummary> getBooks() {
+		return books;
+	}
+	public void setBooks(List<BookSummary> books) {
+		this.books = books;
+	}
+	public long getTotal() {
+		return total;
+	}
+	public void setTotal(long total) {
+		this.total = total;
+	}
+	public int getPage() {
+		return page;
+	}
+	public void setPage(int page) {
+		this.page = page;
+	}
+	public int getSize() {
+		return size;
+	}
+	public void setSize(int size) {
+		this.size = size;
+	}
+}
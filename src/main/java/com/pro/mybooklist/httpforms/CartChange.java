@@ -0,0 +1,27 @@
+package com.pro.mybooklist.httpforms;
+
+public class CartChange {
+	private Long bookid;
+	private int delta;
+	
+	public CartChange() {}
+	
+	public CartChange(Long bookid, int delta) {
+		super();
+		this.bookid = bookid;
+		this.delta = delta;
+	}
+
+	public Long getBookid() {
+		return bookid;
+	}
+	public void setBookid(Long bookid) {
+		this.bookid = bookid;
+	}
+	public int getDelta() {
+		return delta;
+	}
+	public void setDelta(int delta) {
+		this.delta = delta;
+	}
+}
@@ -0,0 +1,42 @@
+package com.pro.mybooklist.httpforms;
+
+import java.util.List;
+
+public class CartChangesInfo {
+	private List<CartChange> changes;
+	private String password;
+	private String token;
+	
+	public CartChangesInfo() {}
+	
+	public CartChangesInfo(List<CartChange> changes) {
+		super();
+		this.changes = changes;
+	}
+	
+	public CartChangesInfo(List<CartChange> changes, String password, String token) {
+		super();
+		this.changes = changes;
+		this.password = password;
+		this.token = token;
+	}
+
+	public List<CartChange> getChanges() {
+		return changes;
+	}
+	public void setChanges(List<CartChange> changes) {
+		this.changes = changes;
+	}
+	public String getPassword() {
+		return password;
+	}
+	public void setPassword(String password) {
+		this.password = password;
+	}
+	public String getToken() {
+		return token;
+	}
+	public void setToken(String token) {
+		this.token = token;
+	}
+}
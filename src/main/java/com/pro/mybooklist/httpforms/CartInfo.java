@@ -3,6 +3,7 @@ package com.pro.mybooklist.httpforms;
 public class CartInfo {
 	private Long id;
 	private String password;
+	private String token;
 	
 	public CartInfo() {}
 	
@@ -10,6 +11,12 @@ public class CartInfo {
 		this.id = id;
 		this.password = password;
 	}
+	
+	public CartInfo(Long id, String password, String token) {
+		this.id = id;
+		this.password = password;
+		this.token = token;
+	}
 
 	public Long getId() {
 		return id;
@@ -26,6 +33,14 @@ public class CartInfo {
 	public void setPassword(String password) {
 		this.password = password;
 	}
+
+	public String getToken() {
+		return token;
+	}
+
+	public void setToken(String token) {
+		this.token = token;
+	}
 	
 	
 }
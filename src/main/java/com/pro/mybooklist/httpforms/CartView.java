@@ -0,0 +1,47 @@
+package com.pro.mybooklist.httpforms;
+
+import java.util.List;
+
+import com.pro.mybooklist.sqlforms.BookInCurrentCart;
+
+public class CartView {
+	private Long cartid;
+	private List<BookInCurrentCart> books;
+	private Double total;
+	private Integer items;
+
+	public CartView() {}
+
+	public CartView(Long cartid, List<BookInCurrentCart> books, Double total, Integer items) {
+		super();
+		this.cartid = cartid;
+		this.books = books;
+		this.total = total;
+		this.items = items;
+	}
+
+	public Long getCartid() {
+		return cartid;
+	}
+	public void setCartid(Long cartid) {
+		this.cartid = cartid;
+	}
+	public List<BookInCurrentCart> getBooks() {
+		return books;
+	}
+	public void setBooks(List<BookInCurrentCart> books) {
+		this.books = books;
+	}
+	public Double getTotal() {
+		return total;
+	}
+	public void setTotal(Double total) {
+		this.total = total;
+	}
+	public Integer getItems() {
+		return items;
+	}
+	public void setItems(Integer items) {
+		this.items = items;
+	}
+}
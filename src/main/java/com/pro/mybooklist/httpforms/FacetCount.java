@@ -0,0 +1,35 @@
+package com.pro.mybooklist.httpforms;
+
+public class FacetCount {
+	private Long id;
+	private String name;
+	private long count;
+
+	public FacetCount() {}
+
+	public FacetCount(Long id, String name, long count) {
+		super();
+		this.id = id;
+		this.name = name;
+		this.count = count;
+	}
+
+	public Long getId() {
+		return id;
+	}
+	public void setId(Long id) {
+		this.id = id;
+	}
+	public String getName() {
+		return name;
+	}
+	public void setName(String name) {
+		this.name = name;
+	}
+	public long getCount() {
+		return count;
+	}
+	public void setCount(long count) {
+		this.count = count;
+	}
+}
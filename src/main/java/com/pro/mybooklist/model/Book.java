@@ -4,21 +4,62 @@ import java.util.List;
 
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
+import jakarta.persistence.ColumnResult;
+import jakarta.persistence.ConstructorResult;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.NamedAttributeNode;
+import jakarta.persistence.NamedEntityGraph;
+import jakarta.persistence.NamedNativeQuery;
 import jakarta.persistence.OneToMany;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.SqlResultSetMapping;
+import jakarta.persistence.Table;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.pro.mybooklist.sqlforms.BookInCurrentCart;
+import com.pro.mybooklist.sqlforms.RawBookInfo;
+import com.pro.mybooklist.sqlforms.Sales;
 
+// The catalog listing serializes the books together with their categories:
 @Entity
+@EntityListeners(CatalogEntityListener.class)
+@NamedEntityGraph(name = "Book.catalog", attributeNodes = @NamedAttributeNode("category"))
+@Table(indexes = { @Index(name = "book_title_idx", columnList = "title, id"),
+		@Index(name = "book_category_idx", columnList = "categoryid, id"),
+		@Index(name = "book_category_title_idx", columnList = "categoryid, title, id") })
+// The native queries of BookRepository. Their rows are mapped to the sqlforms
+// records through the constructors:
+@SqlResultSetMapping(name = "BookInCurrentCart", classes = @ConstructorResult(targetClass = BookInCurrentCart.class, columns = {
+		@ColumnResult(name = "bookid", type = Long.class), @ColumnResult(name = "cartid", type = Long.class),
+		@ColumnResult(name = "title"), @ColumnResult(name = "author"), @ColumnResult(name = "isbn"),
+		@ColumnResult(name = "book_year", type = Integer.class), @ColumnResult(name = "price", type = Double.class),
+		@ColumnResult(name = "category"), @ColumnResult(name = "quantity", type = Integer.class),
+		@ColumnResult(name = "url") }))
+@SqlResultSetMapping(name = "RawBookInfo", classes = @ConstructorResult(targetClass = RawBookInfo.class, columns = {
+		@ColumnResult(name = "bookid", type = Long.class), @ColumnResult(name = "title"),
+		@ColumnResult(name = "author"), @ColumnResult(name = "isbn"),
+		@ColumnResult(name = "book_year", type = Integer.class), @ColumnResult(name = "price", type = Double.class),
+		@ColumnResult(name = "url") }))
+@SqlResultSetMapping(name = "Sales", classes = @ConstructorResult(targetClass = Sales.class, columns = {
+		@ColumnResult(name = "bookid", type = Long.class), @ColumnResult(name = "sales", type = Long.class) }))
+@NamedNativeQuery(name = "Book.findBooksInCurrentCartByUserid", query = "SELECT bo.id AS bookid, ca.cartid, title, author, isbn, book_year, price, url, ca.name AS category, cc.quantity FROM book AS bo JOIN category AS ca ON (ca.categoryid = bo.categoryid) JOIN cart_book AS cc ON (cc.bookid = bo.id) JOIN cart AS ca ON (ca.cartid = cc.cartid) JOIN users AS u ON (u.id = ca.userid) WHERE u.id = ?1 AND current", resultSetMapping = "BookInCurrentCart")
+@NamedNativeQuery(name = "Book.findBooksInOrder", query = "SELECT bo.id AS bookid, ca.cartid, title, author, isbn, book_year, price, url, ca.name AS category, cc.quantity FROM book AS bo JOIN category AS ca ON (ca.categoryid = bo.categoryid) JOIN cart_book AS cc ON (cc.bookid = bo.id) JOIN cart AS ca ON (ca.cartid = cc.cartid) JOIN orders as o ON (o.cartid = ca.cartid) WHERE orderid = ?1", resultSetMapping = "BookInCurrentCart")
+@NamedNativeQuery(name = "Book.findBooksInCart", query = "SELECT bo.id AS bookid, ca.cartid, title, author, isbn, book_year, price, url, ca.name AS category, cc.quantity FROM book AS bo JOIN category AS ca ON (ca.categoryid = bo.categoryid) JOIN cart_book AS cc ON (cc.bookid = bo.id) JOIN cart AS ca ON (ca.cartid = cc.cartid) WHERE ca.cartid = ?1", resultSetMapping = "BookInCurrentCart")
+@NamedNativeQuery(name = "Book.findTopSales", query = "SELECT bo.id AS bookid, title, author, isbn, book_year, price, url FROM book AS bo JOIN cart_book AS cc ON (cc.bookid = bo.id) JOIN cart AS ca ON (ca.cartid = cc.cartid) WHERE NOT current GROUP BY bo.id ORDER BY SUM(quantity) DESC LIMIT 10", resultSetMapping = "RawBookInfo")
+@NamedNativeQuery(name = "Book.findSales", query = "SELECT cc.bookid, SUM(quantity) AS sales FROM cart_book AS cc JOIN cart AS ca ON (ca.cartid = cc.cartid) WHERE NOT current GROUP BY cc.bookid", resultSetMapping = "Sales")
 public class Book {
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq")
+	@SequenceGenerator(name = "book_seq", sequenceName = "book_seq", allocationSize = IdGeneration.ALLOCATION_SIZE)
 	private Long id;
 	private String title, author;
 	private int bookYear;
@@ -28,7 +69,7 @@ public class Book {
 	@Column(unique = true)
 	private String isbn;
 
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "categoryid")
 	private Category category;
 
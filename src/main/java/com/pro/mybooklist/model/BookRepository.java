@@ -3,16 +3,24 @@ package com.pro.mybooklist.model;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
 import com.pro.mybooklist.sqlforms.BookInCurrentCart;
+import com.pro.mybooklist.sqlforms.BookSummary;
 import com.pro.mybooklist.sqlforms.RawBookInfo;
+import com.pro.mybooklist.sqlforms.Sales;
 
 @Repository
 public interface BookRepository extends CrudRepository<Book, Long> {
-	@Query(value = "SELECT bo.id AS bookid, ca.cartid, title, author, isbn, book_year, price, url, ca.name AS category, cc.quantity FROM book AS bo JOIN category AS ca ON (ca.categoryid = bo.categoryid) JOIN cart_book AS cc ON (cc.bookid = bo.id) JOIN cart AS ca ON (ca.cartid = cc.cartid) JOIN users AS u ON (u.id = ca.userid) WHERE u.id = ?1 AND current", nativeQuery = true)
+	@Override
+	@EntityGraph("Book.catalog")
+	Iterable<Book> findAll();
+
+	@Query(name = "Book.findBooksInCurrentCartByUserid", nativeQuery = true)
 	List<BookInCurrentCart> findBooksInCurrentCartByUserid(Long userId);
 
 	@Query(value = "SELECT bo.id AS bookid FROM book AS bo JOIN cart_book AS cc ON (cc.bookid = bo.id) JOIN cart AS ca ON (ca.cartid = cc.cartid) JOIN users AS u ON (u.id = ca.userid) WHERE u.id = ?1 AND current", nativeQuery = true)
@@ -21,15 +29,31 @@ public interface BookRepository extends CrudRepository<Book, Long> {
 	@Query(value = "SELECT bo.id AS bookid FROM book AS bo JOIN cart_book AS cc ON (cc.bookid = bo.id) JOIN cart AS ca ON (ca.cartid = cc.cartid) WHERE ca.cartid = ?1", nativeQuery = true)
 	List<Long> findIdsOfBooksByCartid(Long cartId);
 	
-	@Query(value = "SELECT bo.id AS bookid, ca.cartid, title, author, isbn, book_year, price, url, ca.name AS category, cc.quantity FROM book AS bo JOIN category AS ca ON (ca.categoryid = bo.categoryid) JOIN cart_book AS cc ON (cc.bookid = bo.id) JOIN cart AS ca ON (ca.cartid = cc.cartid) JOIN orders as o ON (o.cartid = ca.cartid) WHERE orderid = ?1", nativeQuery = true)
+	@Query(name = "Book.findBooksInOrder", nativeQuery = true)
 	List<BookInCurrentCart> findBooksInOrder(Long orderid);
 	
-	@Query(value = "SELECT bo.id AS bookid, ca.cartid, title, author, isbn, book_year, price, url, ca.name AS category, cc.quantity FROM book AS bo JOIN category AS ca ON (ca.categoryid = bo.categoryid) JOIN cart_book AS cc ON (cc.bookid = bo.id) JOIN cart AS ca ON (ca.cartid = cc.cartid) WHERE ca.cartid = ?1", nativeQuery = true)
+	@Query(name = "Book.findBooksInCart", nativeQuery = true)
 	List<BookInCurrentCart> findBooksInCart(Long cartid);
 
-	@Query(value = "SELECT bo.id AS bookid, title, author, isbn, book_year, price, url FROM book AS bo JOIN cart_book AS cc ON (cc.bookid = bo.id) JOIN cart AS ca ON (ca.cartid = cc.cartid) WHERE NOT current GROUP BY bo.id ORDER BY SUM(quantity) DESC LIMIT 10", nativeQuery = true)
+	@Query(name = "Book.findTopSales", nativeQuery = true)
 	List<RawBookInfo> findTopSales();
+
+	@Query(name = "Book.findSales", nativeQuery = true)
+	List<Sales> findSales();
 	
+	@Query(value = "SELECT new com.pro.mybooklist.sqlforms.BookSummary(b.id, b.title, b.author, b.price, b.url, b.category.categoryid) FROM Book b WHERE b.id > ?1 ORDER BY b.id")
+	List<BookSummary> findSummariesAfterId(Long afterId, Limit limit);
+
+	@Query(value = "SELECT new com.pro.mybooklist.sqlforms.BookSummary(b.id, b.title, b.author, b.price, b.url, b.category.categoryid) FROM Book b WHERE b.category.categoryid = ?1 AND b.id > ?2 ORDER BY b.id")
+	List<BookSummary> findSummariesByCategoryAfterId(Long categoryid, Long afterId, Limit limit);
+
+	@Query(value = "SELECT new com.pro.mybooklist.sqlforms.BookSummary(b.id, b.title, b.author, b.price, b.url, b.category.categoryid) FROM Book b WHERE b.title > ?1 OR (b.title = ?1 AND b.id > ?2) ORDER BY b.title, b.id")
+	List<BookSummary> findSummariesAfterTitle(String afterTitle, Long afterId, Limit limit);
+
+	@Query(value = "SELECT new com.pro.mybooklist.sqlforms.BookSummary(b.id, b.title, b.author, b.price, b.url, b.category.categoryid) FROM Book b WHERE b.category.categoryid = ?1 AND (b.title > ?2 OR (b.title = ?2 AND b.id > ?3)) ORDER BY b.title, b.id")
+	List<BookSummary> findSummariesByCategoryAfterTitle(Long categoryid, String afterTitle, Long afterId, Limit limit);
+
+	@EntityGraph("Book.catalog")
 	List<Book> findByCategory(Category category);
 	
 	Optional<Book> findByIsbn(String isbn);
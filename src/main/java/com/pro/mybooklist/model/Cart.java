@@ -5,24 +5,57 @@ import java.util.List;
 
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
+import jakarta.persistence.ColumnResult;
+import jakarta.persistence.ConstructorResult;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.NamedAttributeNode;
+import jakarta.persistence.NamedEntityGraph;
+import jakarta.persistence.NamedNativeQuery;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.OneToOne;
-
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.SqlResultSetMapping;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-
+import com.pro.mybooklist.sqlforms.QuantityOfCart;
+import com.pro.mybooklist.sqlforms.TotalOfCart;
+
+// The access checks of the cart need its owner. The order is the inverse side
+// of a one-to-one and is always loaded, so it is joined in the same query.
+// The lookups of the carts of a user use the (userid, current) prefix of
+// cart_sweep_idx. A user has one current cart at most, cart_current_user_uk
+// enforces it:
 @Entity
+@NamedEntityGraph(name = "Cart.owner", attributeNodes = { @NamedAttributeNode("user"), @NamedAttributeNode("order") })
+@Table(indexes = { @Index(name = "cart_sweep_idx", columnList = "userid, current, expiry_date"),
+		@Index(name = "cart_expiry_date_idx", columnList = "expiry_date") }, uniqueConstraints = {
+				@UniqueConstraint(name = "cart_current_user_uk", columnNames = "current_userid") })
+// The native queries of CartRepository, mapped to the sqlforms records:
+@SqlResultSetMapping(name = "TotalOfCart", classes = @ConstructorResult(targetClass = TotalOfCart.class, columns = {
+		@ColumnResult(name = "cartid", type = Long.class), @ColumnResult(name = "total", type = Double.class) }))
+@SqlResultSetMapping(name = "QuantityOfCart", classes = @ConstructorResult(targetClass = QuantityOfCart.class, columns = {
+		@ColumnResult(name = "cartid", type = Long.class), @ColumnResult(name = "items", type = Integer.class) }))
+@NamedNativeQuery(name = "Cart.findTotalOfCurrentCart", query = "SELECT cartid, total_amount AS total FROM cart WHERE current AND userid=?1 AND item_count > 0", resultSetMapping = "TotalOfCart")
+@NamedNativeQuery(name = "Cart.findTotalOfOrder", query = "SELECT ca.cartid AS cartid, SUM(quantity * price) AS total FROM cart AS ca JOIN orders AS o ON (o.cartid = ca.cartid) JOIN cart_book AS cb ON (cb.cartid = ca.cartid) JOIN book AS bo ON (bo.id = cb.bookid) WHERE orderid=?1 GROUP BY ca.cartid", resultSetMapping = "TotalOfCart")
+@NamedNativeQuery(name = "Cart.findTotalOfCart", query = "SELECT cartid, total_amount AS total FROM cart WHERE cartid=?1 AND item_count > 0", resultSetMapping = "TotalOfCart")
+@NamedNativeQuery(name = "Cart.findQuantityInCurrent", query = "SELECT cartid, item_count AS items FROM cart WHERE current AND userid =?1 AND item_count > 0", resultSetMapping = "QuantityOfCart")
 public class Cart {
+	// Precomputed BCrypt hash of the default "test" password so that creating a
+	// cart doesn't pay for hashing:
+	private static final String DEFAULT_PASSWORD_HASH = "$2a$10$iifbQ.VkTB8xa6l7ZwN.wuXOTRhAT6OJPYQYexAnraA94rWJe628m";
 	
 	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cart_seq")
+	@SequenceGenerator(name = "cart_seq", sequenceName = "cart_seq", allocationSize = IdGeneration.ALLOCATION_SIZE)
 	@Column(name = "cartid", nullable = false, updatable = false)
 	private Long cartid;
 	
@@ -31,15 +64,28 @@ public class Cart {
 	private boolean current;
 	
 	@Column(name = "expiry_date")
-	private String expiryDate;
+	private LocalDate expiryDate;
 	
 	@Column(name = "password")
 	private String passwordHash;
 	
-	@ManyToOne
+	// Running totals of the cart lines. They are written only by
+	// CartRepository.refreshTotals, never by the entity updates:
+	@Column(name = "item_count", nullable = false, updatable = false)
+	private int itemCount;
+	
+	@Column(name = "total_amount", nullable = false, updatable = false)
+	private double totalAmount;
+	
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name="userid")
 	private User user;
 	
+	// The userid of the current cart and null for the closed and anonymous
+	// carts. It is computed by the database for the unique constraint:
+	@Column(name = "current_userid", insertable = false, updatable = false, columnDefinition = "BIGINT GENERATED ALWAYS AS (CASE WHEN current THEN userid END)")
+	private Long currentUserid;
+	
 	@JsonIgnore
 	@OneToMany(cascade = CascadeType.ALL, mappedBy = "cart")
 	private List<CartBook> cartbooks;
@@ -60,18 +106,14 @@ public class Cart {
 	public Cart(boolean current) {
 		this.current = current;
 		this.user = null;
-		this.expiryDate = LocalDate.now().plusDays(1).toString();
-		
-		String password = "test";
-		BCryptPasswordEncoder bc = new BCryptPasswordEncoder();
-		String hashPwd = bc.encode(password);
-		this.passwordHash = hashPwd;
+		this.expiryDate = LocalDate.now().plusDays(1);
+		this.passwordHash = DEFAULT_PASSWORD_HASH;
 	}
 	
 	public Cart(String passwordHash) {
 		this.current = true;
 		this.user = null;
-		this.expiryDate = LocalDate.now().plusDays(1).toString();
+		this.expiryDate = LocalDate.now().plusDays(1);
 		
 		this.passwordHash = passwordHash;
 	}
@@ -116,11 +158,11 @@ public class Cart {
 		this.order = order;
 	}
 
-	public String getExpiryDate() {
+	public LocalDate getExpiryDate() {
 		return expiryDate;
 	}
 
-	public void setExpiryDate(String expiryDate) {
+	public void setExpiryDate(LocalDate expiryDate) {
 		this.expiryDate = expiryDate;
 	}
 
@@ -131,5 +173,13 @@ public class Cart {
 	public void setPasswordHash(String passwordHash) {
 		this.passwordHash = passwordHash;
 	}
+
+	public int getItemCount() {
+		return itemCount;
+	}
+
+	public double getTotalAmount() {
+		return totalAmount;
+	}
 	
 }
\ No newline at end of file
@@ -3,13 +3,22 @@ package com.pro.mybooklist.model;
 import jakarta.persistence.Column;
 import jakarta.persistence.EmbeddedId;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.MapsId;
+import jakarta.persistence.NamedAttributeNode;
+import jakarta.persistence.NamedEntityGraph;
+import jakarta.persistence.NamedSubgraph;
 import jakarta.persistence.Table;
 
+// The checkout copies the books of the cart lines to the order lines:
 @Entity
-@Table(name = "cart_book")
+@NamedEntityGraph(name = "CartBook.checkout", attributeNodes = @NamedAttributeNode(value = "book", subgraph = "book"),
+		subgraphs = @NamedSubgraph(name = "book", attributeNodes = @NamedAttributeNode("category")))
+@Table(name = "cart_book", indexes = { @Index(name = "cart_book_cart_idx", columnList = "cartid"),
+		@Index(name = "cart_book_book_idx", columnList = "bookid") })
 public class CartBook {
 
 	@EmbeddedId
@@ -18,12 +27,12 @@ public class CartBook {
 	@Column(name = "quantity")
 	private int quantity;
 
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@MapsId("cartid")
 	@JoinColumn(name = "cartid", nullable = false)
 	private Cart cart;
 
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@MapsId("bookid")
 	@JoinColumn(name = "bookid", nullable = false)
 	private Book book;
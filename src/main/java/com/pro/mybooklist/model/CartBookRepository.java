@@ -3,16 +3,51 @@ package com.pro.mybooklist.model;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
+import jakarta.transaction.Transactional;
+
 @Repository
-public interface CartBookRepository extends CrudRepository<CartBook, Long> {
+public interface CartBookRepository extends CrudRepository<CartBook, Long>, CartBookRepositoryCustom {
 	Optional<CartBook> findById(CartBookKey cartBookId);
 	
+	@EntityGraph("CartBook.checkout")
 	List<CartBook> findByCart(Cart cart);
 	
 	long deleteByCart(Cart cart);
 	
 	long deleteById(CartBookKey cartBookId);
+	
+	@Modifying
+	@Query(value = "DELETE FROM cart_book WHERE cartid IN ?1", nativeQuery = true)
+	int deleteByCartids(List<Long> cartids);
+	
+	// The statements below leave the persistence context alone. A line that
+	// may have been loaded before is detached with detachLine after the change.
+	//
+	// Adds the quantity to the book in the cart or inserts the book with the
+	// quantity in one statement. Nothing is changed when the book doesn't exist:
+	@Transactional
+	@Modifying(flushAutomatically = true)
+	@Query(value = "MERGE INTO cart_book AS cb USING (SELECT CAST(?1 AS BIGINT) AS cartid, id AS bookid, CAST(?3 AS INT) AS quantity FROM book WHERE id = ?2) AS src ON (cb.cartid = src.cartid AND cb.bookid = src.bookid) WHEN MATCHED THEN UPDATE SET quantity = cb.quantity + src.quantity WHEN NOT MATCHED THEN INSERT (cartid, bookid, quantity) VALUES (src.cartid, src.bookid, src.quantity)", nativeQuery = true)
+	int upsertQuantity(Long cartid, Long bookId, int quantity);
+	
+	@Transactional
+	@Modifying(flushAutomatically = true)
+	@Query(value = "UPDATE cart_book SET quantity = quantity - 1 WHERE cartid = ?1 AND bookid = ?2 AND quantity > 1", nativeQuery = true)
+	int decrementQuantity(Long cartid, Long bookId);
+	
+	@Transactional
+	@Modifying(flushAutomatically = true)
+	@Query(value = "DELETE FROM cart_book WHERE cartid = ?1 AND bookid = ?2 AND quantity <= 1", nativeQuery = true)
+	int deleteIfLastOne(Long cartid, Long bookId);
+	
+	@Transactional
+	@Modifying(flushAutomatically = true)
+	@Query(value = "DELETE FROM cart_book WHERE cartid = ?1 AND bookid = ?2", nativeQuery = true)
+	int deleteByCartidAndBookid(Long cartid, Long bookId);
 }
\ No newline at end of file
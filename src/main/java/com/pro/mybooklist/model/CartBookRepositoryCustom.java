@@ -0,0 +1,9 @@
+package com.pro.mybooklist.model;
+
+import java.util.Map;
+
+public interface CartBookRepositoryCustom {
+	int[] applyQuantityChanges(Long cartid, Map<Long, Integer> deltasByBookId);
+
+	void detachLine(Long cartid, Long bookId);
+}
@@ -0,0 +1,48 @@
+package com.pro.mybooklist.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+// The quantity changes are sent to the database as one JDBC batch of MERGE
+// statements, followed by a single delete of the lines that dropped to zero.
+public class CartBookRepositoryCustomImpl implements CartBookRepositoryCustom {
+	private static final String MERGE_QUANTITY = "MERGE INTO cart_book AS cb USING (SELECT CAST(? AS BIGINT) AS cartid, CAST(? AS BIGINT) AS bookid, CAST(? AS INT) AS delta) AS src ON (cb.cartid = src.cartid AND cb.bookid = src.bookid) WHEN MATCHED THEN UPDATE SET quantity = cb.quantity + src.delta WHEN NOT MATCHED AND src.delta > 0 THEN INSERT (cartid, bookid, quantity) VALUES (src.cartid, src.bookid, src.delta)";
+	private static final String DELETE_EMPTY_LINES = "DELETE FROM cart_book WHERE cartid = ? AND quantity <= 0";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Override
+	public int[] applyQuantityChanges(Long cartid, Map<Long, Integer> deltasByBookId) {
+		// Pending entity changes go first and the entities cached in the
+		// persistence context are dropped after, as JDBC bypasses both:
+		entityManager.flush();
+
+		List<Object[]> batchArgs = new ArrayList<>();
+		deltasByBookId.forEach((bookId, delta) -> batchArgs.add(new Object[] { cartid, bookId, delta }));
+
+		int[] merged = jdbcTemplate.batchUpdate(MERGE_QUANTITY, batchArgs);
+		jdbcTemplate.update(DELETE_EMPTY_LINES, cartid);
+
+		entityManager.clear();
+		return merged;
+	}
+
+	// Drops the line from the persistence context, if it was loaded, so it's
+	// read from the database again after a native statement changed its row.
+	// The other cached entities are kept:
+	@Override
+	public void detachLine(Long cartid, Long bookId) {
+		entityManager.detach(entityManager.getReference(CartBook.class, new CartBookKey(cartid, bookId)));
+	}
+}
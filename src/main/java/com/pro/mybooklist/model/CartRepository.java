@@ -1,8 +1,11 @@
 package com.pro.mybooklist.model;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
@@ -10,8 +13,11 @@ import org.springframework.stereotype.Repository;
 import com.pro.mybooklist.sqlforms.QuantityOfCart;
 import com.pro.mybooklist.sqlforms.TotalOfCart;
 
+import jakarta.transaction.Transactional;
+
 @Repository
 public interface CartRepository extends CrudRepository<Cart, Long> {
+	@EntityGraph("Cart.owner")
 	Optional<Cart> findById(Long cartid);
 	
 	@Query(value="SELECT cart.* FROM cart WHERE current AND userid = ?1", nativeQuery=true)
@@ -20,15 +26,55 @@ public interface CartRepository extends CrudRepository<Cart, Long> {
 	@Query(value="SELECT cartid FROM cart WHERE NOT current AND userid =?1", nativeQuery = true)
 	List<Long> findNotCurrentByUserid(Long userId);
 	
-	@Query(value="SELECT ca.cartid AS cartid, SUM(quantity * price) AS total FROM cart AS ca JOIN cart_book AS cb ON (cb.cartid = ca.cartid) JOIN book AS bo ON (bo.id = cb.bookid) WHERE current AND userid=?1 GROUP BY ca.cartid", nativeQuery = true)
+	@Query(value="SELECT cartid FROM cart WHERE NOT current AND cartid IN ?1", nativeQuery = true)
+	List<Long> findClosedCartids(List<Long> cartids);
+	
+	@Query(name = "Cart.findTotalOfCurrentCart", nativeQuery = true)
 	TotalOfCart findTotalOfCurrentCart(Long userId);
 	
-	@Query(value="SELECT ca.cartid AS cartid, SUM(quantity * price) AS total FROM cart AS ca JOIN orders AS o ON (o.cartid = ca.cartid) JOIN cart_book AS cb ON (cb.cartid = ca.cartid) JOIN book AS bo ON (bo.id = cb.bookid) WHERE orderid=?1 GROUP BY ca.cartid", nativeQuery = true)
+	@Query(name = "Cart.findTotalOfOrder", nativeQuery = true)
 	TotalOfCart findTotalOfOrder(Long orderid);
 	
-	@Query(value="SELECT ca.cartid AS cartid, SUM(quantity * price) AS total FROM cart AS ca JOIN cart_book AS cb ON (cb.cartid = ca.cartid) JOIN book AS bo ON (bo.id = cb.bookid) WHERE ca.cartid=?1 GROUP BY ca.cartid", nativeQuery = true)
+	@Query(name = "Cart.findTotalOfCart", nativeQuery = true)
 	TotalOfCart findTotalOfCart(Long cartid);
 	
-	@Query(value="SELECT ca.cartid, SUM(quantity) AS items FROM cart AS ca JOIN cart_book AS cb ON (cb.cartid = ca.cartid) WHERE current AND userid =?1 GROUP BY ca.cartid", nativeQuery = true)
+	@Query(name = "Cart.findQuantityInCurrent", nativeQuery = true)
 	QuantityOfCart findQuantityInCurrent(Long userId);
+
+	// Locks the cart row and reads whether the cart is current. Every change of
+	// the lines of a cart takes the lock first, so the changes and the
+	// recalculations of the totals of one cart run one after another and no
+	// recalculation misses a concurrent change. The flag is read by the
+	// locking statement itself, as a cart loaded earlier in the transaction
+	// keeps its old state in the persistence context:
+	@Query(value="SELECT current FROM cart WHERE cartid = ?1 FOR UPDATE", nativeQuery = true)
+	Optional<Boolean> lockAndFindCurrent(Long cartid);
+
+	// The running totals are recalculated out of the lines of the cart, in the
+	// transaction of the change, after the cart was locked:
+	@Transactional
+	@Modifying(flushAutomatically = true)
+	@Query(value="UPDATE cart SET item_count = COALESCE((SELECT SUM(cb.quantity) FROM cart_book AS cb WHERE cb.cartid = ?1), 0), total_amount = COALESCE((SELECT SUM(cb.quantity * bo.price) FROM cart_book AS cb JOIN book AS bo ON (bo.id = cb.bookid) WHERE cb.cartid = ?1), 0) WHERE cartid = ?1", nativeQuery = true)
+	int refreshTotals(Long cartid);
+
+	// Locks the current carts holding the book before their totals are
+	// recalculated for a new price. The carts are locked in the order of their
+	// ids, so two price changes sharing carts can't deadlock. A line of the book
+	// that another transaction is adding to a cart without it isn't seen here;
+	// that transaction recalculates the cart with the price committed when it
+	// reads it:
+	@Query(value="SELECT cartid FROM cart WHERE current AND cartid IN (SELECT cartid FROM cart_book WHERE bookid = ?1) ORDER BY cartid FOR UPDATE", nativeQuery = true)
+	List<Long> lockCurrentCartsWithBook(Long bookid);
+
+	@Transactional
+	@Modifying(flushAutomatically = true)
+	@Query(value="UPDATE cart AS ca SET total_amount = COALESCE((SELECT SUM(cb.quantity * bo.price) FROM cart_book AS cb JOIN book AS bo ON (bo.id = cb.bookid) WHERE cb.cartid = ca.cartid), 0) WHERE current AND cartid IN (SELECT cartid FROM cart_book WHERE bookid = ?1)", nativeQuery = true)
+	int refreshTotalsOfCurrentCartsWithBook(Long bookid);
+	
+	@Query(value="SELECT cartid FROM cart WHERE userid IS NULL AND current AND expiry_date < ?1 ORDER BY cartid LIMIT ?2", nativeQuery = true)
+	List<Long> findExpiredNoUserCartIds(LocalDate today, int limit);
+	
+	@Modifying
+	@Query(value="DELETE FROM cart WHERE cartid IN ?1", nativeQuery = true)
+	int deleteByCartids(List<Long> cartids);
 }
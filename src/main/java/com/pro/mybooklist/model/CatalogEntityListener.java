@@ -0,0 +1,151 @@
+package com.pro.mybooklist.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreRemove;
+import jakarta.persistence.PreUpdate;
+
+// Entity listener of the Book and Category entities. Every write bumps the
+// catalog version, and the version is bumped once more when the transaction
+// completes, so snapshots built from uncommitted or rolled back data are not
+// served afterwards.
+//
+// The saved and removed books are also collected per transaction and handed
+// to the change listeners once the transaction commits, so the in-memory
+// indexes apply only committed changes, one book at a time.
+public class CatalogEntityListener {
+	private static final AtomicLong version = new AtomicLong();
+	private static final Object TRANSACTION_KEY = new Object();
+	private static final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+	public interface ChangeListener {
+		// Called after the commit with the books saved and the ids of the books
+		// removed by the transaction:
+		void booksChanged(Collection<Book> savedBooks, Collection<Long> removedBookIds);
+
+		// Called after a change the listener doesn't see book by book, a native
+		// or bulk update:
+		void catalogReplaced();
+	}
+
+	public static long getVersion() {
+		return version.get();
+	}
+
+	public static void addChangeListener(ChangeListener listener) {
+		changeListeners.add(listener);
+	}
+
+	public static void removeChangeListener(ChangeListener listener) {
+		changeListeners.remove(listener);
+	}
+
+	// Method for the native and bulk updates of the book and category tables,
+	// which don't go through the entity listener:
+	public static void bumpVersion() {
+		version.incrementAndGet();
+
+		TransactionChanges changes = getTransactionChanges();
+		if (changes == null) {
+			changeListeners.forEach(ChangeListener::catalogReplaced);
+			return;
+		}
+		changes.replaced = true;
+	}
+
+	@PrePersist
+	@PreUpdate
+	@PreRemove
+	public void catalogChanging(Object entity) {
+		version.incrementAndGet();
+		getTransactionChanges();
+	}
+
+	@PostPersist
+	@PostUpdate
+	public void catalogChanged(Object entity) {
+		version.incrementAndGet();
+
+		if (!(entity instanceof Book book))
+			return;
+
+		TransactionChanges changes = getTransactionChanges();
+		if (changes == null) {
+			changeListeners.forEach(listener -> listener.booksChanged(List.of(book), List.of()));
+			return;
+		}
+		changes.removedBookIds.remove(book.getId());
+		changes.savedBooks.put(book.getId(), book);
+	}
+
+	@PostRemove
+	public void catalogRemoved(Object entity) {
+		version.incrementAndGet();
+
+		if (!(entity instanceof Book book))
+			return;
+
+		TransactionChanges changes = getTransactionChanges();
+		if (changes == null) {
+			changeListeners.forEach(listener -> listener.booksChanged(List.of(), List.of(book.getId())));
+			return;
+		}
+		changes.savedBooks.remove(book.getId());
+		changes.removedBookIds.add(book.getId());
+	}
+
+	// Returns the changes of the current transaction, registered on the first
+	// write, or null outside of a transaction:
+	private static TransactionChanges getTransactionChanges() {
+		if (!TransactionSynchronizationManager.isSynchronizationActive())
+			return null;
+
+		TransactionChanges changes = (TransactionChanges) TransactionSynchronizationManager
+				.getResource(TRANSACTION_KEY);
+		if (changes == null) {
+			changes = new TransactionChanges();
+			TransactionSynchronizationManager.bindResource(TRANSACTION_KEY, changes);
+			TransactionSynchronizationManager.registerSynchronization(changes);
+		}
+		return changes;
+	}
+
+	private static class TransactionChanges implements TransactionSynchronization {
+		private final Map<Long, Book> savedBooks = new LinkedHashMap<>();
+		private final Set<Long> removedBookIds = new LinkedHashSet<>();
+		private boolean replaced;
+
+		// The version is bumped before the listeners run, so what they read from
+		// the CatalogCache is loaded again:
+		@Override
+		public void afterCompletion(int status) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(TRANSACTION_KEY);
+			version.incrementAndGet();
+
+			if (status != STATUS_COMMITTED)
+				return;
+
+			for (ChangeListener listener : changeListeners) {
+				if (!savedBooks.isEmpty() || !removedBookIds.isEmpty())
+					listener.booksChanged(new ArrayList<>(savedBooks.values()), List.copyOf(removedBookIds));
+				if (replaced)
+					listener.catalogReplaced();
+			}
+		}
+	}
+}
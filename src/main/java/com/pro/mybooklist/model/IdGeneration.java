@@ -0,0 +1,11 @@
+package com.pro.mybooklist.model;
+
+// Settings of the sequence generators of the entities. Every sequence call
+// reserves ALLOCATION_SIZE ids (pooled optimizer), so inserts don't go to the
+// database for each id and can be sent in JDBC batches. The value must match
+// the INCREMENT BY of the sequences of the existing databases.
+final class IdGeneration {
+	static final int ALLOCATION_SIZE = 50;
+
+	private IdGeneration() {}
+}
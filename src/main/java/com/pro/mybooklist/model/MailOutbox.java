@@ -0,0 +1,152 @@
+package com.pro.mybooklist.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Lob;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+
+// Email waiting to be sent. The record is saved in the same transaction as the
+// change that caused the email and is sent later by the MailDispatcher. The
+// content may carry passwords, so it's cleared once the email is sent or has
+// failed for good, and the finished records are purged after the retention
+// period.
+@Entity
+@Table(name = "mail_outbox", indexes = @Index(name = "mail_outbox_due_idx", columnList = "status, next_attempt_at"))
+public class MailOutbox {
+	public static final String PENDING = "PENDING";
+	public static final String SENT = "SENT";
+	public static final String FAILED = "FAILED";
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "mail_outbox_seq")
+	@SequenceGenerator(name = "mail_outbox_seq", sequenceName = "mail_outbox_seq", allocationSize = IdGeneration.ALLOCATION_SIZE)
+	private Long id;
+
+	@Column(name = "recipient", nullable = false)
+	private String recipient;
+
+	@Column(name = "subject", nullable = false)
+	private String subject;
+
+	@Lob
+	@Column(name = "content")
+	private String content;
+
+	@Column(name = "status", nullable = false)
+	private String status;
+
+	@Column(name = "attempts", nullable = false)
+	private int attempts;
+
+	@Column(name = "next_attempt_at", nullable = false)
+	private LocalDateTime nextAttemptAt;
+
+	@Column(name = "created_at", nullable = false)
+	private LocalDateTime createdAt;
+
+	@Column(name = "sent_at")
+	private LocalDateTime sentAt;
+
+	@Column(name = "last_error", length = 1000)
+	private String lastError;
+
+	public MailOutbox() {}
+
+	public MailOutbox(String recipient, String subject, String content) {
+		super();
+		this.recipient = recipient;
+		this.subject = subject;
+		this.content = content;
+		this.status = PENDING;
+		this.attempts = 0;
+		this.createdAt = LocalDateTime.now();
+		this.nextAttemptAt = this.createdAt;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getRecipient() {
+		return recipient;
+	}
+
+	public void setRecipient(String recipient) {
+		this.recipient = recipient;
+	}
+
+	public String getSubject() {
+		return subject;
+	}
+
+	public void setSubject(String subject) {
+		this.subject = subject;
+	}
+
+	public String getContent() {
+		return content;
+	}
+
+	public void setContent(String content) {
+		this.content = content;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public void setAttempts(int attempts) {
+		this.attempts = attempts;
+	}
+
+	public LocalDateTime getNextAttemptAt() {
+		return nextAttemptAt;
+	}
+
+	public void setNextAttemptAt(LocalDateTime nextAttemptAt) {
+		this.nextAttemptAt = nextAttemptAt;
+	}
+
+	public LocalDateTime getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(LocalDateTime createdAt) {
+		this.createdAt = createdAt;
+	}
+
+	public LocalDateTime getSentAt() {
+		return sentAt;
+	}
+
+	public void setSentAt(LocalDateTime sentAt) {
+		this.sentAt = sentAt;
+	}
+
+	public String getLastError() {
+		return lastError;
+	}
+
+	public void setLastError(String lastError) {
+		this.lastError = lastError;
+	}
+}
@@ -0,0 +1,32 @@
+package com.pro.mybooklist.model;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+import jakarta.transaction.Transactional;
+
+@Repository
+public interface MailOutboxRepository extends CrudRepository<MailOutbox, Long> {
+	List<MailOutbox> findByStatusAndNextAttemptAtLessThanEqualOrderByIdAsc(String status, LocalDateTime now,
+			Pageable pageable);
+
+	List<MailOutbox> findByStatus(String status);
+
+	// Claims the due email by moving its next attempt to the end of the lease.
+	// Only one dispatcher can claim it, the others see it's no longer due:
+	@Transactional
+	@Modifying
+	@Query("UPDATE MailOutbox m SET m.nextAttemptAt = ?4 WHERE m.id = ?1 AND m.status = ?2 AND m.nextAttemptAt <= ?3")
+	int claim(Long id, String status, LocalDateTime now, LocalDateTime leaseUntil);
+
+	@Transactional
+	@Modifying
+	@Query("DELETE FROM MailOutbox m WHERE m.status IN ?1 AND m.createdAt < ?2")
+	int deleteByStatusInAndCreatedAtBefore(List<String> statuses, LocalDateTime createdBefore);
+}
@@ -2,19 +2,32 @@ package com.pro.mybooklist.model;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
+import jakarta.persistence.NamedAttributeNode;
+import jakarta.persistence.NamedEntityGraph;
+import jakarta.persistence.NamedNativeQuery;
+import jakarta.persistence.NamedSubgraph;
 import jakarta.persistence.OneToOne;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 
+// The order detail and the order lists are serialized with the cart and the
+// owner of the cart:
 @Entity
-@Table(name = "orders")
+@NamedEntityGraph(name = "Order.detail", attributeNodes = @NamedAttributeNode(value = "cart", subgraph = "cart"),
+		subgraphs = @NamedSubgraph(name = "cart", attributeNodes = @NamedAttributeNode("user")))
+@Table(name = "orders", indexes = @Index(name = "orders_cart_idx", columnList = "cartid"))
+@NamedNativeQuery(name = "Order.findTotalOfOrder", query = "SELECT cartid, total FROM orders WHERE orderid = ?1 AND total IS NOT NULL", resultSetMapping = "TotalOfCart")
 public class Order {
 	
 	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+	@SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = IdGeneration.ALLOCATION_SIZE)
 	@Column(name = "orderid", nullable = false, updatable = false)
 	private Long orderid;
 	
@@ -48,10 +61,15 @@ public class Order {
 	@Column(name = "password")
 	private String password;
 	
-	@OneToOne
+	@OneToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name="cartid", referencedColumnName = "cartid", nullable = false)
 	private Cart cart;
 	
+	// Total of the order lines at checkout, null for the orders made before the
+	// lines were stored:
+	@Column(name = "total")
+	private Double total;
+	
 	public Order() {}
 
 	public Order(String firstname, String lastname, String country, String city, String street, String postcode, String status, String email, Cart cart, String password) {
@@ -178,4 +196,12 @@ public class Order {
 	public void setCart(Cart cart) {
 		this.cart = cart;
 	}
+
+	public Double getTotal() {
+		return total;
+	}
+
+	public void setTotal(Double total) {
+		this.total = total;
+	}
 }
@@ -0,0 +1,102 @@
+package com.pro.mybooklist.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.NamedNativeQuery;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+
+// Copy of a cart line taken at checkout. The order shows the book as it was
+// sold, later changes of the book or its category don't affect it.
+@Entity
+@Table(name = "order_line", indexes = { @Index(name = "order_line_order_idx", columnList = "orderid") })
+@NamedNativeQuery(name = "OrderLine.findBooksInOrder", query = "SELECT ol.bookid, o.cartid, ol.title, ol.author, ol.isbn, ol.book_year, ol.price, ol.url, ol.category, ol.quantity FROM order_line AS ol JOIN orders AS o ON (o.orderid = ol.orderid) WHERE ol.orderid = ?1 ORDER BY ol.id", resultSetMapping = "BookInCurrentCart")
+public class OrderLine {
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_line_seq")
+	@SequenceGenerator(name = "order_line_seq", sequenceName = "order_line_seq", allocationSize = IdGeneration.ALLOCATION_SIZE)
+	private Long id;
+
+	@JsonIgnore
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "orderid", nullable = false)
+	private Order order;
+
+	@Column(name = "bookid", nullable = false)
+	private Long bookid;
+
+	private String title, author, isbn, url, category;
+	private int bookYear;
+	private double price;
+	private int quantity;
+
+	public OrderLine() {}
+
+	public OrderLine(Order order, CartBook cartBook) {
+		Book book = cartBook.getBook();
+
+		this.order = order;
+		this.bookid = book.getId();
+		this.title = book.getTitle();
+		this.author = book.getAuthor();
+		this.isbn = book.getIsbn();
+		this.url = book.getUrl();
+		this.category = book.getCategory() == null ? null : book.getCategory().getName();
+		this.bookYear = book.getBookYear();
+		this.price = book.getPrice();
+		this.quantity = cartBook.getQuantity();
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public Order getOrder() {
+		return order;
+	}
+
+	public Long getBookid() {
+		return bookid;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public String getAuthor() {
+		return author;
+	}
+
+	public String getIsbn() {
+		return isbn;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public String getCategory() {
+		return category;
+	}
+
+	public int getBookYear() {
+		return bookYear;
+	}
+
+	public double getPrice() {
+		return price;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+}
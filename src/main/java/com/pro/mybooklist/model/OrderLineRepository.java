@@ -0,0 +1,15 @@
+package com.pro.mybooklist.model;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+import com.pro.mybooklist.sqlforms.BookInCurrentCart;
+
+@Repository
+public interface OrderLineRepository extends CrudRepository<OrderLine, Long> {
+	@Query(name = "OrderLine.findBooksInOrder", nativeQuery = true)
+	List<BookInCurrentCart> findBooksInOrder(Long orderid);
+}
@@ -3,14 +3,26 @@ package com.pro.mybooklist.model;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
+import com.pro.mybooklist.sqlforms.TotalOfCart;
+
 @Repository
 public interface OrderRepository extends CrudRepository<Order, Long> {
+	@EntityGraph("Order.detail")
 	Optional<Order> findById(Long orderid);
 	
-	@Query(value = "SELECT o.* FROM orders AS o JOIN cart AS ca ON (ca.cartid = o.cartid) WHERE userid = ?1", nativeQuery = true)
+	@Override
+	@EntityGraph("Order.detail")
+	Iterable<Order> findAll();
+	
+	@EntityGraph("Order.detail")
+	@Query(value = "SELECT o FROM Order o WHERE o.cart.user.id = ?1")
 	List<Order> findByUserid(Long userId);
+	
+	@Query(name = "Order.findTotalOfOrder", nativeQuery = true)
+	TotalOfCart findTotalOfOrder(Long orderid);
 }
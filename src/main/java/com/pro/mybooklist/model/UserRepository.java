@@ -2,9 +2,13 @@ package com.pro.mybooklist.model;
 
 import java.util.Optional;
 
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.LockModeType;
+
 @Repository
 public interface UserRepository extends CrudRepository<User, Long> {
 	Optional<User> findByUsername(String username);
@@ -12,4 +16,9 @@ public interface UserRepository extends CrudRepository<User, Long> {
 	Optional<User> findByEmail(String email);
 
 	Optional<User> findByVerificationCode(String code);
+
+	// Locks the user row, the current cart of the user is created under it:
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("SELECT u FROM User u WHERE u.id = ?1")
+	Optional<User> findByIdForUpdate(Long id);
 }
@@ -1,12 +1,21 @@
 package com.pro.mybooklist.service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import jakarta.servlet.http.HttpServletRequest;
 
 import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Service;
 
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
@@ -19,6 +28,13 @@ public class AuthenticationService {
 	static final Key key = Keys.secretKeyFor(SignatureAlgorithm.HS256);
 	static final String PREFIX = "Bearer";
 
+	// The parser is immutable and thread-safe, so it is built only once:
+	static final JwtParser parser = Jwts.parserBuilder().setSigningKey(key).build();
+
+	// Verified tokens are remembered by their SHA-256 hash until they expire:
+	static final int VERIFIED_TOKENS_MAX_SIZE = 10_000;
+	private final Map<String, VerifiedToken> verifiedTokens = new ConcurrentHashMap<>();
+
 	public String getToken(String username) {
 		String token = Jwts.builder()
 				.setSubject(username)
@@ -32,12 +48,7 @@ public class AuthenticationService {
 		String token = request.getHeader(HttpHeaders.AUTHORIZATION);
 
 		if (token != null) {
-			String user = Jwts.parserBuilder()
-					.setSigningKey(key)
-					.build()
-					.parseClaimsJws(token.replace(PREFIX, ""))
-					.getBody()
-					.getSubject();
+			String user = this.getSubject(token.replace(PREFIX, "").trim());
 
 			if (user != null)
 				return user;
@@ -45,4 +56,61 @@ public class AuthenticationService {
 
 		return null;
 	}
+
+	// Method to get the subject of the token, HMAC verification and claims
+	// decoding are skipped when the same token was already verified:
+	private String getSubject(String token) {
+		String tokenHash = this.hashToken(token);
+		long now = System.currentTimeMillis();
+
+		VerifiedToken verifiedToken = verifiedTokens.get(tokenHash);
+		if (verifiedToken != null) {
+			if (verifiedToken.expiresAt() > now)
+				return verifiedToken.subject();
+
+			verifiedTokens.remove(tokenHash);
+		}
+
+		Claims claims = parser.parseClaimsJws(token).getBody();
+		String subject = claims.getSubject();
+		Date expiration = claims.getExpiration();
+
+		if (subject != null && expiration != null)
+			this.rememberVerifiedToken(tokenHash, new VerifiedToken(subject, expiration.getTime()));
+
+		return subject;
+	}
+
+	private void rememberVerifiedToken(String tokenHash, VerifiedToken verifiedToken) {
+		if (verifiedTokens.size() >= VERIFIED_TOKENS_MAX_SIZE)
+			this.removeExpiredTokens();
+
+		if (verifiedTokens.size() >= VERIFIED_TOKENS_MAX_SIZE)
+			verifiedTokens.clear();
+
+		verifiedTokens.put(tokenHash, verifiedToken);
+	}
+
+	private void removeExpiredTokens() {
+		long now = System.currentTimeMillis();
+		Iterator<VerifiedToken> iterator = verifiedTokens.values().iterator();
+
+		while (iterator.hasNext()) {
+			if (iterator.next().expiresAt() <= now)
+				iterator.remove();
+		}
+	}
+
+	private String hashToken(String token) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] hash = digest.digest(token.getBytes(StandardCharsets.US_ASCII));
+			return Base64.getEncoder().encodeToString(hash);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private record VerifiedToken(String subject, long expiresAt) {
+	}
 }
@@ -0,0 +1,489 @@
+package com.pro.mybooklist.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.pro.mybooklist.httpforms.AutocompleteSuggestion;
+import com.pro.mybooklist.model.Book;
+import com.pro.mybooklist.model.BookRepository;
+import com.pro.mybooklist.model.CatalogEntityListener;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+// Prefix trie of the book titles and authors for the typeahead. Every
+// suggestion is reachable from the start of each of its words ("gats" finds
+// "Great Gatsby"), and every trie node keeps its top-k suggestions by sales,
+// so a lookup is a walk down the prefix without sorting.
+//
+// The trie is built out of the books table and the counters of the
+// SalesRanking when the application starts. Then the committed book changes
+// and sales are applied as they come, and only the nodes on the paths of the
+// changed suggestions are recalculated. When the sales epoch changes or the
+// catalog is updated in bulk, a new trie is built on a background thread and
+// swapped in, the lookups keep using the previous one meanwhile. A lookup
+// never runs a query.
+@Component
+public class AutocompleteIndex implements CatalogEntityListener.ChangeListener {
+	public static final String TITLE = "title";
+	public static final String AUTHOR = "author";
+
+	private static final Comparator<Suggestion> BY_WEIGHT = Comparator.<Suggestion>comparingLong(
+			suggestion -> suggestion.weight).reversed().thenComparing(suggestion -> suggestion.view.getText());
+
+	@Autowired
+	private BookRepository bookRepository;
+
+	@Autowired
+	private SalesRanking salesRanking;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private final int topSize;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private Trie trie = new Trie(-1, -1);
+
+	// The changes committed while a rebuild loads the books and the sales, they
+	// are applied to the rebuilt trie too before it's swapped in:
+	private List<Consumer<Trie>> changesDuringRebuild;
+
+	// The sales epoch a rebuild was last requested for:
+	private volatile long requestedEpoch = -1;
+
+	private final BackgroundRebuild backgroundRebuild = new BackgroundRebuild("autocomplete-index", this::build);
+
+	public AutocompleteIndex(@Value("${autocomplete.top-size:10}") int topSize) {
+		this.topSize = topSize;
+	}
+
+	@PostConstruct
+	public void listenToChanges() {
+		salesRanking.addListener(this::addSales);
+		CatalogEntityListener.addChangeListener(this);
+	}
+
+	@PreDestroy
+	public void stopListening() {
+		CatalogEntityListener.removeChangeListener(this);
+		backgroundRebuild.shutdown();
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void buildOnStartup() {
+		backgroundRebuild.rebuild();
+	}
+
+	// Method to get the best selling titles and authors starting with the
+	// prefix:
+	public List<AutocompleteSuggestion> complete(String prefix, int limit) {
+		String key = normalize(prefix);
+		if (key.isEmpty())
+			return List.of();
+
+		lock.readLock().lock();
+		try {
+			// The counters of the ranking were recalculated, the trie is rebuilt
+			// with them once per epoch and this lookup is served by the current
+			// one:
+			long epoch = salesRanking.getEpoch();
+			if (trie.salesEpoch != epoch && requestedEpoch != epoch) {
+				requestedEpoch = epoch;
+				backgroundRebuild.request();
+			}
+
+			Node node = trie.root;
+			for (int i = 0; i < key.length() && node != null; i++) {
+				node = node.getChild(key.charAt(i));
+			}
+
+			if (node == null)
+				return List.of();
+
+			List<AutocompleteSuggestion> suggestions = new ArrayList<>();
+			for (int i = 0; i < node.top.length && i < limit; i++) {
+				suggestions.add(node.top[i].view);
+			}
+			return suggestions;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// Method to build the trie from scratch out of the books table and the
+	// sales, on the calling thread:
+	public void rebuild() {
+		backgroundRebuild.rebuild();
+	}
+
+	@Override
+	public void booksChanged(Collection<Book> savedBooks, Collection<Long> removedBookIds) {
+		List<BookText> bookTexts = savedBooks.stream()
+				.map(book -> new BookText(book.getId(), book.getTitle(), book.getAuthor())).toList();
+
+		this.applyChange(changed -> {
+			removedBookIds.forEach(changed::removeBook);
+			bookTexts.forEach(changed::putBook);
+		});
+	}
+
+	@Override
+	public void catalogReplaced() {
+		backgroundRebuild.request();
+	}
+
+	// The sales committed after the trie was built raise the weights of the
+	// suggestions of the sold books:
+	private void addSales(Map<Long, Long> sales, long epoch, long version) {
+		this.applyChange(changed -> changed.addSales(sales, epoch, version));
+	}
+
+	private void applyChange(Consumer<Trie> change) {
+		lock.writeLock().lock();
+		try {
+			change.accept(trie);
+			if (changesDuringRebuild != null)
+				changesDuringRebuild.add(change);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// The books are loaded in a transaction of their own rather than out of the
+	// CatalogCache, so the trie never holds the uncommitted books of the
+	// caller's transaction. The trie is built without the lock:
+	private void build() {
+		this.setChangesDuringRebuild(new ArrayList<>());
+
+		try {
+			SalesRanking.SalesSnapshot sales = salesRanking.getSales();
+
+			TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+			transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+			transactionTemplate.setReadOnly(true);
+
+			Trie rebuilt = transactionTemplate.execute(status -> {
+				Trie newTrie = new Trie(sales.epoch(), sales.version());
+				for (Book book : bookRepository.findAll()) {
+					long bookSales = sales.salesByBookId().getOrDefault(book.getId(), 0L);
+					newTrie.addBookSuggestions(new BookText(book.getId(), book.getTitle(), book.getAuthor()),
+							bookSales);
+				}
+				return newTrie;
+			});
+
+			lock.writeLock().lock();
+			try {
+				changesDuringRebuild.forEach(change -> change.accept(rebuilt));
+				trie = rebuilt;
+			} finally {
+				lock.writeLock().unlock();
+			}
+		} finally {
+			this.setChangesDuringRebuild(null);
+		}
+	}
+
+	private void setChangesDuringRebuild(List<Consumer<Trie>> changes) {
+		lock.writeLock().lock();
+		try {
+			changesDuringRebuild = changes;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private class Trie {
+		private final Node root = new Node();
+		private final Map<String, Suggestion> suggestionsByKey = new HashMap<>();
+		private final Map<Long, IndexedBook> booksById = new HashMap<>();
+
+		// The epoch and the version of the sales the trie was built with:
+		private final long salesEpoch;
+		private long salesVersion;
+
+		private Trie(long salesEpoch, long salesVersion) {
+			this.salesEpoch = salesEpoch;
+			this.salesVersion = salesVersion;
+		}
+
+		// The sales of an older epoch are dropped, the trie is rebuilt anyway:
+		private void addSales(Map<Long, Long> sales, long epoch, long version) {
+			if (epoch != salesEpoch || version <= salesVersion)
+				return;
+
+			salesVersion = version;
+			sales.forEach((bookId, quantity) -> {
+				IndexedBook indexedBook = booksById.get(bookId);
+				if (indexedBook == null)
+					return;
+
+				indexedBook.sales += quantity;
+				this.addToWeight(indexedBook.title, quantity);
+				this.addToWeight(indexedBook.author, quantity);
+			});
+		}
+
+		// A changed book keeps its sales:
+		private void putBook(BookText book) {
+			IndexedBook indexedBook = this.removeBook(book.bookId());
+			this.addBookSuggestions(book, indexedBook == null ? 0 : indexedBook.sales);
+		}
+
+		private IndexedBook removeBook(Long bookId) {
+			IndexedBook indexedBook = booksById.remove(bookId);
+			if (indexedBook == null)
+				return null;
+
+			this.removeFromSuggestion(indexedBook.title, indexedBook.sales);
+			this.removeFromSuggestion(indexedBook.author, indexedBook.sales);
+			return indexedBook;
+		}
+
+		private void addToWeight(Suggestion suggestion, long quantity) {
+			if (suggestion == null)
+				return;
+
+			suggestion.weight += quantity;
+			this.updatePaths(suggestion);
+		}
+
+		private void addBookSuggestions(BookText book, long sales) {
+			Suggestion titleSuggestion = this.addToSuggestion(book.title(), TITLE, sales);
+			Suggestion authorSuggestion = this.addToSuggestion(book.author(), AUTHOR, sales);
+
+			booksById.put(book.bookId(), new IndexedBook(titleSuggestion, authorSuggestion, sales));
+		}
+
+		private Suggestion addToSuggestion(String text, String type, long sales) {
+			String normalizedText = normalize(text);
+			if (normalizedText.isEmpty())
+				return null;
+
+			String suggestionKey = type + ":" + normalizedText;
+			Suggestion suggestion = suggestionsByKey.get(suggestionKey);
+
+			if (suggestion == null) {
+				suggestion = new Suggestion(suggestionKey, new AutocompleteSuggestion(text, type),
+						keysOf(normalizedText));
+				suggestionsByKey.put(suggestionKey, suggestion);
+				suggestion.weight = sales;
+				suggestion.bookCount = 1;
+				this.insert(suggestion);
+				return suggestion;
+			}
+
+			suggestion.weight += sales;
+			suggestion.bookCount++;
+			this.updatePaths(suggestion);
+			return suggestion;
+		}
+
+		// The suggestion is shared by the books with the same text, it leaves the
+		// trie with the last of them:
+		private void removeFromSuggestion(Suggestion suggestion, long sales) {
+			if (suggestion == null)
+				return;
+
+			suggestion.bookCount--;
+			suggestion.weight -= sales;
+
+			if (suggestion.bookCount > 0) {
+				this.updatePaths(suggestion);
+				return;
+			}
+
+			suggestionsByKey.remove(suggestion.suggestionKey);
+			for (String key : suggestion.keys) {
+				List<Node> path = this.getPath(key);
+				path.get(path.size() - 1).removeTerminal(suggestion);
+				this.recalculate(path, key);
+			}
+		}
+
+		private void insert(Suggestion suggestion) {
+			for (String key : suggestion.keys) {
+				Node node = root;
+				for (int i = 0; i < key.length(); i++) {
+					node = node.getOrCreateChild(key.charAt(i));
+				}
+				node.addTerminal(suggestion);
+			}
+			this.updatePaths(suggestion);
+		}
+
+		private void updatePaths(Suggestion suggestion) {
+			for (String key : suggestion.keys) {
+				this.recalculate(this.getPath(key), key);
+			}
+		}
+
+		private List<Node> getPath(String key) {
+			List<Node> path = new ArrayList<>(key.length() + 1);
+			Node node = root;
+			path.add(node);
+
+			for (int i = 0; i < key.length(); i++) {
+				node = node.getChild(key.charAt(i));
+				path.add(node);
+			}
+			return path;
+		}
+
+		// The top of a node is merged out of its own suggestions and the tops of
+		// its children, so the path is recalculated from the bottom up. Empty
+		// nodes are unlinked from their parents:
+		private void recalculate(List<Node> path, String key) {
+			for (int i = path.size() - 1; i >= 0; i--) {
+				Node node = path.get(i);
+				node.recalculateTop(topSize);
+
+				if (i > 0 && node.isEmpty())
+					path.get(i - 1).removeChild(key.charAt(i - 1));
+			}
+		}
+	}
+
+	// Method to fold the text and join its tokens with single spaces:
+	private static String normalize(String text) {
+		return String.join(" ", SearchText.tokenize(text));
+	}
+
+	// The suggestion is reachable from the start of every word:
+	private static List<String> keysOf(String normalizedText) {
+		Set<String> keys = new LinkedHashSet<>();
+		keys.add(normalizedText);
+
+		for (int i = 0; i < normalizedText.length(); i++) {
+			if (normalizedText.charAt(i) == ' ')
+				keys.add(normalizedText.substring(i + 1));
+		}
+		return List.copyOf(keys);
+	}
+
+	private record BookText(Long bookId, String title, String author) {
+	}
+
+	private static class IndexedBook {
+		private final Suggestion title;
+		private final Suggestion author;
+		private long sales;
+
+		private IndexedBook(Suggestion title, Suggestion author, long sales) {
+			this.title = title;
+			this.author = author;
+			this.sales = sales;
+		}
+	}
+
+	private static class Suggestion {
+		private final String suggestionKey;
+		private final AutocompleteSuggestion view;
+		private final List<String> keys;
+		private long weight;
+		private int bookCount;
+
+		private Suggestion(String suggestionKey, AutocompleteSuggestion view, List<String> keys) {
+			this.suggestionKey = suggestionKey;
+			this.view = view;
+			this.keys = keys;
+		}
+	}
+
+	// Children are kept in sorted arrays instead of maps to keep the nodes small:
+	private static class Node {
+		private static final char[] NO_LABELS = new char[0];
+		private static final Node[] NO_CHILDREN = new Node[0];
+		private static final Suggestion[] NO_SUGGESTIONS = new Suggestion[0];
+
+		private char[] labels = NO_LABELS;
+		private Node[] children = NO_CHILDREN;
+		private Suggestion[] terminals = NO_SUGGESTIONS;
+		private Suggestion[] top = NO_SUGGESTIONS;
+
+		private Node getChild(char label) {
+			int index = Arrays.binarySearch(labels, label);
+			return index < 0 ? null : children[index];
+		}
+
+		private Node getOrCreateChild(char label) {
+			int index = Arrays.binarySearch(labels, label);
+			if (index >= 0)
+				return children[index];
+
+			int insertAt = -index - 1;
+			Node child = new Node();
+
+			char[] newLabels = new char[labels.length + 1];
+			Node[] newChildren = new Node[children.length + 1];
+			System.arraycopy(labels, 0, newLabels, 0, insertAt);
+			System.arraycopy(children, 0, newChildren, 0, insertAt);
+			newLabels[insertAt] = label;
+			newChildren[insertAt] = child;
+			System.arraycopy(labels, insertAt, newLabels, insertAt + 1, labels.length - insertAt);
+			System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+
+			labels = newLabels;
+			children = newChildren;
+			return child;
+		}
+
+		private void removeChild(char label) {
+			int index = Arrays.binarySearch(labels, label);
+			if (index < 0)
+				return;
+
+			char[] newLabels = new char[labels.length - 1];
+			Node[] newChildren = new Node[children.length - 1];
+			System.arraycopy(labels, 0, newLabels, 0, index);
+			System.arraycopy(children, 0, newChildren, 0, index);
+			System.arraycopy(labels, index + 1, newLabels, index, labels.length - index - 1);
+			System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+
+			labels = newLabels;
+			children = newChildren;
+		}
+
+		private void addTerminal(Suggestion suggestion) {
+			terminals = Arrays.copyOf(terminals, terminals.length + 1);
+			terminals[terminals.length - 1] = suggestion;
+		}
+
+		private void removeTerminal(Suggestion suggestion) {
+			terminals = Arrays.stream(terminals).filter(terminal -> terminal != suggestion)
+					.toArray(Suggestion[]::new);
+		}
+
+		private boolean isEmpty() {
+			return terminals.length == 0 && children.length == 0;
+		}
+
+		private void recalculateTop(int topSize) {
+			Set<Suggestion> candidates = new LinkedHashSet<>(Arrays.asList(terminals));
+			for (Node child : children) {
+				candidates.addAll(Arrays.asList(child.top));
+			}
+
+			top = candidates.stream().sorted(BY_WEIGHT).limit(topSize).toArray(Suggestion[]::new);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package com.pro.mybooklist.service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Rebuild of an in-memory index on its own thread, shared by the
+// BookSearchIndex and the AutocompleteIndex. The requests made while a rebuild
+// is waiting to start are served by that one rebuild, and the readers keep
+// using the previous index until the rebuilt one is swapped in. Only one
+// rebuild runs at a time, whether it's requested or called directly.
+final class BackgroundRebuild {
+	private static final Logger log = LoggerFactory.getLogger(BackgroundRebuild.class);
+
+	private final Runnable rebuild;
+	private final ExecutorService executor;
+	private final AtomicBoolean requested = new AtomicBoolean();
+
+	BackgroundRebuild(String threadName, Runnable rebuild) {
+		this.rebuild = rebuild;
+		this.executor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, threadName);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	void request() {
+		if (!requested.compareAndSet(false, true))
+			return;
+
+		try {
+			executor.execute(this::runRequested);
+		} catch (RejectedExecutionException e) {
+			// The application is shutting down:
+			requested.set(false);
+		}
+	}
+
+	synchronized void rebuild() {
+		rebuild.run();
+	}
+
+	void shutdown() {
+		executor.shutdownNow();
+	}
+
+	// The flag is cleared before the rebuild starts, so a request made during
+	// the rebuild leads to one more:
+	private void runRequested() {
+		requested.set(false);
+		try {
+			this.rebuild();
+		} catch (RuntimeException e) {
+			log.error("Rebuilding the index failed", e);
+		}
+	}
+}
@@ -0,0 +1,368 @@
+package com.pro.mybooklist.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.pro.mybooklist.httpforms.BookFilter;
+import com.pro.mybooklist.httpforms.FacetCount;
+import com.pro.mybooklist.model.Book;
+import com.pro.mybooklist.model.CatalogEntityListener;
+import com.pro.mybooklist.model.Category;
+import com.pro.mybooklist.sqlforms.BookSummary;
+
+// Columnar copy of the catalog for the filters and facets. The books are rows
+// of primitive arrays ordered by id; categories and authors are dictionary
+// encoded and have one bitmap each, price and year ranges are found with a
+// binary search over the pre-sorted columns. A filter is the intersection of
+// the bitmaps of its conditions. Like the CatalogCache, the index is rebuilt
+// lazily on the first read after the catalog version changes.
+@Component
+public class BookFacetIndex {
+	public static final Set<String> SORTS = Set.of("id", "-id", "price", "-price", "year", "-year", "title",
+			"-title");
+
+	private static final int AUTHOR_FACET_SIZE = 20;
+
+	@Autowired
+	private CatalogCache catalogCache;
+
+	private volatile Columns columns;
+
+	public record FilterResult(long total, List<BookSummary> books, List<FacetCount> categories,
+			List<FacetCount> authors) {
+	}
+
+	// Method to filter and sort the books and count the facets. The count of a
+	// facet value ignores the condition on its own facet, so the other values
+	// stay selectable:
+	public FilterResult filter(BookFilter filter, String sort, long offset, int limit) {
+		Columns currentColumns = this.getColumns();
+
+		BitSet priceRows = currentColumns.priceRange(filter.getMinPrice(), filter.getMaxPrice());
+		BitSet yearRows = currentColumns.yearRange(filter.getMinYear(), filter.getMaxYear());
+		BitSet categoryRows = currentColumns.categoryRows(filter.getCategoryid());
+		BitSet authorRows = currentColumns.authorRows(filter.getAuthor());
+
+		BitSet rangeRows = currentColumns.intersect(priceRows, yearRows);
+		BitSet rowsForCategories = currentColumns.intersect(rangeRows, authorRows);
+		BitSet rowsForAuthors = currentColumns.intersect(rangeRows, categoryRows);
+		BitSet rows = currentColumns.intersect(rowsForCategories, categoryRows);
+
+		List<BookSummary> books = currentColumns.page(rows, sort, offset, limit);
+		List<FacetCount> categories = currentColumns.countCategories(rowsForCategories);
+		List<FacetCount> authors = currentColumns.countAuthors(rowsForAuthors);
+
+		long total = rows == null ? currentColumns.rowCount : rows.cardinality();
+		return new FilterResult(total, books, categories, authors);
+	}
+
+	private Columns getColumns() {
+		Columns currentColumns = columns;
+
+		if (currentColumns != null && currentColumns.version == CatalogEntityListener.getVersion())
+			return currentColumns;
+
+		synchronized (this) {
+			currentColumns = columns;
+			long version = CatalogEntityListener.getVersion();
+
+			if (currentColumns != null && currentColumns.version == version)
+				return currentColumns;
+
+			// The version is read before loading the books, a change made
+			// meanwhile leads to one more rebuild:
+			currentColumns = new Columns(version, catalogCache.getBooks(), catalogCache.getCategories());
+			columns = currentColumns;
+			return currentColumns;
+		}
+	}
+
+	private static class Columns {
+		private final long version;
+		private final int rowCount;
+
+		private final BookSummary[] summaries;
+		private final int[] authorCodes;
+		private final int[] categoryCodes;
+
+		private final int[] rowsByPrice;
+		private final double[] sortedPrices;
+		private final int[] rowsByYear;
+		private final int[] sortedYears;
+		private final int[] rowsByTitle;
+
+		private final Map<String, Integer> authorCodesByName = new HashMap<>();
+		private final List<String> authorNames = new ArrayList<>();
+		private final List<BitSet> authorBitmaps = new ArrayList<>();
+
+		private final Map<Long, Integer> categoryCodesById = new HashMap<>();
+		private final long[] categoryIds;
+		private final String[] categoryNames;
+		private final BitSet[] categoryBitmaps;
+
+		private Columns(long version, List<Book> books, List<Category> categories) {
+			this.version = version;
+			this.rowCount = books.size();
+
+			categoryIds = new long[categories.size()];
+			categoryNames = new String[categories.size()];
+			categoryBitmaps = new BitSet[categories.size()];
+			for (int code = 0; code < categories.size(); code++) {
+				Category category = categories.get(code);
+				categoryIds[code] = category.getCategoryid();
+				categoryNames[code] = category.getName();
+				categoryBitmaps[code] = new BitSet(rowCount);
+				categoryCodesById.put(category.getCategoryid(), code);
+			}
+
+			Book[] rows = books.toArray(Book[]::new);
+			Arrays.sort(rows, Comparator.comparing(Book::getId));
+
+			summaries = new BookSummary[rowCount];
+			authorCodes = new int[rowCount];
+			categoryCodes = new int[rowCount];
+			double[] prices = new double[rowCount];
+			int[] years = new int[rowCount];
+
+			for (int row = 0; row < rowCount; row++) {
+				Book book = rows[row];
+				summaries[row] = BookSummary.of(book);
+				prices[row] = book.getPrice();
+				years[row] = book.getBookYear();
+
+				authorCodes[row] = this.encodeAuthor(book.getAuthor());
+				authorBitmaps.get(authorCodes[row]).set(row);
+
+				Integer categoryCode = book.getCategory() == null ? null
+						: categoryCodesById.get(book.getCategory().getCategoryid());
+				categoryCodes[row] = categoryCode == null ? -1 : categoryCode;
+				if (categoryCode != null)
+					categoryBitmaps[categoryCode].set(row);
+			}
+
+			rowsByPrice = sortedRows(row -> prices[row], rowCount);
+			sortedPrices = Arrays.stream(rowsByPrice).mapToDouble(row -> prices[row]).toArray();
+			rowsByYear = sortedRows(row -> years[row], rowCount);
+			sortedYears = Arrays.stream(rowsByYear).map(row -> years[row]).toArray();
+			rowsByTitle = sortedRows(row -> SearchText.fold(summaries[row].title()), rowCount);
+		}
+
+		private int encodeAuthor(String author) {
+			String foldedAuthor = SearchText.fold(author);
+			Integer code = authorCodesByName.get(foldedAuthor);
+
+			if (code == null) {
+				code = authorNames.size();
+				authorCodesByName.put(foldedAuthor, code);
+				authorNames.add(author);
+				authorBitmaps.add(new BitSet(rowCount));
+			}
+			return code;
+		}
+
+		// The rows ordered by the column value, equal values by id:
+		private static <T extends Comparable<T>> int[] sortedRows(IntFunction<T> value, int rowCount) {
+			return IntStream.range(0, rowCount).boxed()
+					.sorted(Comparator.comparing((Integer row) -> value.apply(row)).thenComparing(row -> row))
+					.mapToInt(Integer::intValue).toArray();
+		}
+
+		// null stands for all the rows:
+		private BitSet priceRange(Double minPrice, Double maxPrice) {
+			if (minPrice == null && maxPrice == null)
+				return null;
+
+			int from = minPrice == null ? 0 : lowerBound(sortedPrices, minPrice);
+			int to = maxPrice == null ? rowCount : upperBound(sortedPrices, maxPrice);
+			return this.rowsOf(rowsByPrice, from, to);
+		}
+
+		private BitSet yearRange(Integer minYear, Integer maxYear) {
+			if (minYear == null && maxYear == null)
+				return null;
+
+			int from = minYear == null ? 0 : lowerBound(sortedYears, minYear);
+			int to = maxYear == null ? rowCount : upperBound(sortedYears, maxYear);
+			return this.rowsOf(rowsByYear, from, to);
+		}
+
+		private BitSet rowsOf(int[] sortedRows, int from, int to) {
+			BitSet rows = new BitSet(rowCount);
+			for (int i = from; i < to; i++) {
+				rows.set(sortedRows[i]);
+			}
+			return rows;
+		}
+
+		private BitSet categoryRows(List<Long> categoryids) {
+			if (categoryids == null || categoryids.isEmpty())
+				return null;
+
+			BitSet rows = new BitSet(rowCount);
+			for (Long categoryid : categoryids) {
+				Integer code = categoryCodesById.get(categoryid);
+				if (code != null)
+					rows.or(categoryBitmaps[code]);
+			}
+			return rows;
+		}
+
+		private BitSet authorRows(List<String> authors) {
+			if (authors == null || authors.isEmpty())
+				return null;
+
+			BitSet rows = new BitSet(rowCount);
+			for (String author : authors) {
+				Integer code = authorCodesByName.get(SearchText.fold(author));
+				if (code != null)
+					rows.or(authorBitmaps.get(code));
+			}
+			return rows;
+		}
+
+		private BitSet intersect(BitSet first, BitSet second) {
+			if (first == null)
+				return second;
+			if (second == null)
+				return first;
+
+			BitSet rows = (BitSet) first.clone();
+			rows.and(second);
+			return rows;
+		}
+
+		private List<BookSummary> page(BitSet rows, String sort, long offset, int limit) {
+			BitSet matchingRows = rows == null ? this.allRows() : rows;
+			List<BookSummary> books = new ArrayList<>();
+
+			if (sort == null || sort.equals("id")) {
+				int row = matchingRows.nextSetBit(0);
+				for (long skipped = 0; row >= 0 && skipped < offset; skipped++) {
+					row = matchingRows.nextSetBit(row + 1);
+				}
+				for (; row >= 0 && books.size() < limit; row = matchingRows.nextSetBit(row + 1)) {
+					books.add(summaries[row]);
+				}
+				return books;
+			}
+
+			boolean descending = sort.startsWith("-");
+			int[] sortedRows = switch (descending ? sort.substring(1) : sort) {
+			case "price" -> rowsByPrice;
+			case "year" -> rowsByYear;
+			case "title" -> rowsByTitle;
+			default -> IntStream.range(0, rowCount).toArray();
+			};
+
+			long skipped = 0;
+			for (int i = 0; i < rowCount && books.size() < limit; i++) {
+				int row = sortedRows[descending ? rowCount - 1 - i : i];
+				if (!matchingRows.get(row))
+					continue;
+
+				if (skipped < offset)
+					skipped++;
+				else
+					books.add(summaries[row]);
+			}
+			return books;
+		}
+
+		private BitSet allRows() {
+			BitSet rows = new BitSet(rowCount);
+			rows.set(0, rowCount);
+			return rows;
+		}
+
+		private List<FacetCount> countCategories(BitSet rows) {
+			int[] counts = this.count(rows, categoryCodes, categoryIds.length);
+
+			List<FacetCount> facets = new ArrayList<>();
+			for (int code = 0; code < counts.length; code++) {
+				if (counts[code] > 0)
+					facets.add(new FacetCount(categoryIds[code], categoryNames[code], counts[code]));
+			}
+			return facets;
+		}
+
+		private List<FacetCount> countAuthors(BitSet rows) {
+			int[] counts = this.count(rows, authorCodes, authorNames.size());
+
+			return IntStream.range(0, counts.length).filter(code -> counts[code] > 0).boxed()
+					.sorted(Comparator.comparing((Integer code) -> counts[code]).reversed()
+							.thenComparing(code -> authorNames.get(code)))
+					.limit(AUTHOR_FACET_SIZE).map(code -> new FacetCount(null, authorNames.get(code), counts[code]))
+					.toList();
+		}
+
+		private int[] count(BitSet rows, int[] codes, int codeCount) {
+			int[] counts = new int[codeCount];
+			BitSet matchingRows = rows == null ? this.allRows() : rows;
+
+			for (int row = matchingRows.nextSetBit(0); row >= 0; row = matchingRows.nextSetBit(row + 1)) {
+				if (codes[row] >= 0)
+					counts[codes[row]]++;
+			}
+			return counts;
+		}
+
+		private static int lowerBound(double[] values, double value) {
+			int low = 0, high = values.length;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (values[middle] < value)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+			return low;
+		}
+
+		private static int upperBound(double[] values, double value) {
+			int low = 0, high = values.length;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (values[middle] <= value)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+			return low;
+		}
+
+		private static int lowerBound(int[] values, int value) {
+			int low = 0, high = values.length;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (values[middle] < value)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+			return low;
+		}
+
+		private static int upperBound(int[] values, int value) {
+			int low = 0, high = values.length;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (values[middle] <= value)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+			return low;
+		}
+	}
+}
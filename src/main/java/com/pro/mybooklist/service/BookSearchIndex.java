@@ -0,0 +1,333 @@
+package com.pro.mybooklist.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.pro.mybooklist.model.Book;
+import com.pro.mybooklist.model.BookRepository;
+import com.pro.mybooklist.model.CatalogEntityListener;
+import com.pro.mybooklist.sqlforms.BookSummary;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+// In-memory inverted index over the titles and authors of the books. The
+// index is built when the application starts and then kept up to date book by
+// book: the books saved or deleted through the entity manager, including
+// /api/books, are put into it or removed from it once their transaction
+// commits. After a native or bulk update of the catalog the index is rebuilt
+// on a background thread and swapped in, the searches keep using the previous
+// one meanwhile. Every query token must match a book: exactly, as a prefix
+// (only the last token, the one the user is still typing) or, when nothing
+// else matches, within a small edit distance. The matches are ranked with
+// BM25.
+@Component
+public class BookSearchIndex implements CatalogEntityListener.ChangeListener {
+	private static final double K1 = 1.2;
+	private static final double B = 0.75;
+	private static final int TITLE_WEIGHT = 2;
+	private static final double PREFIX_WEIGHT = 0.7;
+	private static final double FUZZY_WEIGHT = 0.5;
+	private static final int MIN_FUZZY_LENGTH = 4;
+
+	@Autowired
+	private BookRepository bookRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private Postings postings = new Postings();
+
+	// The changes committed while a rebuild loads the books, they are applied
+	// to the rebuilt postings too before it's swapped in:
+	private List<Consumer<Postings>> changesDuringRebuild;
+
+	private final BackgroundRebuild backgroundRebuild = new BackgroundRebuild("book-search-index", this::build);
+
+	public record SearchHits(long total, List<BookSummary> books) {
+	}
+
+	@PostConstruct
+	public void listenToCatalog() {
+		CatalogEntityListener.addChangeListener(this);
+	}
+
+	@PreDestroy
+	public void stopListening() {
+		CatalogEntityListener.removeChangeListener(this);
+		backgroundRebuild.shutdown();
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void buildOnStartup() {
+		backgroundRebuild.rebuild();
+	}
+
+	// Method to find the books matching the query, best matches first:
+	public SearchHits search(String query, long offset, int limit) {
+		List<String> queryTokens = SearchText.tokenize(query);
+		if (queryTokens.isEmpty())
+			return new SearchHits(0, List.of());
+
+		lock.readLock().lock();
+		try {
+			Map<Long, Double> scores = null;
+
+			for (int i = 0; i < queryTokens.size(); i++) {
+				boolean isLastToken = i == queryTokens.size() - 1;
+				Map<Long, Double> tokenScores = this.scoreToken(queryTokens.get(i), isLastToken);
+
+				if (scores == null) {
+					scores = tokenScores;
+				} else {
+					scores.keySet().retainAll(tokenScores.keySet());
+					scores.replaceAll((bookId, score) -> score + tokenScores.get(bookId));
+				}
+
+				if (scores.isEmpty())
+					return new SearchHits(0, List.of());
+			}
+
+			List<Map.Entry<Long, Double>> ranked = new ArrayList<>(scores.entrySet());
+			ranked.sort(Map.Entry.<Long, Double>comparingByValue(Comparator.reverseOrder())
+					.thenComparing(Map.Entry.comparingByKey()));
+
+			List<BookSummary> found = new ArrayList<>();
+			for (long i = offset; i < ranked.size() && i < offset + limit; i++) {
+				found.add(postings.books.get(ranked.get((int) i).getKey()).summary);
+			}
+
+			return new SearchHits(ranked.size(), found);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// Method to build the index from scratch out of the books table, on the
+	// calling thread:
+	public void rebuild() {
+		backgroundRebuild.rebuild();
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return postings.books.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void booksChanged(Collection<Book> savedBooks, Collection<Long> removedBookIds) {
+		List<IndexedBook> indexedBooks = savedBooks.stream().map(IndexedBook::new).toList();
+
+		this.applyChange(changed -> {
+			removedBookIds.forEach(changed::remove);
+			indexedBooks.forEach(changed::put);
+		});
+	}
+
+	@Override
+	public void catalogReplaced() {
+		backgroundRebuild.request();
+	}
+
+	private void applyChange(Consumer<Postings> change) {
+		lock.writeLock().lock();
+		try {
+			change.accept(postings);
+			if (changesDuringRebuild != null)
+				changesDuringRebuild.add(change);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// The books are loaded in a transaction of their own rather than out of the
+	// CatalogCache, so the index never holds the uncommitted books of the
+	// caller's transaction. The postings are built without the lock:
+	private void build() {
+		this.setChangesDuringRebuild(new ArrayList<>());
+
+		try {
+			TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+			transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+			transactionTemplate.setReadOnly(true);
+
+			Postings rebuilt = transactionTemplate.execute(status -> {
+				Postings newPostings = new Postings();
+				for (Book book : bookRepository.findAll()) {
+					newPostings.put(new IndexedBook(book));
+				}
+				return newPostings;
+			});
+
+			lock.writeLock().lock();
+			try {
+				changesDuringRebuild.forEach(change -> change.accept(rebuilt));
+				postings = rebuilt;
+			} finally {
+				lock.writeLock().unlock();
+			}
+		} finally {
+			this.setChangesDuringRebuild(null);
+		}
+	}
+
+	private void setChangesDuringRebuild(List<Consumer<Postings>> changes) {
+		lock.writeLock().lock();
+		try {
+			changesDuringRebuild = changes;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private Map<Long, Double> scoreToken(String token, boolean isLastToken) {
+		Map<Long, Double> scores = new HashMap<>();
+
+		this.addScores(scores, token, 1);
+
+		if (isLastToken) {
+			SortedMap<String, Map<Long, Integer>> prefixed = postings.terms.subMap(token,
+					token + Character.MAX_VALUE);
+			for (String term : prefixed.keySet()) {
+				if (!term.equals(token))
+					this.addScores(scores, term, PREFIX_WEIGHT);
+			}
+		}
+
+		if (scores.isEmpty() && token.length() >= MIN_FUZZY_LENGTH) {
+			int maxDistance = token.length() >= 8 ? 2 : 1;
+			// A typo in the first letter is rare, only the terms starting with the
+			// same letter are compared:
+			String firstLetter = token.substring(0, 1);
+			for (String term : postings.terms.subMap(firstLetter, firstLetter + Character.MAX_VALUE).keySet()) {
+				if (Math.abs(term.length() - token.length()) <= maxDistance
+						&& editDistance(token, term, maxDistance) <= maxDistance)
+					this.addScores(scores, term, FUZZY_WEIGHT);
+			}
+		}
+
+		return scores;
+	}
+
+	private void addScores(Map<Long, Double> scores, String term, double weight) {
+		Map<Long, Integer> bookFrequencies = postings.terms.get(term);
+		if (bookFrequencies == null)
+			return;
+
+		double bookCount = postings.books.size();
+		double averageLength = (double) postings.totalLength / bookCount;
+		double idf = Math.log(1 + (bookCount - bookFrequencies.size() + 0.5) / (bookFrequencies.size() + 0.5));
+
+		for (Map.Entry<Long, Integer> bookFrequency : bookFrequencies.entrySet()) {
+			double frequency = bookFrequency.getValue();
+			double length = postings.books.get(bookFrequency.getKey()).length;
+			double score = idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+
+			scores.merge(bookFrequency.getKey(), weight * score, Math::max);
+		}
+	}
+
+	// Levenshtein distance, stops early when it's already over the maximum:
+	private static int editDistance(String first, String second, int maxDistance) {
+		int[] previous = new int[second.length() + 1];
+		int[] current = new int[second.length() + 1];
+		for (int j = 0; j <= second.length(); j++) {
+			previous[j] = j;
+		}
+
+		for (int i = 1; i <= first.length(); i++) {
+			current[0] = i;
+			int rowMinimum = current[0];
+
+			for (int j = 1; j <= second.length(); j++) {
+				int substitution = previous[j - 1] + (first.charAt(i - 1) == second.charAt(j - 1) ? 0 : 1);
+				current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+				rowMinimum = Math.min(rowMinimum, current[j]);
+			}
+
+			if (rowMinimum > maxDistance)
+				return rowMinimum;
+
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+
+		return previous[second.length()];
+	}
+
+	private static class Postings {
+		// term -> (book id -> weighted term frequency):
+		private final TreeMap<String, Map<Long, Integer>> terms = new TreeMap<>();
+		private final Map<Long, IndexedBook> books = new HashMap<>();
+		private long totalLength;
+
+		private void put(IndexedBook indexedBook) {
+			this.remove(indexedBook.summary.bookid());
+
+			for (Map.Entry<String, Integer> term : indexedBook.termFrequencies.entrySet()) {
+				terms.computeIfAbsent(term.getKey(), key -> new HashMap<>()).put(indexedBook.summary.bookid(),
+						term.getValue());
+			}
+			books.put(indexedBook.summary.bookid(), indexedBook);
+			totalLength += indexedBook.length;
+		}
+
+		private void remove(Long bookId) {
+			IndexedBook indexedBook = books.remove(bookId);
+			if (indexedBook == null)
+				return;
+
+			for (String term : indexedBook.termFrequencies.keySet()) {
+				Map<Long, Integer> bookFrequencies = terms.get(term);
+				bookFrequencies.remove(bookId);
+				if (bookFrequencies.isEmpty())
+					terms.remove(term);
+			}
+			totalLength -= indexedBook.length;
+		}
+	}
+
+	private static class IndexedBook {
+		private final BookSummary summary;
+		private final Map<String, Integer> termFrequencies = new HashMap<>();
+		private final int length;
+
+		private IndexedBook(Book book) {
+			this.summary = BookSummary.of(book);
+
+			// The title terms weigh more than the author terms:
+			List<String> titleTokens = SearchText.tokenize(summary.title());
+			List<String> authorTokens = SearchText.tokenize(summary.author());
+			for (String token : titleTokens) {
+				termFrequencies.merge(token, TITLE_WEIGHT, Integer::sum);
+			}
+			for (String token : authorTokens) {
+				termFrequencies.merge(token, 1, Integer::sum);
+			}
+			this.length = titleTokens.size() + authorTokens.size();
+		}
+	}
+}
@@ -4,6 +4,8 @@ import java.util.List;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -11,15 +13,25 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
 import com.pro.mybooklist.httpforms.CartInfo;
+import com.pro.mybooklist.httpforms.AutocompleteSuggestion;
+import com.pro.mybooklist.httpforms.BookFilter;
+import com.pro.mybooklist.httpforms.BookFilterPage;
+import com.pro.mybooklist.httpforms.BookPage;
+import com.pro.mybooklist.httpforms.BookSearchPage;
 import com.pro.mybooklist.httpforms.BookUpdate;
 import com.pro.mybooklist.model.Book;
 import com.pro.mybooklist.model.BookRepository;
+import com.pro.mybooklist.model.CartRepository;
+import com.pro.mybooklist.model.OrderLineRepository;
 import com.pro.mybooklist.model.Category;
 import com.pro.mybooklist.model.CategoryRepository;
 import com.pro.mybooklist.model.User;
 import com.pro.mybooklist.sqlforms.BookInCurrentCart;
+import com.pro.mybooklist.sqlforms.BookSummary;
 import com.pro.mybooklist.sqlforms.RawBookInfo;
 
+import jakarta.transaction.Transactional;
+
 @Service
 public class BookService {
 	@Autowired
@@ -28,33 +40,165 @@ public class BookService {
 	@Autowired
 	private CategoryRepository categoryRepository;
 
+	@Autowired
+	private CartRepository cartRepository;
+
+	@Autowired
+	private OrderLineRepository orderLineRepository;
+
 	@Autowired
 	private CommonService commonService;
 
-	// Method to get books
+	@Autowired
+	private CatalogCache catalogCache;
+
+	@Autowired
+	private SalesRanking salesRanking;
+
+	@Autowired
+	private BookSearchIndex bookSearchIndex;
+
+	@Autowired
+	private AutocompleteIndex autocompleteIndex;
+
+	@Autowired
+	private BookFacetIndex bookFacetIndex;
+
+	@Value("${autocomplete.top-size:10}")
+	private int autocompleteTopSize;
+
+	@Value("${catalog.page.default-size:20}")
+	private int defaultPageSize;
+
+	@Value("${catalog.page.max-size:100}")
+	private int maxPageSize;
+
+	// Method to get books from the catalog cache
 	public List<Book> getBooks() {
-		List<Book> books = (List<Book>) bookRepository.findAll();
+		List<Book> books = catalogCache.getBooks();
 		return books;
 	}
 
-	// Method to get a book by id
+	// Method to get a book by id from the catalog cache
 	public Optional<Book> getBookById(Long bookId) {
-		Optional<Book> optionalBook = bookRepository.findById(bookId);
+		Optional<Book> optionalBook = catalogCache.getBookById(bookId);
 		return optionalBook;
 	}
 
-	// Method to get list of books by category:
+	// Method to get list of books by category from the catalog cache:
 	public List<Book> getBooksByCategory(Category category) {
-		List<Book> booksInCategory = bookRepository.findByCategory(category);
+		List<Book> booksInCategory = catalogCache.getBooksByCategoryId(category.getCategoryid());
 		return booksInCategory;
 	}
 
-	// Method to get list of books that are top saled:
+	// Method to get one page of book summaries ordered by id or by title. The
+	// page starts after the last book of the previous page (keyset
+	// pagination), so the cost of the query doesn't grow with the page number:
+	public BookPage getBooksPage(String sort, Long categoryid, Long afterId, String afterTitle, Integer size) {
+		int pageSize = this.getPageSize(size);
+		Limit limit = Limit.of(pageSize + 1);
+		Long lastId = afterId == null ? Long.valueOf(0) : afterId;
+
+		List<BookSummary> books;
+		if (sort == null || sort.equals("id")) {
+			books = categoryid == null ? bookRepository.findSummariesAfterId(lastId, limit)
+					: bookRepository.findSummariesByCategoryAfterId(categoryid, lastId, limit);
+		} else if (sort.equals("title")) {
+			// The title and the id of the last book make the key together, one
+			// of them alone would repeat or skip the books with the same title:
+			if ((afterTitle == null) != (afterId == null))
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+						"The afterTitle and afterId must be given together");
+
+			String lastTitle = afterTitle == null ? "" : afterTitle;
+			books = categoryid == null ? bookRepository.findSummariesAfterTitle(lastTitle, lastId, limit)
+					: bookRepository.findSummariesByCategoryAfterTitle(categoryid, lastTitle, lastId, limit);
+		} else {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The books can be sorted only by id or title");
+		}
+
+		// One extra row is fetched to know if there is a next page:
+		if (books.size() <= pageSize)
+			return new BookPage(books, null, null);
+
+		List<BookSummary> pageBooks = books.subList(0, pageSize);
+		BookSummary lastBook = pageBooks.get(pageSize - 1);
+		String nextAfterTitle = sort != null && sort.equals("title") ? lastBook.title() : null;
+
+		return new BookPage(List.copyOf(pageBooks), lastBook.bookid(), nextAfterTitle);
+	}
+
+	// Method to search the books by title and author in the search index:
+	public BookSearchPage searchBooks(String query, Integer page, Integer size) {
+		if (query == null || query.isBlank())
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The search query is empty");
+
+		int pageNumber = page == null ? 0 : page;
+		if (pageNumber < 0)
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The page number can't be negative");
+
+		int pageSize = this.getPageSize(size);
+		// The offset is a long, the product overflows an int for the large page
+		// numbers:
+		BookSearchIndex.SearchHits hits = bookSearchIndex.search(query, (long) pageNumber * pageSize, pageSize);
+
+		return new BookSearchPage(hits.books(), hits.total(), pageNumber, pageSize);
+	}
+
+	// Method to filter the books by price, year, category and author with the
+	// facet counts, out of the columnar index:
+	public BookFilterPage filterBooks(BookFilter filter) {
+		String sort = filter.getSort();
+		if (sort != null && !BookFacetIndex.SORTS.contains(sort))
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					"The books can be sorted only by id, price, year or title");
+
+		int pageNumber = filter.getPage() == null ? 0 : filter.getPage();
+		if (pageNumber < 0)
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The page number can't be negative");
+
+		int pageSize = this.getPageSize(filter.getSize());
+		BookFacetIndex.FilterResult result = bookFacetIndex.filter(filter, sort, (long) pageNumber * pageSize,
+				pageSize);
+
+		return new BookFilterPage(result.books(), result.total(), pageNumber, pageSize, result.categories(),
+				result.authors());
+	}
+
+	// Method to get the titles and authors for the typeahead:
+	public List<AutocompleteSuggestion> autocomplete(String prefix, Integer limit) {
+		if (prefix == null)
+			return List.of();
+
+		int suggestionsLimit = limit == null || limit < 1 ? autocompleteTopSize
+				: Math.min(limit, autocompleteTopSize);
+		return autocompleteIndex.complete(prefix, suggestionsLimit);
+	}
+
+	private int getPageSize(Integer size) {
+		if (size == null)
+			return defaultPageSize;
+
+		if (size < 1)
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The page size must be positive");
+
+		return Math.min(size, maxPageSize);
+	}
+
+	// Method to get list of books that are top saled from the in-memory
+	// ranking:
 	public List<RawBookInfo> getTopSales() {
-		List<RawBookInfo> booksTopSaled = bookRepository.findTopSales();
+		List<RawBookInfo> booksTopSaled = salesRanking.getTopSales();
 		return booksTopSaled;
 	}
 
+	// Method to recalculate the top sales ranking out of the closed carts:
+	public ResponseEntity<?> rebuildTopSales() {
+		salesRanking.rebuild();
+
+		return new ResponseEntity<>("The top sales ranking was rebuilt successfully", HttpStatus.OK);
+	}
+
 	// Method to get list of Ids of books by cart id
 	public List<Long> getIdsOfBooksBycartid(Long cartid) {
 		commonService.findCartAndCheckIsPrivate(cartid);
@@ -74,12 +218,13 @@ public class BookService {
 		return idsOfBooksInCurrentCart;
 	}
 
-	// Method to get list of Books in Cart by cartid and cart password:
+	// Method to get list of Books in Cart by cartid and cart token or password:
 	public List<BookInCurrentCart> getBooksInCartByIdAndPassword(CartInfo cartInfo) {
 		Long cartid = cartInfo.getId();
+		String token = cartInfo.getToken();
 		String password = cartInfo.getPassword();
 
-		commonService.findCartAndCheckIsPrivateAndCheckPassword(cartid, password);
+		commonService.findCartAndCheckIsPrivateAndCheckTokenOrPassword(cartid, token, password);
 
 		List<BookInCurrentCart> booksInCart = bookRepository.findBooksInCart(cartid);
 		return booksInCart;
@@ -95,15 +240,20 @@ public class BookService {
 		return booksInCurrentCartOfUser;
 	}
 
-	// Method to get list of Books in order by orderId:
+	// Method to get list of Books in order by orderId. The orders made before
+	// the lines were stored at checkout are read out of their carts:
 	public List<BookInCurrentCart> getBooksByOrderId(Long orderId) {
 		commonService.findOrder(orderId);
 
-		List<BookInCurrentCart> booksInOrder = bookRepository.findBooksInOrder(orderId);
+		List<BookInCurrentCart> booksInOrder = orderLineRepository.findBooksInOrder(orderId);
+		if (booksInOrder.isEmpty())
+			booksInOrder = bookRepository.findBooksInOrder(orderId);
+
 		return booksInOrder;
 	}
 
 	// Method to update book:
+	@Transactional
 	public ResponseEntity<?> updateBook(Long bookId, BookUpdate updatedBook) {
 		Book book = commonService.findBook(bookId);
 		String isbn = updatedBook.getIsbn();
@@ -124,6 +274,8 @@ public class BookService {
 	}
 
 	private void updateBook(Book bookToUpdate, BookUpdate updatedBook) {
+		boolean priceChanged = bookToUpdate.getPrice() != updatedBook.getPrice();
+
 		bookToUpdate.setTitle(updatedBook.getTitle());
 		bookToUpdate.setAuthor(updatedBook.getAuthor());
 		bookToUpdate.setIsbn(updatedBook.getIsbn());
@@ -134,6 +286,13 @@ public class BookService {
 		Category updatedCategory = this.findCategory(updatedBook.getCategoryId());
 		bookToUpdate.setCategory(updatedCategory);
 		bookRepository.save(bookToUpdate);
+
+		// The totals of the closed carts stay as they were. The current carts are
+		// locked like for any other change of their totals:
+		if (priceChanged) {
+			cartRepository.lockCurrentCartsWithBook(bookToUpdate.getId());
+			cartRepository.refreshTotalsOfCurrentCartsWithBook(bookToUpdate.getId());
+		}
 	}
 
 	private Category findCategory(Long categoryId) {
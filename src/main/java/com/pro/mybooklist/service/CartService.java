@@ -1,6 +1,8 @@
 package com.pro.mybooklist.service;
 
-import java.util.Optional;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import com.pro.mybooklist.model.*;
 import org.apache.commons.lang3.RandomStringUtils;
@@ -13,11 +15,17 @@ import org.springframework.web.server.ResponseStatusException;
 
 import com.pro.mybooklist.httpforms.CartInfo;
 import com.pro.mybooklist.httpforms.BookQuantityInfo;
+import com.pro.mybooklist.httpforms.CartChange;
+import com.pro.mybooklist.httpforms.CartChangesInfo;
+import com.pro.mybooklist.httpforms.CartView;
 import com.pro.mybooklist.httpforms.QuantityInfo;
 import com.pro.mybooklist.model.Cart;
+import com.pro.mybooklist.sqlforms.BookInCurrentCart;
 import com.pro.mybooklist.sqlforms.QuantityOfCart;
 import com.pro.mybooklist.sqlforms.TotalOfCart;
 
+import jakarta.transaction.Transactional;
+
 @Service
 public class CartService {
 	@Autowired
@@ -26,14 +34,22 @@ public class CartService {
 	@Autowired
 	private CartBookRepository cartBookRepository;
 
+	@Autowired
+	private BookRepository bookRepository;
+
 	@Autowired
 	private CommonService commonService;
 
-	// Method to get the total price of the cart by cartid and cart password:
+	@Autowired
+	private CartTokenService cartTokenService;
+
+	// Method to get the total price of the cart by cartid and cart token or
+	// password:
 	public TotalOfCart getTotalBycartid(CartInfo cartInfo) {
 		Long cartid = cartInfo.getId();
+		String token = cartInfo.getToken();
 		String password = cartInfo.getPassword();
-		commonService.findCartAndCheckIsPrivateAndCheckPassword(cartid, password);
+		commonService.findCartAndCheckIsPrivateAndCheckTokenOrPassword(cartid, token, password);
 
 		TotalOfCart totalOfCart = cartRepository.findTotalOfCart(cartid);
 		return totalOfCart;
@@ -60,17 +76,62 @@ public class CartService {
 		return quantityOfCurrentCart;
 	}
 
+	// Method to get the lines, the total and the quantity of the current cart
+	// of the user in one query:
+	public CartView getCurrentCartView(Authentication authentication) {
+		User user = commonService.checkAuthentication(authentication);
+		Cart currentCart = commonService.findCurrentCartOfUser(user);
+
+		return this.getCartView(currentCart.getCartid());
+	}
+
+	// Method to get the lines, the total and the quantity of the cart by cart
+	// id and cart token or password in one query:
+	public CartView getCartViewNoAuthentication(CartInfo cartInfo) {
+		Long cartid = cartInfo.getId();
+		String token = cartInfo.getToken();
+		String password = cartInfo.getPassword();
+		commonService.findCartAndCheckIsPrivateAndCheckTokenOrPassword(cartid, token, password);
+
+		return this.getCartView(cartid);
+	}
+
+	private CartView getCartView(Long cartid) {
+		List<BookInCurrentCart> booksInCart = bookRepository.findBooksInCart(cartid);
+
+		double total = 0;
+		int items = 0;
+		for (BookInCurrentCart bookInCart : booksInCart) {
+			total += bookInCart.price() * bookInCart.quantity();
+			items += bookInCart.quantity();
+		}
+
+		return new CartView(cartid, booksInCart, total, items);
+	}
+
 	// Method to create Cart with password and no user. The method returns the
-	// cart Id and its password
+	// cart Id, its password and the cart access token
 	public CartInfo createCartNoAuthentication() {
 		String password = RandomStringUtils.randomAlphanumeric(15);
 		String hashedPassword = commonService.encodePassword(password);
 		Long cartid = this.createCart(hashedPassword);
+		String token = cartTokenService.getToken(cartid);
 
-		CartInfo createdCartInfo = new CartInfo(cartid, password);
+		CartInfo createdCartInfo = new CartInfo(cartid, password, token);
 		return createdCartInfo;
 	}
 
+	// Method to exchange the cart id and password for a new cart access token:
+	public CartInfo getCartToken(CartInfo cartInfo) {
+		Long cartid = cartInfo.getId();
+		String password = cartInfo.getPassword();
+		commonService.findCartAndCheckIsPrivateAndCheckPassword(cartid, password);
+
+		String token = cartTokenService.getToken(cartid);
+		CartInfo cartTokenInfo = new CartInfo(cartid, null, token);
+		return cartTokenInfo;
+	}
+
 	private Long createCart(String hashedPassword) {
 		Cart cart = new Cart(hashedPassword);
 		cartRepository.save(cart);
@@ -80,157 +141,203 @@ public class CartService {
 	}
 
 	// Method to add the certain quantity of the book to the cart by cartid and
-	// cart password:
+	// cart token or password:
+	@Transactional
 	public ResponseEntity<?> addBookToCartNoAuthentication(Long cartid,
 			BookQuantityInfo bookQuantityAndCartPassword) {
 		Long bookId = bookQuantityAndCartPassword.getBookid();
 		int additionalQuantity = bookQuantityAndCartPassword.getQuantity();
+		String token = bookQuantityAndCartPassword.getToken();
 		String password = bookQuantityAndCartPassword.getPassword();
 
-		Cart cart = commonService.findCartAndCheckIsPrivateAndCheckPasswordAndCheckIsCurrent(cartid, password);
+		Cart cart = commonService.findCartAndCheckIsPrivateAndCheckTokenOrPasswordAndLockCurrent(cartid, token,
+				password);
 
 		return this.addQuantityOfBookToTheCart(cart, bookId, additionalQuantity);
 	}
 
 	// Method to add the certain quantity of the book to the current cart of the
 	// user:
+	@Transactional
 	public ResponseEntity<?> addBookToCurrentCart(Long bookId, QuantityInfo quantityInfo,
 			Authentication authentication) {
 		int additionalQuantity = quantityInfo.getQuantity();
 
 		User user = commonService.checkAuthentication(authentication);
-		Cart currentCart = commonService.findCurrentCartOfUser(user);
+		Cart currentCart = commonService.lockCurrentCartOfUser(user);
 
 		return this.addQuantityOfBookToTheCart(currentCart, bookId, additionalQuantity);
 	}
 
+	// The quantity is added with a single upsert, so concurrent additions of the
+	// same book are never lost. Like the other changes below, it runs on a cart
+	// the caller has locked, see CommonService.lockCart:
 	private ResponseEntity<?> addQuantityOfBookToTheCart(Cart cart, Long bookId, int additionalQuantity) {
 		Long cartid = cart.getCartid();
-		Book book = commonService.findBook(bookId);
-		Optional<CartBook> optionalCartBook = this.getOptionalCartBook(cartid, bookId);
-
-		if (optionalCartBook.isPresent()) {
-			CartBook cartBook = optionalCartBook.get();
-			this.addQuantityToCartBook(cartBook, additionalQuantity);
-		} else {
-			this.createCartBook(additionalQuantity, cart, book);
-		}
+		int upserted = cartBookRepository.upsertQuantity(cartid, bookId, additionalQuantity);
+		cartBookRepository.detachLine(cartid, bookId);
+
+		if (upserted == 0)
+			commonService.findBook(bookId);
+
+		cartRepository.refreshTotals(cartid);
 
 		return new ResponseEntity<>("Book was added to cart successfully", HttpStatus.OK);
 	}
 
-	private void addQuantityToCartBook(CartBook cartBook, int additionalQuantity) {
-		int currentQuantity = cartBook.getQuantity();
-		int newQuantity = currentQuantity + additionalQuantity;
-		this.setBookQuantityInCart(newQuantity, cartBook);
+	// Method to apply the list of quantity changes to the cart by cartid and cart
+	// token or password:
+	@Transactional
+	public ResponseEntity<?> changeBooksInCartNoAuthentication(Long cartid, CartChangesInfo cartChangesInfo) {
+		String token = cartChangesInfo.getToken();
+		String password = cartChangesInfo.getPassword();
+
+		Cart cart = commonService.findCartAndCheckIsPrivateAndCheckTokenOrPasswordAndLockCurrent(cartid, token,
+				password);
+
+		return this.applyChangesToCart(cart, cartChangesInfo.getChanges());
+	}
+
+	// Method to apply the list of quantity changes to the current cart of the
+	// authenticated user:
+	@Transactional
+	public ResponseEntity<?> changeBooksInCurrentCart(CartChangesInfo cartChangesInfo,
+			Authentication authentication) {
+		User user = commonService.checkAuthentication(authentication);
+		Cart currentCart = commonService.lockCurrentCartOfUser(user);
+
+		return this.applyChangesToCart(currentCart, cartChangesInfo.getChanges());
+	}
+
+	private ResponseEntity<?> applyChangesToCart(Cart cart, List<CartChange> changes) {
+		Map<Long, Integer> deltasByBookId = this.sumDeltasByBookId(changes);
+		this.checkBooksExist(deltasByBookId);
+
+		if (!deltasByBookId.isEmpty()) {
+			cartBookRepository.applyQuantityChanges(cart.getCartid(), deltasByBookId);
+			cartRepository.refreshTotals(cart.getCartid());
+		}
+
+		return new ResponseEntity<>("The changes were applied to the cart successfully", HttpStatus.OK);
 	}
 
-	private void createCartBook(int quantity, Cart cart, Book book) {
-		CartBook cartBook = new CartBook(quantity, cart, book);
-		cartBookRepository.save(cartBook);
+	private Map<Long, Integer> sumDeltasByBookId(List<CartChange> changes) {
+		if (changes == null || changes.isEmpty())
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The list of changes is empty");
+
+		Map<Long, Integer> deltasByBookId = new LinkedHashMap<>();
+		for (CartChange change : changes) {
+			if (change.getBookid() == null)
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The book id is missing");
+
+			deltasByBookId.merge(change.getBookid(), change.getDelta(), Integer::sum);
+		}
+
+		deltasByBookId.values().removeIf(delta -> delta == 0);
+		return deltasByBookId;
+	}
+
+	// All the books are checked with one query:
+	private void checkBooksExist(Map<Long, Integer> deltasByBookId) {
+		List<Book> books = (List<Book>) bookRepository.findAllById(deltasByBookId.keySet());
+
+		if (books.size() != deltasByBookId.size())
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "The book wasn't found by id");
 	}
 
 	// Method to reduce the amount of book by bookid and cartInfo
+	@Transactional
 	public ResponseEntity<?> reduceBookNoAuthentication(Long bookId, CartInfo cartInfo) {
 		Long cartid = cartInfo.getId();
+		String token = cartInfo.getToken();
 		String password = cartInfo.getPassword();
 
-		Cart cart = commonService.findCartAndCheckIsPrivateAndCheckPasswordAndCheckIsCurrent(cartid, password);
+		Cart cart = commonService.findCartAndCheckIsPrivateAndCheckTokenOrPasswordAndLockCurrent(cartid, token,
+				password);
 
 		return this.reduceQuantityOfBookInCart(cart, bookId);
 	}
 
 	// Method to reduce the quantity of the book in the current cart of the
 	// authenticated user:
+	@Transactional
 	public ResponseEntity<?> reduceBookAuthenticated(Long bookId, Authentication authentication) {
 		User user = commonService.checkAuthentication(authentication);
-		Cart currentCart = commonService.findCurrentCartOfUser(user);
+		Cart currentCart = commonService.lockCurrentCartOfUser(user);
 
 		return this.reduceQuantityOfBookInCart(currentCart, bookId);
 	}
 
+	// The quantity is decremented, or the last copy is deleted, by conditional
+	// statements. The lines of the cart can't change under its lock, so if
+	// neither matched the book isn't in the cart:
 	private ResponseEntity<?> reduceQuantityOfBookInCart(Cart cart, Long bookId) {
 		Long cartid = cart.getCartid();
-		commonService.findBook(bookId);
 
-		CartBook cartBook = this.findCartBook(bookId, cartid);
-		int quantity = cartBook.getQuantity();
-		quantity = quantity - 1;
-
-		return this.reduceQuantityOfBookInCart(quantity, cartBook);
-	}
-
-	private ResponseEntity<?> reduceQuantityOfBookInCart(int quantity, CartBook cartBook) {
-		if (quantity > 0) {
-			this.setBookQuantityInCart(quantity, cartBook);
+		if (cartBookRepository.decrementQuantity(cartid, bookId) > 0) {
+			cartBookRepository.detachLine(cartid, bookId);
+			cartRepository.refreshTotals(cartid);
 			return new ResponseEntity<>("The quantity of the book in the cart was reduced by one", HttpStatus.OK);
-		} else {
-			return this.deleteBookFromCart(cartBook);
 		}
+
+		if (cartBookRepository.deleteIfLastOne(cartid, bookId) > 0) {
+			cartBookRepository.detachLine(cartid, bookId);
+			cartRepository.refreshTotals(cartid);
+			return new ResponseEntity<>("The book was deleted from the cart", HttpStatus.OK);
+		}
+
+		return this.throwBookNotFoundOrNotInCart(bookId);
 	}
 
 	// Method to delete book from cart By bookid and cartInfo
+	@Transactional
 	public ResponseEntity<?> deleteBookNoAuthentication(Long bookId, CartInfo cartInfo) {
 		Long cartid = cartInfo.getId();
+		String token = cartInfo.getToken();
 		String password = cartInfo.getPassword();
 
-		Cart cart = commonService.findCartAndCheckIsPrivateAndCheckPasswordAndCheckIsCurrent(cartid, password);
+		Cart cart = commonService.findCartAndCheckIsPrivateAndCheckTokenOrPasswordAndLockCurrent(cartid, token,
+				password);
 
 		return this.deleteBookFromCart(cart, bookId);
 	}
 
 	// Method to delete the book from the current cart of the authenticated user:
+	@Transactional
 	public ResponseEntity<?> deleteBookFromCurrentCart(Long bookId, Authentication authentication) {
 		User user = commonService.checkAuthentication(authentication);
-		Cart currentCart = commonService.findCurrentCartOfUser(user);
+		Cart currentCart = commonService.lockCurrentCartOfUser(user);
 
 		return this.deleteBookFromCart(currentCart, bookId);
 	}
 
 	private ResponseEntity<?> deleteBookFromCart(Cart cart, Long bookId) {
 		Long cartid = cart.getCartid();
-		commonService.findBook(bookId);
-		CartBook cartBook = this.findCartBook(bookId, cartid);
 
-		return this.deleteBookFromCart(cartBook);
+		if (cartBookRepository.deleteByCartidAndBookid(cartid, bookId) == 0)
+			return this.throwBookNotFoundOrNotInCart(bookId);
+
+		cartBookRepository.detachLine(cartid, bookId);
+
+		cartRepository.refreshTotals(cartid);
+
+		return new ResponseEntity<>("The book was deleted from the cart", HttpStatus.OK);
 	}
 
 	// Method to clear current cart of the authenticated user:
+	@Transactional
 	public ResponseEntity<?> clearCurrentCart(Long userId, Authentication authentication) {
 		User user = commonService.checkAuthenticationAndAuthorize(authentication, userId);
-		Cart currentCart = commonService.findCurrentCartOfUser(user);
+		Cart currentCart = commonService.lockCurrentCartOfUser(user);
 
 		long deleted = cartBookRepository.deleteByCart(currentCart);
+		cartRepository.refreshTotals(currentCart.getCartid());
 		return new ResponseEntity<>(deleted + " records were deleted from current cart", HttpStatus.OK);
 	}
 
-	// Method to find CartBook:
-	private CartBook findCartBook(Long bookId, Long cartid) {
-		Optional<CartBook> optionalCartBook = this.getOptionalCartBook(cartid, bookId);
-		if (!optionalCartBook.isPresent())
-			throw new ResponseStatusException(HttpStatus.CONFLICT, "The book is not in the cart");
-
-		CartBook cartBook = optionalCartBook.get();
-		return cartBook;
-	}
-
-	// Method to find optional cart book by cartid and bookId:
-	private Optional<CartBook> getOptionalCartBook(Long cartid, Long bookId) {
-		CartBookKey cartBookKey = new CartBookKey(cartid, bookId);
-
-		Optional<CartBook> optionalCartBook = cartBookRepository.findById(cartBookKey);
-		return optionalCartBook;
-	}
-
-	// Method to set new quantity for the book in the cart
-	private void setBookQuantityInCart(int quantity, CartBook cartBook) {
-		cartBook.setQuantity(quantity);
-		cartBookRepository.save(cartBook);
-	}
-
-	// Method to delete the book from the cart by deleting cartBook record:
-	private ResponseEntity<?> deleteBookFromCart(CartBook cartBook) {
-		cartBookRepository.delete(cartBook);
-		return new ResponseEntity<>("The book was deleted from the cart", HttpStatus.OK);
+	// Method to report why the book couldn't be changed in the cart:
+	private ResponseEntity<?> throwBookNotFoundOrNotInCart(Long bookId) {
+		commonService.findBook(bookId);
+		throw new ResponseStatusException(HttpStatus.CONFLICT, "The book is not in the cart");
 	}
 }
@@ -0,0 +1,53 @@
+package com.pro.mybooklist.service;
+
+import java.security.Key;
+import java.util.Date;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+
+// Short-lived signed tokens for the carts without user. The cart password is
+// checked with BCrypt only once, when the token is issued, after that the
+// token is verified with a single HMAC.
+@Service
+public class CartTokenService {
+	static final Key key = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+	static final String AUDIENCE = "cart";
+	static final JwtParser parser = Jwts.parserBuilder().setSigningKey(key).requireAudience(AUDIENCE).build();
+
+	@Value("${cart.token.expiration-minutes:60}")
+	private long expirationMinutes;
+
+	// Method to issue the access token for the cart:
+	public String getToken(Long cartid) {
+		long expirationTime = expirationMinutes * 60 * 1000;
+
+		String token = Jwts.builder()
+				.setSubject(cartid.toString())
+				.setAudience(AUDIENCE)
+				.setExpiration(new Date(System.currentTimeMillis() + expirationTime))
+				.signWith(key)
+				.compact();
+		return token;
+	}
+
+	// Method to check that the token is valid, not expired and issued for the
+	// cart:
+	public boolean isValidToken(String token, Long cartid) {
+		if (token == null || token.isBlank() || cartid == null)
+			return false;
+
+		try {
+			String subject = parser.parseClaimsJws(token).getBody().getSubject();
+			return cartid.toString().equals(subject);
+		} catch (JwtException | IllegalArgumentException e) {
+			return false;
+		}
+	}
+}
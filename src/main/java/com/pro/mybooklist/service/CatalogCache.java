@@ -0,0 +1,215 @@
+package com.pro.mybooklist.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.pro.mybooklist.model.Book;
+import com.pro.mybooklist.model.BookRepository;
+import com.pro.mybooklist.model.CartBook;
+import com.pro.mybooklist.model.CatalogEntityListener;
+import com.pro.mybooklist.model.Category;
+import com.pro.mybooklist.model.CategoryRepository;
+
+// Read-mostly snapshot of the catalog (books and categories). The snapshot is
+// immutable and tagged with the catalog version it was built from; it is
+// rebuilt lazily on the first read after CatalogEntityListener reports a
+// change of a book or a category.
+//
+// The snapshot holds read-only copies of the entities rather than the loaded
+// entities, so the shared books aren't attached to any persistence context
+// and a caller can't change them: their setters throw and they can't be saved.
+// A book that is going to be changed must be loaded through BookRepository.
+//
+// Only the writes that go through the entity manager are seen by the
+// listener. A native or bulk UPDATE of the book or category tables bypasses
+// it, so such a query must be followed by CatalogEntityListener.bumpVersion()
+// or the snapshot keeps serving the old rows.
+@Component
+public class CatalogCache {
+	@Autowired
+	private BookRepository bookRepository;
+
+	@Autowired
+	private CategoryRepository categoryRepository;
+
+	private volatile CatalogSnapshot snapshot;
+
+	private final AtomicLong rebuilds = new AtomicLong();
+
+	public List<Book> getBooks() {
+		return this.getSnapshot().books();
+	}
+
+	public Optional<Book> getBookById(Long bookId) {
+		if (bookId == null)
+			return Optional.empty();
+
+		return Optional.ofNullable(this.getSnapshot().booksById().get(bookId));
+	}
+
+	public List<Book> getBooksByCategoryId(long categoryId) {
+		return this.getSnapshot().booksByCategoryId().getOrDefault(categoryId, Collections.emptyList());
+	}
+
+	public List<Category> getCategories() {
+		return this.getSnapshot().categories();
+	}
+
+	public long getVersion() {
+		CatalogSnapshot currentSnapshot = snapshot;
+		return currentSnapshot == null ? -1 : currentSnapshot.version();
+	}
+
+	public long getRebuilds() {
+		return rebuilds.get();
+	}
+
+	private CatalogSnapshot getSnapshot() {
+		CatalogSnapshot currentSnapshot = snapshot;
+
+		if (currentSnapshot != null && currentSnapshot.version() == CatalogEntityListener.getVersion())
+			return currentSnapshot;
+
+		synchronized (this) {
+			currentSnapshot = snapshot;
+			long version = CatalogEntityListener.getVersion();
+
+			if (currentSnapshot != null && currentSnapshot.version() == version)
+				return currentSnapshot;
+
+			currentSnapshot = this.buildSnapshot(version);
+			snapshot = currentSnapshot;
+			rebuilds.incrementAndGet();
+			return currentSnapshot;
+		}
+	}
+
+	// The version is read before loading, so a change made during the load
+	// leaves the snapshot outdated and it is rebuilt on the next read:
+	private CatalogSnapshot buildSnapshot(long version) {
+		List<Category> categories = new ArrayList<>();
+		Map<Long, Category> categoriesById = new HashMap<>();
+
+		for (Category category : categoryRepository.findAll()) {
+			Category categoryCopy = new ReadOnlyCategory(category);
+			categories.add(categoryCopy);
+			categoriesById.put(categoryCopy.getCategoryid(), categoryCopy);
+		}
+
+		List<Book> books = new ArrayList<>();
+		Map<Long, Book> booksById = new HashMap<>();
+		Map<Long, List<Book>> booksByCategoryId = new HashMap<>();
+
+		for (Book loadedBook : bookRepository.findAll()) {
+			Category category = loadedBook.getCategory() == null ? null
+					: categoriesById.computeIfAbsent(loadedBook.getCategory().getCategoryid(),
+							id -> new ReadOnlyCategory(loadedBook.getCategory()));
+			Book book = new ReadOnlyBook(loadedBook, category);
+			books.add(book);
+			booksById.put(book.getId(), book);
+
+			if (book.getCategory() != null)
+				booksByCategoryId.computeIfAbsent(book.getCategory().getCategoryid(), id -> new ArrayList<>())
+						.add(book);
+		}
+
+		booksByCategoryId.replaceAll((id, booksInCategory) -> List.copyOf(booksInCategory));
+
+		return new CatalogSnapshot(version, List.copyOf(books), Map.copyOf(booksById),
+				Map.copyOf(booksByCategoryId), List.copyOf(categories));
+	}
+
+	private record CatalogSnapshot(long version, List<Book> books, Map<Long, Book> booksById,
+			Map<Long, List<Book>> booksByCategoryId, List<Category> categories) {
+	}
+
+	// Detached copy of a book whose setters throw. It isn't an entity class, so
+	// it can't be saved or merged by mistake either:
+	private static final class ReadOnlyBook extends Book {
+		private ReadOnlyBook(Book book, Category category) {
+			super(book.getTitle(), book.getAuthor(), book.getIsbn(), book.getBookYear(), book.getPrice(), category,
+					book.getUrl());
+			super.setId(book.getId());
+		}
+
+		@Override
+		public void setId(Long id) {
+			throw readOnly();
+		}
+
+		@Override
+		public void setTitle(String title) {
+			throw readOnly();
+		}
+
+		@Override
+		public void setAuthor(String author) {
+			throw readOnly();
+		}
+
+		@Override
+		public void setIsbn(String isbn) {
+			throw readOnly();
+		}
+
+		@Override
+		public void setBookYear(int bookYear) {
+			throw readOnly();
+		}
+
+		@Override
+		public void setPrice(double price) {
+			throw readOnly();
+		}
+
+		@Override
+		public void setUrl(String url) {
+			throw readOnly();
+		}
+
+		@Override
+		public void setCategory(Category category) {
+			throw readOnly();
+		}
+
+		@Override
+		public void setCarttbooks(List<CartBook> cartbooks) {
+			throw readOnly();
+		}
+	}
+
+	// Detached copy of a category whose setters throw:
+	private static final class ReadOnlyCategory extends Category {
+		private ReadOnlyCategory(Category category) {
+			super(category.getName());
+			super.setCategoryid(category.getCategoryid());
+		}
+
+		@Override
+		public void setCategoryid(long categoryid) {
+			throw readOnly();
+		}
+
+		@Override
+		public void setName(String name) {
+			throw readOnly();
+		}
+
+		@Override
+		public void setBooks(List<Book> books) {
+			throw readOnly();
+		}
+	}
+
+	private static UnsupportedOperationException readOnly() {
+		return new UnsupportedOperationException("The cached catalog is read-only");
+	}
+}
@@ -6,15 +6,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.pro.mybooklist.model.Category;
-import com.pro.mybooklist.model.CategoryRepository;
 
 @Service
 public class CategoryService {
 	@Autowired
-	private CategoryRepository categoryRepository;
+	private CatalogCache catalogCache;
 
 	public List<Category> getCategories() {
-		List<Category> categories = (List<Category>) categoryRepository.findAll();
+		List<Category> categories = catalogCache.getCategories();
 		
 		return categories;
 	}
@@ -4,10 +4,13 @@ import java.util.List;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
 import com.pro.mybooklist.MyUser;
@@ -20,6 +23,9 @@ import com.pro.mybooklist.model.OrderRepository;
 import com.pro.mybooklist.model.User;
 import com.pro.mybooklist.model.UserRepository;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
 @Service
 public class CommonService {
 	@Autowired
@@ -34,6 +40,24 @@ public class CommonService {
 	@Autowired
 	private BookRepository bookRepository;
 
+	@Autowired
+	private PasswordHashingService passwordHashingService;
+
+	@Autowired
+	private CartTokenService cartTokenService;
+
+	@Autowired
+	private CurrentCartCache currentCartCache;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
 	// Method to find the cart and check if it's private:
 	public Cart findCartAndCheckIsPrivate(Long cartid) {
 		Cart cart = this.findCart(cartid);
@@ -49,42 +73,158 @@ public class CommonService {
 		return cart;
 	}
 
-	// Method to find cart, check if it's private, it's password and check if it's
-	// current
-	public Cart findCartAndCheckIsPrivateAndCheckPasswordAndCheckIsCurrent(Long cartid, String password) {
-		Cart cart = this.findCartAndCheckIsPrivateAndCheckPassword(cartid, password);
-		this.checkIfCartIsCurrent(cart);
+	// Method to find cart, check if it is private and check the provided cart
+	// token. The password is checked only if the token is missing or invalid:
+	public Cart findCartAndCheckIsPrivateAndCheckTokenOrPassword(Long cartid, String token, String password) {
+		Cart cart = this.findCartAndCheckIsPrivate(cartid);
+
+		if (!cartTokenService.isValidToken(token, cartid))
+			this.checkPassword(password, cart.getPasswordHash());
+
+		return cart;
+	}
+
+	// Method to find cart, check if it's private, it's token or password, then
+	// lock it and check if it's current, for the changes of the cart:
+	public Cart findCartAndCheckIsPrivateAndCheckTokenOrPasswordAndLockCurrent(Long cartid, String token,
+			String password) {
+		Cart cart = this.findCartAndCheckIsPrivateAndCheckTokenOrPassword(cartid, token, password);
+		this.lockCart(cartid);
 		return cart;
 	}
 
-	// The method to find out if the user has exactly one current cart:
+	// The method to find the current cart of the user. A cached cart id is
+	// returned as a reference without querying the cart, so the cart may have
+	// been closed meanwhile. The changes of the cart go through
+	// lockCurrentCartOfUser instead:
 	public Cart findCurrentCartOfUser(User user) {
 		Long userId = user.getId();
+		Long cachedCartid = currentCartCache.getCartid(userId);
+
+		if (cachedCartid != null)
+			return entityManager.getReference(Cart.class, cachedCartid);
+
+		long stamp = currentCartCache.getStamp();
 		List<Cart> currentCartsOfUser = cartRepository.findCurrentByUserid(userId);
 
-		if (currentCartsOfUser.size() != 1) {
-			return this.handleUserHasMoreOrLessThanOneCurrentCartCase(currentCartsOfUser, user);
+		if (currentCartsOfUser.isEmpty()) {
+			return this.handleUserHasNoCurrentCartCase(userId);
 		}
 
 		Cart currentCart = currentCartsOfUser.get(0);
+		currentCartCache.put(userId, currentCart.getCartid(), stamp);
 		return currentCart;
 	}
-	
-	private Cart handleUserHasMoreOrLessThanOneCurrentCartCase(List<Cart> currentCartsOfUser, User user) {
-		for (Cart currentCartOfUser : currentCartsOfUser) {
-			cartRepository.delete(currentCartOfUser);
+
+	// Method to lock the current cart of the user for a change. The cached cart
+	// is checked under the lock; if it was closed or deleted since it was
+	// cached, the entry is evicted and the current cart is looked up again:
+	public Cart lockCurrentCartOfUser(User user) {
+		Long userId = user.getId();
+		Long cachedCartid = currentCartCache.getCartid(userId);
+
+		if (cachedCartid != null) {
+			Optional<Boolean> current = cartRepository.lockAndFindCurrent(cachedCartid);
+			if (current.isPresent() && current.get())
+				return entityManager.getReference(Cart.class, cachedCartid);
+
+			currentCartCache.invalidate(userId);
 		}
+
+		return this.lockCart(this.findCurrentCartOfUser(user).getCartid());
+	}
+
+	// Method to cache the current cart of the user on login. The cart isn't
+	// created here if it's missing:
+	public void cacheCurrentCartOfUser(User user) {
+		Long userId = user.getId();
+		long stamp = currentCartCache.getStamp();
+		List<Cart> currentCartsOfUser = cartRepository.findCurrentByUserid(userId);
+
+		if (currentCartsOfUser.size() == 1)
+			currentCartCache.put(userId, currentCartsOfUser.get(0).getCartid(), stamp);
+	}
+
+	// The database allows one current cart per user at most, so the cart can
+	// only be missing here. The user row is locked while the cart is created,
+	// so the concurrent first requests of the user wait and find the cart
+	// instead of inserting a second one. The cart is created in a transaction
+	// of its own, so a rejected insert doesn't mark the caller's transaction
+	// for rollback: if the unique constraint still rejects the cart, the one
+	// that was committed first is read. The cart is read by the caller's
+	// persistence context, the created one is detached:
+	private Cart handleUserHasNoCurrentCartCase(Long userId) {
+		TransactionTemplate newTransaction = new TransactionTemplate(transactionManager);
+		newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		Long cartid;
+
+		try {
+			cartid = newTransaction.execute(status -> this.createCurrentCartIfMissing(userId).getCartid());
+		} catch (DataIntegrityViolationException e) {
+			List<Cart> currentCartsOfUser = cartRepository.findCurrentByUserid(userId);
+			if (currentCartsOfUser.isEmpty())
+				throw e;
+
+			cartid = currentCartsOfUser.get(0).getCartid();
+		}
+
+		currentCartCache.putCreated(userId, cartid);
+		return entityManager.getReference(Cart.class, cartid);
+	}
+
+	private Cart createCurrentCartIfMissing(Long userId) {
+		User user = this.lockUser(userId);
+		List<Cart> currentCartsOfUser = cartRepository.findCurrentByUserid(userId);
+
+		if (!currentCartsOfUser.isEmpty())
+			return currentCartsOfUser.get(0);
+
 		Cart newCurrentCartForUser = new Cart(true, user);
 		cartRepository.save(newCurrentCartForUser);
 		return newCurrentCartForUser;
 	}
 
-	// Method to add new current Cart for the user
+	// Method to add new current Cart for the user. The deletes of the old
+	// current carts are flushed first, as Hibernate would insert the new cart
+	// before them:
 	public void addCurrentCartForUser(User user) {
 		Long userId = user.getId();
-		this.checkCurrentCartsOfUser(userId);
-		Cart newCurrentCartForUser = new Cart(true, user);
-		cartRepository.save(newCurrentCartForUser);
+
+		Cart newCurrentCartForUser = transactionTemplate.execute(status -> {
+			User lockedUser = this.lockUser(userId);
+			this.checkCurrentCartsOfUser(userId);
+			entityManager.flush();
+
+			Cart newCart = new Cart(true, lockedUser);
+			cartRepository.save(newCart);
+			return newCart;
+		});
+
+		currentCartCache.putCreated(userId, newCurrentCartForUser.getCartid());
+	}
+
+	// The lines of the cart are changed, its totals recalculated and the cart
+	// closed by a checkout only under the lock of the cart row, see
+	// CartRepository.lockAndFindCurrent. The cart may have been closed since
+	// it was checked, so it's checked again under the lock:
+	public Cart lockCart(Long cartid) {
+		Optional<Boolean> current = cartRepository.lockAndFindCurrent(cartid);
+		if (current.isEmpty())
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "The cart wasn't found by id");
+
+		if (!current.get())
+			throw new ResponseStatusException(HttpStatus.CONFLICT, "You can't change not current cart");
+
+		return entityManager.getReference(Cart.class, cartid);
+	}
+
+	private User lockUser(Long userId) {
+		Optional<User> optionalUser = userRepository.findByIdForUpdate(userId);
+
+		if (!optionalUser.isPresent())
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "The user wasn't found by id");
+
+		return optionalUser.get();
 	}
 
 	private void checkCurrentCartsOfUser(Long userId) {
@@ -114,23 +254,16 @@ public class CommonService {
 			throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "The cart is private");
 	}
 
-	private void checkIfCartIsCurrent(Cart cart) {
-		if (!cart.isCurrent())
-			throw new ResponseStatusException(HttpStatus.CONFLICT, "You can't change not current cart");
-	}
-
 	// Method to encode password:
 	public String encodePassword(String password) {
-		BCryptPasswordEncoder bc = new BCryptPasswordEncoder();
-		String hashPwd = bc.encode(password);
+		String hashPwd = passwordHashingService.encode(password);
 
 		return hashPwd;
 	}
 
 	// Method to compare password and hashedPassword with BCryp encoder
 	public void checkPassword(String password, String passwordHash) {
-		BCryptPasswordEncoder bc = new BCryptPasswordEncoder();
-		if (!bc.matches(password, passwordHash))
+		if (!passwordHashingService.matches(password, passwordHash))
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The password is wrong");
 	}
 
@@ -0,0 +1,168 @@
+package com.pro.mybooklist.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// Bounded LRU cache of the id of the current cart of each user, filled on login
+// and whenever CommonService finds or creates the current cart, and evicted at
+// checkout. The database allows only one current cart per user, so a cached id
+// stays valid until the cart is closed or deleted.
+//
+// The changes made inside a transaction are applied after it completes, the
+// last change of each user winning. A cart found by a lookup is stored only if
+// no invalidation happened since the lookup started, so a lookup racing with a
+// checkout can't bring the closed cart back.
+//
+// The cache is local to the instance and a cached id is used without checking
+// the cart. If several instances share the database, a cart closed by one of
+// them would stay cached on the others, so current-cart.cache.max-size must be
+// set to 0 there, which keeps the cache empty.
+@Component
+public class CurrentCartCache {
+	private static final Object TRANSACTION_KEY = new Object();
+
+	private final int maxSize;
+	private final Map<Long, Long> cartidsByUserid;
+
+	private final AtomicLong invalidations = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public CurrentCartCache(@Value("${current-cart.cache.max-size:10000}") int maxSize) {
+		this.maxSize = maxSize;
+		this.cartidsByUserid = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+				return size() > CurrentCartCache.this.maxSize;
+			}
+		};
+	}
+
+	// Method to get the cached id of the current cart of the user, null on a
+	// cache miss:
+	public Long getCartid(Long userId) {
+		Long cartid;
+		synchronized (cartidsByUserid) {
+			cartid = cartidsByUserid.get(userId);
+		}
+
+		if (cartid == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+
+		hits.incrementAndGet();
+		return cartid;
+	}
+
+	// The stamp to take before the current cart is looked up in the database
+	// and to pass to put:
+	public long getStamp() {
+		return invalidations.get();
+	}
+
+	// Method to cache the current cart found by a lookup that started at the
+	// stamp:
+	public void put(Long userId, Long cartid, long stamp) {
+		this.change(userId, new PendingChange(cartid, stamp));
+	}
+
+	// Method to cache the current cart that was just created for the user:
+	public void putCreated(Long userId, Long cartid) {
+		this.change(userId, new PendingChange(cartid, null));
+	}
+
+	// Method to drop the cached cart after the current cart of the user was
+	// closed. It is dropped right away and again after the transaction, in case
+	// a lookup cached it in between:
+	public void invalidate(Long userId) {
+		this.remove(userId);
+		this.change(userId, new PendingChange(null, null));
+	}
+
+	public void invalidateAll() {
+		synchronized (cartidsByUserid) {
+			invalidations.incrementAndGet();
+			cartidsByUserid.clear();
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public int getSize() {
+		synchronized (cartidsByUserid) {
+			return cartidsByUserid.size();
+		}
+	}
+
+	private void change(Long userId, PendingChange change) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			this.apply(userId, change, true);
+			return;
+		}
+
+		this.getPendingChanges().put(userId, change);
+	}
+
+	// The changes of the transaction are kept in a resource bound to it and
+	// applied by a single synchronization. The carts of a rolled back
+	// transaction are dropped rather than cached:
+	@SuppressWarnings("unchecked")
+	private Map<Long, PendingChange> getPendingChanges() {
+		Map<Long, PendingChange> pendingChanges = (Map<Long, PendingChange>) TransactionSynchronizationManager
+				.getResource(TRANSACTION_KEY);
+
+		if (pendingChanges != null)
+			return pendingChanges;
+
+		Map<Long, PendingChange> newPendingChanges = new LinkedHashMap<>();
+		TransactionSynchronizationManager.bindResource(TRANSACTION_KEY, newPendingChanges);
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) {
+				TransactionSynchronizationManager.unbindResourceIfPossible(TRANSACTION_KEY);
+				newPendingChanges.forEach((userId, change) -> apply(userId, change, status == STATUS_COMMITTED));
+			}
+		});
+
+		return newPendingChanges;
+	}
+
+	private void apply(Long userId, PendingChange change, boolean committed) {
+		if (change.cartid() == null || !committed) {
+			this.remove(userId);
+			return;
+		}
+
+		synchronized (cartidsByUserid) {
+			if (change.stamp() == null || change.stamp() == invalidations.get())
+				cartidsByUserid.put(userId, change.cartid());
+		}
+	}
+
+	private void remove(Long userId) {
+		synchronized (cartidsByUserid) {
+			invalidations.incrementAndGet();
+			cartidsByUserid.remove(userId);
+		}
+	}
+
+	// The cartid is null for an invalidation, the stamp is null for a cart that
+	// was just created:
+	private record PendingChange(Long cartid, Long stamp) {
+	}
+}
@@ -0,0 +1,210 @@
+package com.pro.mybooklist.service;
+
+import java.io.UnsupportedEncodingException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.pro.mybooklist.model.MailOutbox;
+import com.pro.mybooklist.model.MailOutboxRepository;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.MimeMessage;
+
+// Background sender of the mail outbox. Due emails are sent in batches over
+// the long-lived SmtpConnection; failed ones are retried with exponential
+// backoff until the maximum number of attempts is reached.
+//
+// Several instances may poll the same outbox, so every email is claimed before
+// it's sent: the claim pushes its next attempt to the end of a lease, and an
+// email whose claim failed is left to the instance that won it. If that
+// instance dies before finishing, the email is due again when the lease ends.
+@Component
+public class MailDispatcher {
+	@Autowired
+	private MailOutboxRepository mailOutboxRepository;
+
+	@Autowired
+	private JavaMailSender mailSender;
+
+	@Autowired
+	private SmtpConnection smtpConnection;
+
+	@Value("${spring.mail.username}")
+	private String springMailUsername;
+
+	@Value("${mail.outbox.batch-size:50}")
+	private int batchSize;
+
+	@Value("${mail.outbox.max-attempts:5}")
+	private int maxAttempts;
+
+	@Value("${mail.outbox.backoff-seconds:30}")
+	private long backoffSeconds;
+
+	@Value("${mail.outbox.max-backoff-seconds:3600}")
+	private long maxBackoffSeconds;
+
+	@Value("${mail.outbox.lease-seconds:300}")
+	private long leaseSeconds;
+
+	@Value("${mail.outbox.retention-days:30}")
+	private long retentionDays;
+
+	private final AtomicLong sentCount = new AtomicLong();
+	private final AtomicLong retriedCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+	private final AtomicLong purgedCount = new AtomicLong();
+
+	@Scheduled(fixedDelayString = "${mail.outbox.poll-interval-ms:5000}")
+	public void dispatch() {
+		List<MailOutbox> dueMails;
+
+		do {
+			dueMails = mailOutboxRepository.findByStatusAndNextAttemptAtLessThanEqualOrderByIdAsc(MailOutbox.PENDING,
+					LocalDateTime.now(), PageRequest.of(0, batchSize));
+
+			List<MailOutbox> claimedMails = this.claim(dueMails);
+			if (!claimedMails.isEmpty())
+				this.sendBatch(claimedMails);
+		} while (dueMails.size() == batchSize);
+	}
+
+	// The sent and failed emails are deleted once they are older than the
+	// retention period:
+	@Scheduled(cron = "${mail.outbox.purge-cron:0 30 3 * * *}")
+	public void purge() {
+		LocalDateTime createdBefore = LocalDateTime.now().minusDays(retentionDays);
+		List<String> finishedStatuses = List.of(MailOutbox.SENT, MailOutbox.FAILED);
+
+		int purged = mailOutboxRepository.deleteByStatusInAndCreatedAtBefore(finishedStatuses, createdBefore);
+		purgedCount.addAndGet(purged);
+	}
+
+	private List<MailOutbox> claim(List<MailOutbox> dueMails) {
+		LocalDateTime now = LocalDateTime.now();
+		LocalDateTime leaseUntil = now.plusSeconds(leaseSeconds);
+		List<MailOutbox> claimedMails = new ArrayList<>();
+
+		for (MailOutbox mail : dueMails) {
+			if (mailOutboxRepository.claim(mail.getId(), MailOutbox.PENDING, now, leaseUntil) > 0) {
+				mail.setNextAttemptAt(leaseUntil);
+				claimedMails.add(mail);
+			}
+		}
+
+		return claimedMails;
+	}
+
+	private void sendBatch(List<MailOutbox> mails) {
+		List<MimeMessage> messages = new ArrayList<>();
+		List<MailOutbox> mailsToSend = new ArrayList<>();
+
+		for (MailOutbox mail : mails) {
+			try {
+				messages.add(this.createMessage(mail));
+				mailsToSend.add(mail);
+			} catch (MessagingException | UnsupportedEncodingException e) {
+				this.markAttemptFailed(mail, e);
+			}
+		}
+
+		for (int i = 0; i < mailsToSend.size(); i++) {
+			try {
+				smtpConnection.send(messages.get(i));
+				this.markSent(mailsToSend.get(i));
+			} catch (SendFailedException e) {
+				this.markAttemptFailed(mailsToSend.get(i), e);
+			} catch (MessagingException e) {
+				// The server is not reachable, the rest of the batch waits for the
+				// next attempt:
+				this.markAllAttemptsFailed(mailsToSend.subList(i, mailsToSend.size()), e);
+				return;
+			}
+		}
+	}
+
+	private MimeMessage createMessage(MailOutbox mail) throws MessagingException, UnsupportedEncodingException {
+		String fromAddress = springMailUsername;
+		String senderName = "No reply";
+
+		MimeMessage message = mailSender.createMimeMessage();
+		MimeMessageHelper helper = new MimeMessageHelper(message);
+
+		helper.setFrom(fromAddress, senderName);
+		helper.setTo(mail.getRecipient());
+		helper.setSubject(mail.getSubject());
+		helper.setText(mail.getContent(), true);
+
+		return message;
+	}
+
+	private void markSent(MailOutbox mail) {
+		mail.setStatus(MailOutbox.SENT);
+		mail.setAttempts(mail.getAttempts() + 1);
+		mail.setSentAt(LocalDateTime.now());
+		mail.setLastError(null);
+		mail.setContent(null);
+		mailOutboxRepository.save(mail);
+		sentCount.incrementAndGet();
+	}
+
+	private void markAllAttemptsFailed(List<MailOutbox> mails, Exception e) {
+		for (MailOutbox mail : mails) {
+			this.markAttemptFailed(mail, e);
+		}
+	}
+
+	private void markAttemptFailed(MailOutbox mail, Exception e) {
+		int attempts = mail.getAttempts() + 1;
+		mail.setAttempts(attempts);
+		mail.setLastError(this.truncate(String.valueOf(e.getMessage())));
+
+		if (attempts >= maxAttempts) {
+			mail.setStatus(MailOutbox.FAILED);
+			mail.setContent(null);
+			failedCount.incrementAndGet();
+		} else {
+			mail.setNextAttemptAt(LocalDateTime.now().plusSeconds(this.getBackoffSeconds(attempts)));
+			retriedCount.incrementAndGet();
+		}
+
+		mailOutboxRepository.save(mail);
+	}
+
+	// 30s, 60s, 120s... capped by the maximum backoff:
+	private long getBackoffSeconds(int attempts) {
+		long backoff = backoffSeconds << Math.min(attempts - 1, 30);
+		return Math.min(backoff, maxBackoffSeconds);
+	}
+
+	private String truncate(String error) {
+		return error.length() > 1000 ? error.substring(0, 1000) : error;
+	}
+
+	public long getSentCount() {
+		return sentCount.get();
+	}
+
+	public long getRetriedCount() {
+		return retriedCount.get();
+	}
+
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	public long getPurgedCount() {
+		return purgedCount.get();
+	}
+}
@@ -1,22 +1,22 @@
 package com.pro.mybooklist.service;
 
-import java.io.UnsupportedEncodingException;
-
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 
+import com.pro.mybooklist.model.MailOutbox;
+import com.pro.mybooklist.model.MailOutboxRepository;
 import com.pro.mybooklist.model.User;
 
-import jakarta.mail.MessagingException;
-import jakarta.mail.internet.MimeMessage;
-
+// The emails are not sent from the request thread: they are written to the
+// mail outbox in the transaction of the caller and sent by the MailDispatcher.
 @Service
 public class MailService {
 	@Autowired
-	private JavaMailSender mailSender;
+	private MailOutboxRepository mailOutboxRepository;
+
+	@Autowired
+	private MailTemplates mailTemplates;
 
 	@Value("${spring.mail.username}")
 	private String springMailUsername;
@@ -24,143 +24,55 @@ public class MailService {
 	@Value("${front.end.url}")
 	private String frontEndUrl;
 
-	public void sendOrderInfoEmail(String username, String emailTo, Long orderId, String password)
-			throws MessagingException, UnsupportedEncodingException {
-		String toAddress = emailTo;
-		String fromAddress = springMailUsername;
-		String senderName = "No reply";
-		String subject = "Your order information";
-		String content = "Dear [[name]],<br><br>"
-				+ "You have just made an order in our bookstore!<br> Using the following order number and password you can get your order information on the website:<br>"
-				+ "<h4>ORDER NUMBER: [[ORDERID]]</h4>" + "<h4>ORDER PASSWORD: [[ORDERPASS]]</h4>"
-				+ "If you have any questions or you want to change order information please contact us through the email spotted on the website footer<br><br>"
-				+ "Thank you for choosing us,<br>" + "AXOS inc.";
-
-		MimeMessage message = mailSender.createMimeMessage();
-		MimeMessageHelper helper = new MimeMessageHelper(message);
-
-		helper.setFrom(fromAddress, senderName);
-		helper.setTo(toAddress);
-		helper.setSubject(subject);
-
-		content = content.replace("[[name]]", username);
-
-		content = content.replace("[[ORDERID]]", orderId.toString());
-
-		content = content.replace("[[ORDERPASS]]", password);
+	// The smtp service is in use only when the mail username is configured:
+	public boolean isMailConfigured() {
+		return !springMailUsername.equals("default_value");
+	}
 
-		helper.setText(content, true);
+	public void queueOrderInfoEmail(String username, String emailTo, Long orderId, String password) {
+		String subject = "Your order information";
+		String content = mailTemplates.render(MailTemplates.ORDER_INFO, username, orderId.toString(), password);
 
-		mailSender.send(message);
+		this.queueEmail(emailTo, subject, content);
 	}
 
-	public void sendVerificationEmail(User user) throws MessagingException, UnsupportedEncodingException {
-		String toAddress = user.getEmail();
-		String fromAddress = springMailUsername;
-		String senderName = "No reply";
+	public void queueVerificationEmail(User user) {
 		String subject = "Bookstore verification link";
-		String content = "Dear [[name]],<br><br>"
-				+ "This is the automatically generated message, please don't reply. To verify your bookstore account click the link below:<br><br>"
-				+ "<h3><a href=\"[[URL]]\" target=\"_self\">VERIFY BOOKSTORE ACCOUNT</a></h3>" + "Thank you,<br>"
-				+ "AXOS inc.";
 		String endpoint = "/?token=";
-
-		MimeMessage message = mailSender.createMimeMessage();
-		MimeMessageHelper helper = new MimeMessageHelper(message);
-
-		helper.setFrom(fromAddress, senderName);
-		helper.setTo(toAddress);
-		helper.setSubject(subject);
-
-		content = content.replace("[[name]]", user.getUsername());
 		String mainURL = frontEndUrl + endpoint + user.getVerificationCode();
 
-		content = content.replace("[[URL]]", mainURL);
-
-		helper.setText(content, true);
+		String content = mailTemplates.render(MailTemplates.VERIFICATION, user.getUsername(), mainURL);
 
-		mailSender.send(message);
+		this.queueEmail(user.getEmail(), subject, content);
 	}
 
-	public void sendPasswordEmail(User user, String password) throws MessagingException, UnsupportedEncodingException {
-		String toAddress = user.getEmail();
-		String fromAddress = springMailUsername;
-		String senderName = "No reply";
+	public void queuePasswordEmail(User user, String password) {
 		String subject = "Reset password";
-		String content = "Dear [[name]],<br><br>" + "Here is your new password for your bookstore account:<br><br>"
-				+ "<h3>[[PASSWORD]]</h3>" + "Thank you,<br>" + "AXOS inc.";
+		String content = mailTemplates.render(MailTemplates.PASSWORD, user.getUsername(), password);
 
-		MimeMessage message = mailSender.createMimeMessage();
-		MimeMessageHelper helper = new MimeMessageHelper(message);
-
-		helper.setFrom(fromAddress, senderName);
-		helper.setTo(toAddress);
-		helper.setSubject(subject);
-
-		content = content.replace("[[name]]", user.getUsername());
-
-		content = content.replace("[[PASSWORD]]", password);
-
-		helper.setText(content, true);
-
-		mailSender.send(message);
+		this.queueEmail(user.getEmail(), subject, content);
 	}
 
-	public void sendOrderEmailChanged(String firstname, String emailTo, Long orderId)
-			throws MessagingException, UnsupportedEncodingException {
-		String toAddress = emailTo;
-		String fromAddress = springMailUsername;
-		String senderName = "No reply";
+	public void queueOrderEmailChanged(String firstname, String emailTo, Long orderId) {
 		String subject = "Your order email changed";
-		String content = "Dear [[name]],<br><br>"
-				+ "Your order email address was changed!<br>From now on you will be receiving all information via this email address<br> Using the following order number you can get your order information on the website:<br>"
-				+ "<h4>ORDER NUMBER: [[ORDERID]]</h4>"
-				+ "If you have any questions or you want to change inforamtion please contact us through the email spotted on the website footer<br><br>"
-				+ "Thank you for choosing us,<br>" + "AXOS inc.";
-
-		MimeMessage message = mailSender.createMimeMessage();
-		MimeMessageHelper helper = new MimeMessageHelper(message);
-
-		helper.setFrom(fromAddress, senderName);
-		helper.setTo(toAddress);
-		helper.setSubject(subject);
-
-		content = content.replace("[[name]]", firstname);
+		String content = mailTemplates.render(MailTemplates.ORDER_EMAIL_CHANGED, firstname, orderId.toString());
 
-		content = content.replace("[[ORDERID]]", orderId.toString());
-
-		helper.setText(content, true);
-
-		mailSender.send(message);
+		this.queueEmail(emailTo, subject, content);
 	}
 
-	public void sendStatusChangeEmail(String firstname, String emailTo, Long orderId, String status)
-			throws MessagingException, UnsupportedEncodingException {
-		String toAddress = emailTo;
-		String fromAddress = springMailUsername;
-		String senderName = "No reply";
+	public void queueStatusChangeEmail(String firstname, String emailTo, Long orderId, String status) {
 		String subject = "Your order status has changed";
-		String content = "Dear [[name]],<br><br>"
-				+ "Your order status has changed!<br>Your current order status is now: <h5>[[status]]</h5><br> Using the following order number you can get your order information on the website:<br>"
-				+ "<h4>ORDER NUMBER: [[ORDERID]]</h4>"
-				+ "If you have any questions or you want to change inforamtion please contact us through the email spotted on the website footer<br><br>"
-				+ "Thank you for choosing us,<br>" + "AXOS inc.";
-
-		MimeMessage message = mailSender.createMimeMessage();
-		MimeMessageHelper helper = new MimeMessageHelper(message);
-
-		helper.setFrom(fromAddress, senderName);
-		helper.setTo(toAddress);
-		helper.setSubject(subject);
+		String content = mailTemplates.render(MailTemplates.STATUS_CHANGE, firstname, status, orderId.toString());
 
-		content = content.replace("[[name]]", firstname);
-
-		content = content.replace("[[status]]", status);
-
-		content = content.replace("[[ORDERID]]", orderId.toString());
+		this.queueEmail(emailTo, subject, content);
+	}
 
-		helper.setText(content, true);
+	// Nothing is queued when the smtp service is not in use:
+	private void queueEmail(String toAddress, String subject, String content) {
+		if (!this.isMailConfigured())
+			return;
 
-		mailSender.send(message);
+		MailOutbox mail = new MailOutbox(toAddress, subject, content);
+		mailOutboxRepository.save(mail);
 	}
 }
@@ -0,0 +1,88 @@
+package com.pro.mybooklist.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Email template compiled once: the source is split into literal ranges and
+// [[placeholder]] slots, so rendering appends the ranges and the values to the
+// buffer in a single pass.
+public class MailTemplate {
+	private static final String OPEN = "[[";
+	private static final String CLOSE = "]]";
+
+	private final String source;
+	private final int[] literalStarts;
+	private final int[] literalEnds;
+	private final int[] slotParameters;
+	private final int parameterCount;
+
+	private MailTemplate(String source, int[] literalStarts, int[] literalEnds, int[] slotParameters,
+			int parameterCount) {
+		this.source = source;
+		this.literalStarts = literalStarts;
+		this.literalEnds = literalEnds;
+		this.slotParameters = slotParameters;
+		this.parameterCount = parameterCount;
+	}
+
+	// Method to compile the source, every placeholder must be one of the
+	// parameters:
+	public static MailTemplate compile(String source, List<String> parameterNames) {
+		List<Integer> literalStarts = new ArrayList<>();
+		List<Integer> literalEnds = new ArrayList<>();
+		List<Integer> slotParameters = new ArrayList<>();
+
+		int position = 0;
+		int open = source.indexOf(OPEN);
+		while (open >= 0) {
+			int close = source.indexOf(CLOSE, open + OPEN.length());
+			if (close < 0)
+				throw new IllegalArgumentException("Unclosed placeholder at " + open);
+
+			String name = source.substring(open + OPEN.length(), close);
+			int parameter = parameterNames.indexOf(name);
+			if (parameter < 0)
+				throw new IllegalArgumentException("Unknown placeholder [[" + name + "]]");
+
+			literalStarts.add(position);
+			literalEnds.add(open);
+			slotParameters.add(parameter);
+
+			position = close + CLOSE.length();
+			open = source.indexOf(OPEN, position);
+		}
+
+		literalStarts.add(position);
+		literalEnds.add(source.length());
+
+		return new MailTemplate(source, toArray(literalStarts), toArray(literalEnds), toArray(slotParameters),
+				parameterNames.size());
+	}
+
+	// Method to append the rendered template to the buffer, the values go in
+	// the order of the parameter names:
+	public void renderTo(StringBuilder buffer, String... values) {
+		if (values.length != parameterCount)
+			throw new IllegalArgumentException(
+					"Expected " + parameterCount + " template values, got " + values.length);
+
+		for (int i = 0; i < slotParameters.length; i++) {
+			buffer.append(source, literalStarts[i], literalEnds[i]);
+			buffer.append(values[slotParameters[i]]);
+		}
+		buffer.append(source, literalStarts[slotParameters.length], literalEnds[slotParameters.length]);
+	}
+
+	// Literal length, used to size the buffer:
+	public int getLiteralLength() {
+		int length = 0;
+		for (int i = 0; i < literalStarts.length; i++) {
+			length += literalEnds[i] - literalStarts[i];
+		}
+		return length;
+	}
+
+	private static int[] toArray(List<Integer> values) {
+		return values.stream().mapToInt(Integer::intValue).toArray();
+	}
+}
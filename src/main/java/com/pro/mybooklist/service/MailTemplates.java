@@ -0,0 +1,136 @@
+package com.pro.mybooklist.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+// Registry of the compiled email templates. The templates are read from
+// mail.templates.location and compiled at start up. When
+// mail.templates.reload-check-ms is positive, a changed template file is
+// recompiled on the next render after the check interval; a template that
+// fails to compile on reload is ignored and the previous version is kept.
+@Component
+public class MailTemplates {
+	public static final String ORDER_INFO = "order-info";
+	public static final String VERIFICATION = "verification";
+	public static final String PASSWORD = "password";
+	public static final String ORDER_EMAIL_CHANGED = "order-email-changed";
+	public static final String STATUS_CHANGE = "status-change";
+
+	private static final Map<String, List<String>> PARAMETERS = Map.of(
+			ORDER_INFO, List.of("name", "ORDERID", "ORDERPASS"),
+			VERIFICATION, List.of("name", "URL"),
+			PASSWORD, List.of("name", "PASSWORD"),
+			ORDER_EMAIL_CHANGED, List.of("name", "ORDERID"),
+			STATUS_CHANGE, List.of("name", "status", "ORDERID"));
+
+	// Values are usually short, this is added to the literal length of the
+	// template to size the buffer:
+	private static final int VALUES_CAPACITY = 256;
+
+	private static final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(StringBuilder::new);
+
+	private final ResourceLoader resourceLoader;
+	private final String location;
+	private final long reloadCheckMillis;
+
+	private final Map<String, LoadedTemplate> templates = new ConcurrentHashMap<>();
+	private volatile long lastReloadCheck;
+
+	public MailTemplates(ResourceLoader resourceLoader,
+			@Value("${mail.templates.location:classpath:mail/}") String location,
+			@Value("${mail.templates.reload-check-ms:0}") long reloadCheckMillis) {
+		this.resourceLoader = resourceLoader;
+		this.location = location.endsWith("/") ? location : location + "/";
+		this.reloadCheckMillis = reloadCheckMillis;
+
+		for (String name : PARAMETERS.keySet()) {
+			templates.put(name, this.load(name));
+		}
+		this.lastReloadCheck = System.currentTimeMillis();
+	}
+
+	// Method to render the template with the values in the order of its
+	// parameters:
+	public String render(String name, String... values) {
+		if (reloadCheckMillis > 0)
+			this.reloadIfDue();
+
+		MailTemplate template = this.getTemplate(name);
+
+		StringBuilder buffer = buffers.get();
+		buffer.setLength(0);
+		buffer.ensureCapacity(template.getLiteralLength() + VALUES_CAPACITY);
+		template.renderTo(buffer, values);
+		return buffer.toString();
+	}
+
+	public MailTemplate getTemplate(String name) {
+		LoadedTemplate loadedTemplate = templates.get(name);
+		if (loadedTemplate == null)
+			throw new IllegalArgumentException("Unknown email template " + name);
+
+		return loadedTemplate.template();
+	}
+
+	private void reloadIfDue() {
+		long now = System.currentTimeMillis();
+		if (now - lastReloadCheck < reloadCheckMillis)
+			return;
+
+		synchronized (this) {
+			if (now - lastReloadCheck < reloadCheckMillis)
+				return;
+
+			templates.replaceAll((name, loadedTemplate) -> this.reloadIfModified(name, loadedTemplate));
+			lastReloadCheck = now;
+		}
+	}
+
+	private LoadedTemplate reloadIfModified(String name, LoadedTemplate loadedTemplate) {
+		try {
+			if (this.getResource(name).lastModified() == loadedTemplate.lastModified())
+				return loadedTemplate;
+
+			return this.load(name);
+		} catch (IOException | IllegalArgumentException | IllegalStateException e) {
+			return loadedTemplate;
+		}
+	}
+
+	private LoadedTemplate load(String name) {
+		Resource resource = this.getResource(name);
+
+		try (InputStream inputStream = resource.getInputStream()) {
+			String source = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+			MailTemplate template = MailTemplate.compile(source.stripTrailing(), PARAMETERS.get(name));
+			return new LoadedTemplate(template, this.getLastModified(resource));
+		} catch (IOException e) {
+			throw new IllegalStateException("Can't read the email template " + resource.getDescription(), e);
+		}
+	}
+
+	private Resource getResource(String name) {
+		return resourceLoader.getResource(location + name + ".html");
+	}
+
+	// Resources inside the jar don't always have the modification time:
+	private long getLastModified(Resource resource) {
+		try {
+			return resource.lastModified();
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	private record LoadedTemplate(MailTemplate template, long lastModified) {
+	}
+}
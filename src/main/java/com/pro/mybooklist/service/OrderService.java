@@ -1,6 +1,6 @@
 package com.pro.mybooklist.service;
 
-import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.List;
 
 import com.pro.mybooklist.model.*;
@@ -8,7 +8,6 @@ import org.apache.commons.lang3.RandomStringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.mail.MailAuthenticationException;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
@@ -20,7 +19,7 @@ import com.pro.mybooklist.httpforms.OrderPasswordInfo;
 import com.pro.mybooklist.model.Cart;
 import com.pro.mybooklist.sqlforms.TotalOfCart;
 
-import jakarta.mail.MessagingException;
+import jakarta.transaction.Transactional;
 
 @Service
 public class OrderService {
@@ -33,12 +32,21 @@ public class OrderService {
 	@Autowired
 	private CartBookRepository cartBookRepository;
 
+	@Autowired
+	private OrderLineRepository orderLineRepository;
+
 	@Autowired
 	private CommonService commonService;
 
 	@Autowired
 	private MailService mailService;
 
+	@Autowired
+	private SalesRanking salesRanking;
+
+	@Autowired
+	private CurrentCartCache currentCartCache;
+
 	// Method to get the list of all the orders:
 	public List<Order> getOrders() {
 		List<Order> orders = (List<Order>) orderRepository.findAll();
@@ -68,11 +76,15 @@ public class OrderService {
 		return order;
 	}
 
-	// Method to get total price of order by order Id:
+	// Method to get total price of order by order Id. The orders made before
+	// the total was stored at checkout are summed up out of their carts:
 	public TotalOfCart getTotalOfOrderByOrderId(Long orderId) {
 		commonService.findOrder(orderId);
 
-		TotalOfCart totalOfOrder = cartRepository.findTotalOfOrder(orderId);
+		TotalOfCart totalOfOrder = orderRepository.findTotalOfOrder(orderId);
+		if (totalOfOrder == null)
+			totalOfOrder = cartRepository.findTotalOfOrder(orderId);
+
 		return totalOfOrder;
 	}
 
@@ -87,51 +99,57 @@ public class OrderService {
 	}
 
 	// Method to create order out of cart by cart id and cart password:
-	public OrderPasswordInfo makeSaleNoAuthentication(AddressInfoNoAuthentication addressInfo)
-			throws MessagingException, UnsupportedEncodingException {
+	@Transactional
+	public OrderPasswordInfo makeSaleNoAuthentication(AddressInfoNoAuthentication addressInfo) {
 		Long cartid = addressInfo.getCartid();
+		String cartToken = addressInfo.getToken();
 		String cartPassword = addressInfo.getPassword();
 
-		Cart cart = commonService.findCartAndCheckIsPrivateAndCheckPasswordAndCheckIsCurrent(cartid,
-				cartPassword);
-		String passwordRandom = this.checkIfCartIsEmptyAndSetCartNotCurrentAndGeneratePassword(cart);
+		// The lines are read under the lock, so a concurrent change of the cart
+		// either makes it into the order or waits and finds the cart closed:
+		Cart cart = commonService.findCartAndCheckIsPrivateAndCheckTokenOrPasswordAndLockCurrent(cartid,
+				cartToken, cartPassword);
+		List<CartBook> cartBooks = this.checkIfCartIsEmpty(cart);
+		String passwordRandom = this.setCartNotCurrentAndAddSalesAndGeneratePassword(cart, cartBooks);
 		String hashedPassword = commonService.encodePassword(passwordRandom);
 
-		Long orderId = this.createOrderByAddressInfoNoAuthentication(addressInfo, cart, hashedPassword);
+		Long orderId = this.createOrderByAddressInfoNoAuthentication(addressInfo, cart, cartBooks, hashedPassword);
 		OrderPasswordInfo orderPassword = new OrderPasswordInfo(orderId, passwordRandom);
 
-		this.tryToSendOrderInfoEmail(addressInfo.getFirstname(), addressInfo.getEmail(), orderId, passwordRandom);
+		mailService.queueOrderInfoEmail(addressInfo.getFirstname(), addressInfo.getEmail(), orderId, passwordRandom);
 
 		return orderPassword;
 	}
 
 	private Long createOrderByAddressInfoNoAuthentication(AddressInfoNoAuthentication addressInfo, Cart cart,
-			String hashedPassword) {
+			List<CartBook> cartBooks, String hashedPassword) {
 		Order order = new Order(addressInfo.getFirstname(), addressInfo.getLastname(), addressInfo.getCountry(),
 				addressInfo.getCity(), addressInfo.getStreet(), addressInfo.getPostcode(), addressInfo.getEmail(),
                 cart, addressInfo.getNote(), hashedPassword);
-		orderRepository.save(order);
+		this.saveOrderWithLines(order, cartBooks);
 
 		Long orderId = order.getOrderid();
 		return orderId;
 	}
 
 	// Method to create order out of authenticated user's current cart:
-	public OrderPasswordInfo makeSaleByUserId(Long userId, AddressInfo addressInfo, Authentication authentication)
-			throws MessagingException, UnsupportedEncodingException {
+	@Transactional
+	public OrderPasswordInfo makeSaleByUserId(Long userId, AddressInfo addressInfo, Authentication authentication) {
 		User user = commonService.checkAuthenticationAndAuthorize(authentication, userId);
-		Cart currentCart = commonService.findCurrentCartOfUser(user);
+		Cart currentCart = commonService.lockCurrentCartOfUser(user);
 
-		String passwordRandom = this.checkIfCartIsEmptyAndSetCartNotCurrentAndGeneratePassword(currentCart);
+		List<CartBook> cartBooks = this.checkIfCartIsEmpty(currentCart);
+		String passwordRandom = this.setCartNotCurrentAndAddSalesAndGeneratePassword(currentCart, cartBooks);
+		currentCartCache.invalidate(userId);
 		String hashedPassword = commonService.encodePassword(passwordRandom);
 
-		Long orderId = this.createOrderByAddressInfo(addressInfo, currentCart, hashedPassword);
+		Long orderId = this.createOrderByAddressInfo(addressInfo, currentCart, cartBooks, hashedPassword);
 		OrderPasswordInfo orderPassword = new OrderPasswordInfo(orderId, passwordRandom);
 
-		this.tryToSendOrderInfoEmail(user.getUsername(), user.getEmail(), orderId, passwordRandom);
+		mailService.queueOrderInfoEmail(user.getUsername(), user.getEmail(), orderId, passwordRandom);
 
 		if (!addressInfo.getEmail().equals(user.getEmail())) {
-			this.tryToSendOrderInfoEmail(user.getUsername(), addressInfo.getEmail(), orderId, passwordRandom);
+			mailService.queueOrderInfoEmail(user.getUsername(), addressInfo.getEmail(), orderId, passwordRandom);
 		}
 
 		commonService.addCurrentCartForUser(user);
@@ -139,28 +157,48 @@ public class OrderService {
 		return orderPassword;
 	}
 
-	private Long createOrderByAddressInfo(AddressInfo addressInfo, Cart cart, String hashedPassword) {
+	private Long createOrderByAddressInfo(AddressInfo addressInfo, Cart cart, List<CartBook> cartBooks,
+			String hashedPassword) {
 		Order order = new Order(addressInfo.getFirstname(), addressInfo.getLastname(), addressInfo.getCountry(),
 				addressInfo.getCity(), addressInfo.getStreet(), addressInfo.getPostcode(), addressInfo.getEmail(),
                 cart, addressInfo.getNote(), hashedPassword);
-		orderRepository.save(order);
+		this.saveOrderWithLines(order, cartBooks);
 
 		Long orderId = order.getOrderid();
 		return orderId;
 	}
 
-	private String checkIfCartIsEmptyAndSetCartNotCurrentAndGeneratePassword(Cart cart) {
-		this.checkIfCartIsEmpty(cart);
+	// The lines of the cart are copied to the order with the current book data,
+	// so the order doesn't change when the books are edited later:
+	private void saveOrderWithLines(Order order, List<CartBook> cartBooks) {
+		List<OrderLine> orderLines = new ArrayList<>();
+		double total = 0;
+
+		for (CartBook cartBook : cartBooks) {
+			OrderLine orderLine = new OrderLine(order, cartBook);
+			orderLines.add(orderLine);
+			total += orderLine.getPrice() * orderLine.getQuantity();
+		}
+
+		order.setTotal(total);
+		orderRepository.save(order);
+		orderLineRepository.saveAll(orderLines);
+	}
+
+	private String setCartNotCurrentAndAddSalesAndGeneratePassword(Cart cart, List<CartBook> cartBooksInCart) {
 		this.setCartNotCurrent(cart);
+		salesRanking.addSales(cartBooksInCart);
 
 		String passwordRandom = RandomStringUtils.randomAlphanumeric(15);
 		return passwordRandom;
 	}
 
-	private void checkIfCartIsEmpty(Cart cart) {
+	private List<CartBook> checkIfCartIsEmpty(Cart cart) {
 		List<CartBook> cartBooksInCart = cartBookRepository.findByCart(cart);
 		if (cartBooksInCart.size() == 0)
 			throw new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE, "The cart is empty");
+
+		return cartBooksInCart;
 	}
 
 	private void setCartNotCurrent(Cart cart) {
@@ -168,24 +206,15 @@ public class OrderService {
 		cartRepository.save(cart);
 	}
 
-	private void tryToSendOrderInfoEmail(String firstnameOrUsername, String email, Long orderId, String password)
-			throws MessagingException, UnsupportedEncodingException {
-		try {
-			mailService.sendOrderInfoEmail(firstnameOrUsername, email, orderId, password);
-		} catch (MailAuthenticationException e) {
-		}
-	}
-
 	// Method to update order's info by orderId:
-	public ResponseEntity<?> updateOrder(Long orderId, OrderInfo orderInfo)
-			throws MessagingException, UnsupportedEncodingException {
+	@Transactional
+	public ResponseEntity<?> updateOrder(Long orderId, OrderInfo orderInfo) {
 		Order order = commonService.findOrder(orderId);
 		this.updateOrder(order, orderInfo, orderId);
 		return new ResponseEntity<>("Order Info was updated successfully", HttpStatus.OK);
 	}
 
-	private void updateOrder(Order order, OrderInfo orderInfo, Long orderId)
-			throws MessagingException, UnsupportedEncodingException {
+	private void updateOrder(Order order, OrderInfo orderInfo, Long orderId) {
 		this.updateOrderFieldsExceptEmailAndStatus(order, orderInfo);
 		order = this.handleEmailChangedCase(order, orderInfo, orderId);
 		order = this.handleStatusChangedCase(order, orderInfo, orderId);
@@ -204,42 +233,26 @@ public class OrderService {
 		return order;
 	}
 
-	private Order handleEmailChangedCase(Order order, OrderInfo orderInfo, Long orderId)
-			throws MessagingException, UnsupportedEncodingException {
+	private Order handleEmailChangedCase(Order order, OrderInfo orderInfo, Long orderId) {
 		if (!order.getEmail().equals(orderInfo.getEmail())) {
-			this.tryToSendOrderEmailChanged(orderInfo, orderId);
+			mailService.queueOrderEmailChanged(orderInfo.getFirstname(), orderInfo.getEmail(), orderId);
 			order.setEmail(orderInfo.getEmail());
 		}
 
 		return order;
 	}
 
-	private Order handleStatusChangedCase(Order order, OrderInfo orderInfo, Long orderId)
-			throws MessagingException, UnsupportedEncodingException {
+	private Order handleStatusChangedCase(Order order, OrderInfo orderInfo, Long orderId) {
 		if (!order.getStatus().equals(orderInfo.getStatus())) {
 			Cart cart = order.getCart();
 			if (cart.getUser() != null) {
-				this.tryToSendStatusChangeEmail(orderInfo, cart.getUser().getEmail(), orderId);
+				mailService.queueStatusChangeEmail(orderInfo.getFirstname(), cart.getUser().getEmail(), orderId,
+						orderInfo.getStatus());
 			}
-			this.tryToSendStatusChangeEmail(orderInfo, orderInfo.getEmail(), orderId);
+			mailService.queueStatusChangeEmail(orderInfo.getFirstname(), orderInfo.getEmail(), orderId,
+					orderInfo.getStatus());
 			order.setStatus(orderInfo.getStatus());
 		}
 		return order;
 	}
-
-	private void tryToSendOrderEmailChanged(OrderInfo orderInfo, Long orderId)
-			throws MessagingException, UnsupportedEncodingException {
-		try {
-			mailService.sendOrderEmailChanged(orderInfo.getFirstname(), orderInfo.getEmail(), orderId);
-		} catch (MailAuthenticationException e) {
-		}
-	}
-
-	private void tryToSendStatusChangeEmail(OrderInfo orderInfo, String email, Long orderId)
-			throws MessagingException, UnsupportedEncodingException {
-		try {
-			mailService.sendStatusChangeEmail(orderInfo.getFirstname(), email, orderId, orderInfo.getStatus());
-		} catch (MailAuthenticationException e) {
-		}
-	}
 }
@@ -0,0 +1,110 @@
+package com.pro.mybooklist.service;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+// BCrypt is CPU-bound, so the number of hashes computed at the same time is
+// capped. Requests that can't get a permit in time are rejected instead of
+// piling up on the Tomcat threads. The service is the PasswordEncoder of the
+// application, so the logins of the AuthenticationManager share the limit.
+@Service
+public class PasswordHashingService implements PasswordEncoder {
+	private final PasswordEncoder passwordEncoder;
+
+	private final Semaphore permits;
+	private final long acquireTimeoutMillis;
+
+	private final AtomicLong hashCount = new AtomicLong();
+	private final AtomicLong hashNanos = new AtomicLong();
+	private final AtomicLong verifyCount = new AtomicLong();
+	private final AtomicLong verifyNanos = new AtomicLong();
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	public PasswordHashingService(@Value("${password.bcrypt.strength:10}") int bcryptStrength,
+			@Value("${password.hashing.max-concurrency:0}") int maxConcurrency,
+			@Value("${password.hashing.acquire-timeout-ms:5000}") long acquireTimeoutMillis) {
+		this.passwordEncoder = new BCryptPasswordEncoder(bcryptStrength);
+		int concurrency = maxConcurrency > 0 ? maxConcurrency : Runtime.getRuntime().availableProcessors();
+		this.permits = new Semaphore(concurrency, true);
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+	}
+
+	// Method to hash the raw password:
+	@Override
+	public String encode(CharSequence rawPassword) {
+		return this.runLimited(() -> passwordEncoder.encode(rawPassword), hashCount, hashNanos);
+	}
+
+	// Method to compare the raw password with the stored hash:
+	@Override
+	public boolean matches(CharSequence rawPassword, String passwordHash) {
+		if (rawPassword == null || passwordHash == null)
+			return false;
+
+		return this.runLimited(() -> passwordEncoder.matches(rawPassword, passwordHash), verifyCount, verifyNanos);
+	}
+
+	private <T> T runLimited(Supplier<T> hashing, AtomicLong count, AtomicLong nanos) {
+		this.acquirePermit();
+
+		try {
+			long start = System.nanoTime();
+			T result = hashing.get();
+			nanos.addAndGet(System.nanoTime() - start);
+			count.incrementAndGet();
+			return result;
+		} finally {
+			permits.release();
+		}
+	}
+
+	private void acquirePermit() {
+		try {
+			if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				rejectedCount.incrementAndGet();
+				throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+						"The server is busy, please try again later");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "The request was interrupted");
+		}
+	}
+
+	public long getHashCount() {
+		return hashCount.get();
+	}
+
+	public double getAverageHashMillis() {
+		return this.averageMillis(hashNanos, hashCount);
+	}
+
+	public long getVerifyCount() {
+		return verifyCount.get();
+	}
+
+	public double getAverageVerifyMillis() {
+		return this.averageMillis(verifyNanos, verifyCount);
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	private double averageMillis(AtomicLong nanos, AtomicLong count) {
+		long calls = count.get();
+		if (calls == 0)
+			return 0;
+
+		return nanos.get() / 1_000_000.0 / calls;
+	}
+}
@@ -0,0 +1,153 @@
+package com.pro.mybooklist.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.pro.mybooklist.MyUser;
+import com.pro.mybooklist.model.User;
+import com.pro.mybooklist.model.UserRepository;
+
+// Bounded LRU cache of the principals resolved by the AuthenticationFilter.
+// Entries expire after the configured TTL and are evicted explicitly by
+// UserService whenever the role, verification or password of a user changes.
+// A principal loaded before an eviction is not cached, and inside a
+// transaction the eviction is repeated after it completes, so a lookup made
+// before the commit can't keep the old row.
+@Component
+public class PrincipalCache {
+	@Autowired
+	private UserRepository userRepository;
+
+	private final int maxSize;
+	private final long ttlMillis;
+	private final Map<String, CachedPrincipal> principals;
+
+	private final AtomicLong invalidations = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public PrincipalCache(@Value("${principal.cache.max-size:10000}") int maxSize,
+			@Value("${principal.cache.ttl-seconds:300}") long ttlSeconds) {
+		this.maxSize = maxSize;
+		this.ttlMillis = ttlSeconds * 1000;
+		this.principals = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedPrincipal> eldest) {
+				return size() > PrincipalCache.this.maxSize;
+			}
+		};
+	}
+
+	// Method to get the principal by username, the database is queried only on
+	// a cache miss or when the cached entry has expired:
+	public Optional<MyUser> getPrincipal(String username) {
+		if (username == null)
+			return Optional.empty();
+
+		long now = System.currentTimeMillis();
+		CachedPrincipal cachedPrincipal = this.getCachedPrincipal(username, now);
+
+		if (cachedPrincipal != null) {
+			hits.incrementAndGet();
+			return Optional.of(cachedPrincipal.principal());
+		}
+
+		misses.incrementAndGet();
+		long stamp = invalidations.get();
+		Optional<User> optionalUser = userRepository.findByUsername(username);
+
+		if (!optionalUser.isPresent())
+			return Optional.empty();
+
+		MyUser principal = this.createPrincipal(optionalUser.get());
+		this.putCachedPrincipal(username, new CachedPrincipal(principal, now + ttlMillis), stamp);
+
+		return Optional.of(principal);
+	}
+
+	// Method to drop the cached principal after the user was changed:
+	public void invalidate(String username) {
+		this.remove(username);
+
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int status) {
+					remove(username);
+				}
+			});
+		}
+	}
+
+	public void invalidateAll() {
+		synchronized (principals) {
+			invalidations.incrementAndGet();
+			principals.clear();
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public int getSize() {
+		synchronized (principals) {
+			return principals.size();
+		}
+	}
+
+	private CachedPrincipal getCachedPrincipal(String username, long now) {
+		synchronized (principals) {
+			CachedPrincipal cachedPrincipal = principals.get(username);
+
+			if (cachedPrincipal == null)
+				return null;
+
+			if (cachedPrincipal.expiresAt() <= now) {
+				principals.remove(username);
+				return null;
+			}
+
+			return cachedPrincipal;
+		}
+	}
+
+	private void putCachedPrincipal(String username, CachedPrincipal cachedPrincipal, long stamp) {
+		synchronized (principals) {
+			if (invalidations.get() == stamp)
+				principals.put(username, cachedPrincipal);
+		}
+	}
+
+	private void remove(String username) {
+		synchronized (principals) {
+			invalidations.incrementAndGet();
+			principals.remove(username);
+		}
+	}
+
+	private MyUser createPrincipal(User user) {
+		boolean enabled = user.isAccountVerified();
+
+		return new MyUser(user.getId(), user.getUsername(), user.getPassword(), enabled, true, true, true,
+				AuthorityUtils.createAuthorityList(user.getRole()));
+	}
+
+	private record CachedPrincipal(MyUser principal, long expiresAt) {
+	}
+}
@@ -0,0 +1,298 @@
+package com.pro.mybooklist.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.pro.mybooklist.model.Book;
+import com.pro.mybooklist.model.BookRepository;
+import com.pro.mybooklist.model.CartBook;
+import com.pro.mybooklist.model.CartRepository;
+import com.pro.mybooklist.sqlforms.RawBookInfo;
+import com.pro.mybooklist.sqlforms.Sales;
+
+// In-memory per-book sales counters and the top-N ranking derived from them.
+// Counters are incremented by OrderService when a cart is closed, the full
+// aggregation over the closed carts runs only on the first read after start up
+// and when an admin asks to rebuild the ranking.
+//
+// The aggregation runs outside of the lock of the counters, so the checkouts
+// keep adding their sales meanwhile. A cart closed while it runs may or may
+// not be seen by its query. The sales committed during a rebuild are recorded
+// with their cart, and once the query is done the closed carts among them are
+// looked up in the same repeatable read transaction: the sales of the carts
+// the query didn't see are added to the rebuilt counters, the others are
+// already in them.
+//
+// The counters are shared with the AutocompleteIndex, which copies them with
+// getSales and is told about the sales added afterwards. The epoch changes
+// whenever the counters are rebuilt or dropped, the version on every change.
+@Component
+public class SalesRanking {
+	private static final Comparator<Map.Entry<Long, Long>> BY_SALES = Map.Entry.<Long, Long>comparingByValue()
+			.thenComparing(Map.Entry.<Long, Long>comparingByKey().reversed());
+
+	@Autowired
+	private BookRepository bookRepository;
+
+	@Autowired
+	private CartRepository cartRepository;
+
+	@Autowired
+	private CatalogCache catalogCache;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private final int topSize;
+	private final Object rebuildLock = new Object();
+	private Map<Long, Long> salesByBookId = new HashMap<>();
+
+	private final AtomicLong epoch = new AtomicLong();
+	private final List<SalesListener> listeners = new CopyOnWriteArrayList<>();
+	private long version;
+	private boolean stale = true;
+	private List<CartSales> salesDuringRebuild;
+	private volatile List<Long> topBookIds;
+
+	// Copy of the counters, tagged with the epoch and the version they were
+	// copied at:
+	public record SalesSnapshot(long epoch, long version, Map<Long, Long> salesByBookId) {
+	}
+
+	// Receives the sales added to the counters. The calls are made outside of
+	// the lock of the ranking and may arrive out of order, the version tells
+	// whether the sales are already in a snapshot:
+	public interface SalesListener {
+		void salesAdded(Map<Long, Long> sales, long epoch, long version);
+	}
+
+	public SalesRanking(@Value("${sales.ranking.top-size:10}") int topSize) {
+		this.topSize = topSize;
+	}
+
+	// Method to get the top sold books, book details come from the catalog
+	// cache:
+	public List<RawBookInfo> getTopSales() {
+		List<Long> currentTopBookIds = topBookIds;
+
+		if (currentTopBookIds == null)
+			currentTopBookIds = this.calculateTopBookIds();
+
+		List<RawBookInfo> topSales = new ArrayList<>();
+		for (Long bookId : currentTopBookIds) {
+			Optional<Book> optionalBook = catalogCache.getBookById(bookId);
+			if (optionalBook.isPresent()) {
+				Book book = optionalBook.get();
+				topSales.add(new RawBookInfo(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn(),
+						book.getBookYear(), book.getPrice(), book.getUrl()));
+			}
+		}
+
+		return topSales;
+	}
+
+	// Method to add the books of the closed cart to the counters. Inside a
+	// transaction the counters are changed only after the commit:
+	public void addSales(List<CartBook> cartBooks) {
+		Map<Long, Long> sales = new HashMap<>();
+		for (CartBook cartBook : cartBooks) {
+			sales.merge(cartBook.getBook().getId(), (long) cartBook.getQuantity(), Long::sum);
+		}
+		Long cartid = cartBooks.isEmpty() ? null : cartBooks.get(0).getId().getCartid();
+
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			this.addToCounters(new CartSales(cartid, sales));
+			return;
+		}
+
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				addToCounters(new CartSales(cartid, sales));
+			}
+		});
+	}
+
+	// Method to recalculate the counters from scratch out of the closed carts.
+	// Only one rebuild runs at a time, the reads and the checkouts wait only
+	// for the counters to be swapped:
+	public void rebuild() {
+		synchronized (rebuildLock) {
+			synchronized (this) {
+				salesDuringRebuild = new ArrayList<>();
+			}
+
+			TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+			transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+			transactionTemplate.setReadOnly(true);
+
+			try {
+				transactionTemplate.executeWithoutResult(status -> {
+					Map<Long, Long> rebuiltSales = new HashMap<>();
+					for (Sales bookSales : bookRepository.findSales()) {
+						rebuiltSales.put(bookSales.bookid(), bookSales.sales());
+					}
+
+					this.swapCounters(rebuiltSales);
+
+					// The counters built out of the uncommitted data of the
+					// caller's transaction are dropped on its rollback:
+					if (!status.isNewTransaction())
+						this.markStaleOnRollback();
+				});
+			} finally {
+				synchronized (this) {
+					salesDuringRebuild = null;
+				}
+			}
+		}
+	}
+
+	// Method to copy the counters, they are rebuilt first if they are stale:
+	public SalesSnapshot getSales() {
+		this.rebuildIfStale();
+
+		synchronized (this) {
+			return new SalesSnapshot(epoch.get(), version, Map.copyOf(salesByBookId));
+		}
+	}
+
+	public long getEpoch() {
+		return epoch.get();
+	}
+
+	public void addListener(SalesListener listener) {
+		listeners.add(listener);
+	}
+
+	private void rebuildIfStale() {
+		if (!this.isStale())
+			return;
+
+		synchronized (rebuildLock) {
+			if (this.isStale())
+				this.rebuild();
+		}
+	}
+
+	private synchronized boolean isStale() {
+		return stale;
+	}
+
+	// The sales committed while the query ran are reconciled under the lock, so
+	// no checkout slips in between. The lookup of their carts reads the same
+	// snapshot as the query and runs by primary key:
+	private synchronized void swapCounters(Map<Long, Long> rebuiltSales) {
+		List<Long> cartids = new ArrayList<>();
+		for (CartSales cartSales : salesDuringRebuild) {
+			if (cartSales.cartid() != null)
+				cartids.add(cartSales.cartid());
+		}
+
+		Set<Long> cartidsSeenByQuery = cartids.isEmpty() ? Set.of()
+				: new HashSet<>(cartRepository.findClosedCartids(cartids));
+
+		for (CartSales cartSales : salesDuringRebuild) {
+			if (!cartidsSeenByQuery.contains(cartSales.cartid()))
+				cartSales.sales().forEach((bookId, quantity) -> rebuiltSales.merge(bookId, quantity, Long::sum));
+		}
+
+		salesByBookId = rebuiltSales;
+		stale = false;
+		topBookIds = null;
+		epoch.incrementAndGet();
+		version++;
+	}
+
+	private void markStaleOnRollback() {
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) {
+				if (status != STATUS_COMMITTED)
+					markStale();
+			}
+		});
+	}
+
+	private synchronized void markStale() {
+		stale = true;
+		topBookIds = null;
+		epoch.incrementAndGet();
+	}
+
+	private void addToCounters(CartSales cartSales) {
+		SalesChange change = this.applySales(cartSales);
+		if (change == null)
+			return;
+
+		for (SalesListener listener : listeners) {
+			listener.salesAdded(cartSales.sales(), change.epoch(), change.version());
+		}
+	}
+
+	// Returns the epoch and the version of the change, or null if the sales
+	// weren't added:
+	private synchronized SalesChange applySales(CartSales cartSales) {
+		if (salesDuringRebuild != null)
+			salesDuringRebuild.add(cartSales);
+
+		if (stale)
+			return null;
+
+		cartSales.sales().forEach((bookId, quantity) -> salesByBookId.merge(bookId, quantity, Long::sum));
+		topBookIds = null;
+		version++;
+		return new SalesChange(epoch.get(), version);
+	}
+
+	private List<Long> calculateTopBookIds() {
+		this.rebuildIfStale();
+
+		synchronized (this) {
+			if (topBookIds != null)
+				return topBookIds;
+
+			PriorityQueue<Map.Entry<Long, Long>> heap = new PriorityQueue<>(BY_SALES);
+			for (Map.Entry<Long, Long> bookSales : salesByBookId.entrySet()) {
+				heap.offer(Map.entry(bookSales.getKey(), bookSales.getValue()));
+				if (heap.size() > topSize)
+					heap.poll();
+			}
+
+			List<Long> bookIds = new ArrayList<>();
+			while (!heap.isEmpty()) {
+				bookIds.add(heap.poll().getKey());
+			}
+			Collections.reverse(bookIds);
+
+			topBookIds = List.copyOf(bookIds);
+			return topBookIds;
+		}
+	}
+
+	// The sales of one closed cart, the cartid is null if the cart isn't saved:
+	private record CartSales(Long cartid, Map<Long, Long> sales) {
+	}
+
+	private record SalesChange(long epoch, long version) {
+	}
+}
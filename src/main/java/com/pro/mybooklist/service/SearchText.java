@@ -0,0 +1,50 @@
+package com.pro.mybooklist.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Text normalization shared by the catalog search: the text is lower cased,
+// the diacritics are removed ("É" -> "e") and it is split into the runs of
+// letters and digits.
+public final class SearchText {
+	private SearchText() {}
+
+	// Method to lower case the text and remove the diacritics:
+	public static String fold(String text) {
+		if (text == null)
+			return "";
+
+		String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+		StringBuilder folded = new StringBuilder(decomposed.length());
+
+		for (int i = 0; i < decomposed.length(); i++) {
+			char character = decomposed.charAt(i);
+			if (Character.getType(character) != Character.NON_SPACING_MARK)
+				folded.append(character);
+		}
+
+		return folded.toString().toLowerCase(Locale.ROOT);
+	}
+
+	// Method to split the folded text into the tokens:
+	public static List<String> tokenize(String text) {
+		String folded = fold(text);
+		List<String> tokens = new ArrayList<>();
+
+		int start = -1;
+		for (int i = 0; i <= folded.length(); i++) {
+			boolean isTokenCharacter = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+
+			if (isTokenCharacter && start < 0) {
+				start = i;
+			} else if (!isTokenCharacter && start >= 0) {
+				tokens.add(folded.substring(start, i));
+				start = -1;
+			}
+		}
+
+		return tokens;
+	}
+}
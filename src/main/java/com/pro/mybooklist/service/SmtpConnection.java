@@ -0,0 +1,115 @@
+package com.pro.mybooklist.service;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+
+// Long-lived SMTP connection reused by the MailDispatcher, so the connection
+// and STARTTLS handshake are paid once per burst of emails instead of once per
+// email. Before reuse the connection is checked with a NOOP, and it is closed
+// after staying idle for too long.
+@Component
+public class SmtpConnection {
+	private static final Logger log = LoggerFactory.getLogger(SmtpConnection.class);
+
+	@Autowired
+	private JavaMailSenderImpl mailSender;
+
+	@Value("${mail.smtp.connection.idle-timeout-ms:60000}")
+	private long idleTimeoutMillis;
+
+	private Transport transport;
+	private long lastUsedAt;
+
+	private final AtomicLong handshakeCount = new AtomicLong();
+	private final AtomicLong sentCount = new AtomicLong();
+	private final AtomicLong sendingNanos = new AtomicLong();
+
+	// Method to send the message over the open connection. A broken connection
+	// is reopened and the message is sent once more. SendFailedException means
+	// the message itself was rejected and the connection stays usable:
+	public synchronized void send(MimeMessage message) throws MessagingException {
+		if (message.getSentDate() == null)
+			message.setSentDate(new Date());
+		message.saveChanges();
+
+		long start = System.nanoTime();
+		try {
+			this.getTransport().sendMessage(message, message.getAllRecipients());
+		} catch (SendFailedException e) {
+			throw e;
+		} catch (MessagingException e) {
+			this.close();
+			this.getTransport().sendMessage(message, message.getAllRecipients());
+		}
+
+		sendingNanos.addAndGet(System.nanoTime() - start);
+		sentCount.incrementAndGet();
+		lastUsedAt = System.currentTimeMillis();
+	}
+
+	// The connection is dropped even if closing it fails, it's usually already
+	// broken then:
+	@PreDestroy
+	public synchronized void close() {
+		if (transport == null)
+			return;
+
+		try {
+			transport.close();
+		} catch (MessagingException e) {
+			log.debug("Closing the SMTP connection failed", e);
+		}
+		transport = null;
+	}
+
+	private Transport getTransport() throws MessagingException {
+		boolean idleTooLong = System.currentTimeMillis() - lastUsedAt > idleTimeoutMillis;
+
+		if (transport != null && (idleTooLong || !transport.isConnected()))
+			this.close();
+
+		if (transport == null)
+			transport = this.connect();
+
+		return transport;
+	}
+
+	private Transport connect() throws MessagingException {
+		Transport newTransport = mailSender.getSession().getTransport(mailSender.getProtocol());
+		newTransport.connect(mailSender.getHost(), mailSender.getPort(), mailSender.getUsername(),
+				mailSender.getPassword());
+
+		handshakeCount.incrementAndGet();
+		lastUsedAt = System.currentTimeMillis();
+		return newTransport;
+	}
+
+	public long getHandshakeCount() {
+		return handshakeCount.get();
+	}
+
+	public long getSentCount() {
+		return sentCount.get();
+	}
+
+	public double getMessagesPerSecond() {
+		long nanos = sendingNanos.get();
+		if (nanos == 0)
+			return 0;
+
+		return sentCount.get() * 1_000_000_000.0 / nanos;
+	}
+}
@@ -1,16 +1,13 @@
 package com.pro.mybooklist.service;
 
-import java.io.UnsupportedEncodingException;
 import java.util.List;
 import java.util.Optional;
 
 import org.apache.commons.lang3.RandomStringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.mail.MailAuthenticationException;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -26,7 +23,7 @@ import com.pro.mybooklist.httpforms.TokenInfo;
 import com.pro.mybooklist.model.User;
 import com.pro.mybooklist.model.UserRepository;
 
-import jakarta.mail.MessagingException;
+import jakarta.transaction.Transactional;
 
 @Service
 public class UserService {
@@ -43,10 +40,10 @@ public class UserService {
 	private MailService mailService;
 
 	@Autowired
-	private AuthenticationManager authenticationManager;
+	private PrincipalCache principalCache;
 
-	@Value("${spring.mail.username}")
-	private String springMailUsername;
+	@Autowired
+	private AuthenticationManager authenticationManager;
 
 	// Login method
 	public ResponseEntity<?> getToken(AccountCredentials credentials) {
@@ -57,6 +54,7 @@ public class UserService {
 		String username = user.getUsername();
 		String password = credentials.getPassword();
 		User authenticatedUser = this.authenticateUser(username, password);
+		commonService.cacheCurrentCartOfUser(authenticatedUser);
 
 		return returnAuthenticationInfo(authenticatedUser);
 	}
@@ -115,18 +113,18 @@ public class UserService {
 	}
 
 	// Signup method
-	public ResponseEntity<?> signUp(SignupCredentials credentials)
-			throws MessagingException, UnsupportedEncodingException {
+	@Transactional
+	public ResponseEntity<?> signUp(SignupCredentials credentials) {
 		String username = credentials.getUsername();
 		String email = credentials.getEmail();
 		this.checkUsernameOrEmailInUse(username, email);
 
 		User newUser = this.createUnverifiedUserBySignupCredentials(credentials);
 
-		try {
-			mailService.sendVerificationEmail(newUser);
+		if (mailService.isMailConfigured()) {
+			mailService.queueVerificationEmail(newUser);
 			return new ResponseEntity<>("We sent verification link to your email address :)", HttpStatus.OK);
-		} catch (MailAuthenticationException e) {
+		} else {
 			this.verifyUserAndCreateCurrentCart(newUser);
 			return new ResponseEntity<>("Registration went well, you can login now", HttpStatus.ACCEPTED);
 		}
@@ -193,24 +191,24 @@ public class UserService {
 		user.setAccountVerified(true);
 		user.setVerificationCode(null);
 		userRepository.save(user);
+		principalCache.invalidate(user.getUsername());
 	}
 
 	// Reset password by email method:
-	public ResponseEntity<?> resetPassword(EmailInfo emailInfo)
-			throws MessagingException, UnsupportedEncodingException {
+	@Transactional
+	public ResponseEntity<?> resetPassword(EmailInfo emailInfo) {
 		String email = emailInfo.getEmail();
 		User user = this.findUserByEmail(email);
 		this.handleAccountUnverifiedCase(user);
 
 		String password = RandomStringUtils.randomAlphanumeric(15);
 
-		try {
-			mailService.sendPasswordEmail(user, password);
-			this.setNewPassword(user, password);
-			return new ResponseEntity<>("A temporary password was sent to your email address", HttpStatus.OK);
-		} catch (MailAuthenticationException e) {
+		if (!mailService.isMailConfigured())
 			return new ResponseEntity<>("The email service is not in use now", HttpStatus.NOT_IMPLEMENTED);
-		}
+
+		this.setNewPassword(user, password);
+		mailService.queuePasswordEmail(user, password);
+		return new ResponseEntity<>("A temporary password was sent to your email address", HttpStatus.OK);
 	}
 
 	private User findUserByEmail(String email) {
@@ -227,6 +225,7 @@ public class UserService {
 		String hashedPassword = commonService.encodePassword(password);
 		user.setPassword(hashedPassword);
 		userRepository.save(user);
+		principalCache.invalidate(user.getUsername());
 	}
 
 	// Method to update the user's own info:
@@ -247,6 +246,7 @@ public class UserService {
 		userToUpdate.setStreet(updatedUser.getStreet());
 		userToUpdate.setPostcode(updatedUser.getPostcode());
 		userRepository.save(userToUpdate);
+		principalCache.invalidate(userToUpdate.getUsername());
 	}
 
 	// The method to change user's own password:
@@ -277,6 +277,7 @@ public class UserService {
 		userToChange.setRole(role);
 		this.updateVerification(isAccountVerified, userToChange);
 		userRepository.save(userToChange);
+		principalCache.invalidate(userToChange.getUsername());
 
 		return new ResponseEntity<>("Role of the user was successfully changed", HttpStatus.OK);
 	}
@@ -303,7 +304,7 @@ public class UserService {
 	// thrown. Otherwise user is verified automatically
 	private void handleAccountUnverifiedCase(User user) {
 		if (!user.isAccountVerified()) {
-			if (!this.springMailUsername.equals("default_value"))
+			if (mailService.isMailConfigured())
 				throw new ResponseStatusException(HttpStatus.CONFLICT, "Email is not verified");
 
 			this.verifyUserAndCreateCurrentCart(user);
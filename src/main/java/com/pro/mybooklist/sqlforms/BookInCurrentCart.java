@@ -1,14 +1,5 @@
 package com.pro.mybooklist.sqlforms;
 
-public interface BookInCurrentCart {
-	Long getBookid();
-	Long getCartid();
-	String getTitle();
-	String getAuthor();
-	String getIsbn();
-	Integer getBook_year();
-	Double getPrice();
-	String getCategory();
-	Integer getQuantity();
-	String getUrl();
+public record BookInCurrentCart(Long bookid, Long cartid, String title, String author, String isbn, Integer book_year,
+		Double price, String category, Integer quantity, String url) {
 }
@@ -0,0 +1,10 @@
+package com.pro.mybooklist.sqlforms;
+
+import com.pro.mybooklist.model.Book;
+
+public record BookSummary(Long bookid, String title, String author, Double price, String url, Long categoryid) {
+	public static BookSummary of(Book book) {
+		return new BookSummary(book.getId(), book.getTitle(), book.getAuthor(), book.getPrice(), book.getUrl(),
+				book.getCategory() == null ? null : book.getCategory().getCategoryid());
+	}
+}
@@ -1,6 +1,4 @@
 package com.pro.mybooklist.sqlforms;
 
-public interface QuantityOfCart {
-	Long getCartid();
-	Integer getItems();
+public record QuantityOfCart(Long cartid, Integer items) {
 }
@@ -1,11 +1,5 @@
 package com.pro.mybooklist.sqlforms;
 
-public interface RawBookInfo {
-	Long getBookid();
-	String getTitle();
-	String getAuthor();
-	String getIsbn();
-	Integer getBook_year();
-	Double getPrice();
-	String getUrl();
+public record RawBookInfo(Long bookid, String title, String author, String isbn, Integer book_year, Double price,
+		String url) {
 }
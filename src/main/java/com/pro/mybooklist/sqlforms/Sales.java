@@ -1,6 +1,4 @@
 package com.pro.mybooklist.sqlforms;
 
-public interface Sales {
-	Long getBookid();
-	Integer getSales();
+public record Sales(Long bookid, Long sales) {
 }
@@ -1,6 +1,4 @@
 package com.pro.mybooklist.sqlforms;
 
-public interface TotalOfCart {
-	Long getCartid();
-	Double getTotal();
+public record TotalOfCart(Long cartid, Double total) {
 }
@@ -1,6 +1,5 @@
 package com.pro.mybooklist.web;
 
-import java.io.UnsupportedEncodingException;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,8 +23,6 @@ import com.pro.mybooklist.service.BookService;
 import com.pro.mybooklist.service.OrderService;
 import com.pro.mybooklist.service.UserService;
 
-import jakarta.mail.MessagingException;
-
 @CrossOrigin(origins = "*")
 @RestController
 @PreAuthorize("hasAuthority('ADMIN')")
@@ -67,9 +64,15 @@ public class RestAdminController {
 
 	}
 
+	@PutMapping("/rebuildtopsales")
+	public ResponseEntity<?> rebuildTopSales() {
+
+		return bookService.rebuildTopSales();
+
+	}
+
 	@PutMapping("/updateorder/{orderid}")
-	public ResponseEntity<?> updateOrder(@PathVariable("orderid") Long orderId, @RequestBody OrderInfo orderInfo)
-			throws MessagingException, UnsupportedEncodingException {
+	public ResponseEntity<?> updateOrder(@PathVariable("orderid") Long orderId, @RequestBody OrderInfo orderInfo) {
 
 		return orderService.updateOrder(orderId, orderInfo);
 
@@ -1,6 +1,5 @@
 package com.pro.mybooklist.web;
 
-import java.io.UnsupportedEncodingException;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,6 +17,8 @@ import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.pro.mybooklist.httpforms.AddressInfo;
+import com.pro.mybooklist.httpforms.CartChangesInfo;
+import com.pro.mybooklist.httpforms.CartView;
 import com.pro.mybooklist.httpforms.OrderPasswordInfo;
 import com.pro.mybooklist.httpforms.PasswordInfo;
 import com.pro.mybooklist.httpforms.QuantityInfo;
@@ -31,7 +32,6 @@ import com.pro.mybooklist.sqlforms.BookInCurrentCart;
 import com.pro.mybooklist.sqlforms.QuantityOfCart;
 import com.pro.mybooklist.sqlforms.TotalOfCart;
 
-import jakarta.mail.MessagingException;
 import jakarta.transaction.Transactional;
 
 @CrossOrigin(origins = "*")
@@ -95,6 +95,13 @@ public class RestAuthenticatedController {
 
 	}
 
+	@GetMapping("/cartview")
+	public @ResponseBody CartView getCurrentCartView(Authentication authentication) {
+
+		return cartService.getCurrentCartView(authentication);
+
+	}
+
 	@GetMapping("/getcurrenttotal")
 	public @ResponseBody TotalOfCart getCurrentCartTotal(Authentication authentication) {
 
@@ -117,10 +124,17 @@ public class RestAuthenticatedController {
 
 	}
 
+	@PostMapping("/changeitems")
+	public ResponseEntity<?> changeBooksInCurrentCart(@RequestBody CartChangesInfo cartChangesInfo,
+			Authentication authentication) {
+
+		return cartService.changeBooksInCurrentCart(cartChangesInfo, authentication);
+
+	}
+
 	@PostMapping("/makesale/{userid}")
 	public @ResponseBody OrderPasswordInfo makeSaleByUserId(@PathVariable("userid") Long userId,
-			@RequestBody AddressInfo addressInfo, Authentication authentication)
-			throws MessagingException, UnsupportedEncodingException {
+			@RequestBody AddressInfo addressInfo, Authentication authentication) {
 
 		return orderService.makeSaleByUserId(userId, addressInfo, authentication);
 
@@ -1,6 +1,5 @@
 package com.pro.mybooklist.web;
 
-import java.io.UnsupportedEncodingException;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,13 +13,21 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.pro.mybooklist.httpforms.AccountCredentials;
 import com.pro.mybooklist.httpforms.AddressInfoNoAuthentication;
+import com.pro.mybooklist.httpforms.AutocompleteSuggestion;
+import com.pro.mybooklist.httpforms.CartChangesInfo;
 import com.pro.mybooklist.httpforms.CartInfo;
+import com.pro.mybooklist.httpforms.CartView;
 import com.pro.mybooklist.httpforms.BookQuantityInfo;
+import com.pro.mybooklist.httpforms.BookFilter;
+import com.pro.mybooklist.httpforms.BookFilterPage;
+import com.pro.mybooklist.httpforms.BookPage;
+import com.pro.mybooklist.httpforms.BookSearchPage;
 import com.pro.mybooklist.httpforms.EmailInfo;
 import com.pro.mybooklist.httpforms.OrderPasswordInfo;
 import com.pro.mybooklist.httpforms.SignupCredentials;
@@ -37,7 +44,6 @@ import com.pro.mybooklist.sqlforms.BookInCurrentCart;
 import com.pro.mybooklist.sqlforms.RawBookInfo;
 import com.pro.mybooklist.sqlforms.TotalOfCart;
 
-import jakarta.mail.MessagingException;
 import jakarta.transaction.Transactional;
 
 @CrossOrigin(origins = "*")
@@ -68,6 +74,42 @@ public class RestPublicController {
 
 	}
 
+	@GetMapping("/bookspage")
+	public @ResponseBody BookPage getBooksPage(@RequestParam(name = "sort", required = false) String sort,
+			@RequestParam(name = "categoryid", required = false) Long categoryid,
+			@RequestParam(name = "afterId", required = false) Long afterId,
+			@RequestParam(name = "afterTitle", required = false) String afterTitle,
+			@RequestParam(name = "size", required = false) Integer size) {
+
+		return bookService.getBooksPage(sort, categoryid, afterId, afterTitle, size);
+
+	}
+
+	@GetMapping("/search")
+	public @ResponseBody BookSearchPage searchBooks(@RequestParam(name = "q", required = false) String query,
+			@RequestParam(name = "page", required = false) Integer page,
+			@RequestParam(name = "size", required = false) Integer size) {
+
+		return bookService.searchBooks(query, page, size);
+
+	}
+
+	@GetMapping("/autocomplete")
+	public @ResponseBody List<AutocompleteSuggestion> autocomplete(
+			@RequestParam(name = "q", required = false) String prefix,
+			@RequestParam(name = "limit", required = false) Integer limit) {
+
+		return bookService.autocomplete(prefix, limit);
+
+	}
+
+	@GetMapping("/filterbooks")
+	public @ResponseBody BookFilterPage filterBooks(BookFilter filter) {
+
+		return bookService.filterBooks(filter);
+
+	}
+
 	@GetMapping("/categories")
 	public @ResponseBody List<Category> getCategories() {
 
@@ -124,6 +166,13 @@ public class RestPublicController {
 
 	}
 
+	@PostMapping("/cartview")
+	public @ResponseBody CartView getCartViewNoAuthentication(@RequestBody CartInfo cartInfo) {
+
+		return cartService.getCartViewNoAuthentication(cartInfo);
+
+	}
+
 	@PostMapping("/totalofcart")
 	public @ResponseBody TotalOfCart getTotalBycartid(@RequestBody CartInfo cartInfo) {
 
@@ -152,6 +201,13 @@ public class RestPublicController {
 
 	}
 
+	@PostMapping("/carttoken")
+	public @ResponseBody CartInfo getCartToken(@RequestBody CartInfo cartInfo) {
+
+		return cartService.getCartToken(cartInfo);
+
+	}
+
 	@PostMapping("/addbook/{cartid}")
 	public ResponseEntity<?> addBookToCartNoAuthentication(@PathVariable("cartid") Long cartid,
 			@RequestBody BookQuantityInfo bookQuantity) {
@@ -160,10 +216,17 @@ public class RestPublicController {
 
 	}
 
+	@PostMapping("/changebooks/{cartid}")
+	public ResponseEntity<?> changeBooksInCartNoAuthentication(@PathVariable("cartid") Long cartid,
+			@RequestBody CartChangesInfo cartChangesInfo) {
+
+		return cartService.changeBooksInCartNoAuthentication(cartid, cartChangesInfo);
+
+	}
+
 	@PostMapping("/makesale")
 	public @ResponseBody OrderPasswordInfo makeSaleNoAuthentication(
-			@RequestBody AddressInfoNoAuthentication addressInfo)
-			throws MessagingException, UnsupportedEncodingException {
+			@RequestBody AddressInfoNoAuthentication addressInfo) {
 
 		return orderService.makeSaleNoAuthentication(addressInfo);
 
@@ -195,8 +258,7 @@ public class RestPublicController {
 	}
 
 	@PostMapping("/signup")
-	public ResponseEntity<?> signUp(@RequestBody SignupCredentials credentials)
-			throws UnsupportedEncodingException, MessagingException {
+	public ResponseEntity<?> signUp(@RequestBody SignupCredentials credentials) {
 
 		return userService.signUp(credentials);
 
@@ -210,8 +272,7 @@ public class RestPublicController {
 	}
 
 	@PutMapping("/resetpassword")
-	public ResponseEntity<?> resetPassword(@RequestBody EmailInfo emailInfo)
-			throws UnsupportedEncodingException, MessagingException {
+	public ResponseEntity<?> resetPassword(@RequestBody EmailInfo emailInfo) {
 		
 		return userService.resetPassword(emailInfo);
 		
@@ -0,0 +1,14 @@
+-- Migration of cart.expiry_date from VARCHAR (ISO yyyy-MM-dd strings) to DATE
+-- for databases that were created before the column type was changed. The
+-- in-memory database is created from the entities and doesn't need it. The
+-- indexes on the old column, if any, are dropped first, since a column covered
+-- by an index can't be dropped.
+ALTER TABLE cart ADD COLUMN expiry_date_new DATE;
+UPDATE cart SET expiry_date_new = CAST(expiry_date AS DATE) WHERE expiry_date IS NOT NULL;
+DROP INDEX IF EXISTS cart_sweep_idx;
+DROP INDEX IF EXISTS cart_expiry_date_idx;
+ALTER TABLE cart DROP COLUMN expiry_date;
+ALTER TABLE cart RENAME COLUMN expiry_date_new TO expiry_date;
+
+CREATE INDEX IF NOT EXISTS cart_sweep_idx ON cart (userid, current, expiry_date);
+CREATE INDEX IF NOT EXISTS cart_expiry_date_idx ON cart (expiry_date);
@@ -0,0 +1,10 @@
+-- Adds the running totals of the cart lines (cart.item_count and
+-- cart.total_amount) to databases that were created before the columns were
+-- added, and fills them from the existing lines. The in-memory database is
+-- created from the entities and doesn't need it.
+ALTER TABLE cart ADD COLUMN item_count INTEGER DEFAULT 0 NOT NULL;
+ALTER TABLE cart ADD COLUMN total_amount DOUBLE PRECISION DEFAULT 0 NOT NULL;
+
+UPDATE cart AS ca SET
+	item_count = COALESCE((SELECT SUM(cb.quantity) FROM cart_book AS cb WHERE cb.cartid = ca.cartid), 0),
+	total_amount = COALESCE((SELECT SUM(cb.quantity * bo.price) FROM cart_book AS cb JOIN book AS bo ON (bo.id = cb.bookid) WHERE cb.cartid = ca.cartid), 0);
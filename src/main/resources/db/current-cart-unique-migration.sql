@@ -0,0 +1,11 @@
+-- Allows one current cart per user at most in databases that were created
+-- before the constraint was declared on Cart. The extra current carts of a
+-- user are deleted first, keeping the latest one. The in-memory database is
+-- created from the entities and doesn't need it.
+DELETE FROM cart_book WHERE cartid IN (SELECT ca.cartid FROM cart AS ca WHERE ca.current AND ca.userid IS NOT NULL
+	AND ca.cartid < (SELECT MAX(la.cartid) FROM cart AS la WHERE la.current AND la.userid = ca.userid));
+DELETE FROM cart AS ca WHERE ca.current AND ca.userid IS NOT NULL
+	AND ca.cartid < (SELECT MAX(la.cartid) FROM cart AS la WHERE la.current AND la.userid = ca.userid);
+
+ALTER TABLE cart ADD COLUMN current_userid BIGINT GENERATED ALWAYS AS (CASE WHEN current THEN userid END);
+ALTER TABLE cart ADD CONSTRAINT cart_current_user_uk UNIQUE (current_userid);
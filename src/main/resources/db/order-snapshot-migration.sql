@@ -0,0 +1,23 @@
+-- Adds the order line snapshot (order_line table and orders.total) to
+-- databases that were created before they were added. The existing orders are
+-- left without lines and keep being read out of their carts. The in-memory
+-- database is created from the entities and doesn't need it.
+ALTER TABLE orders ADD COLUMN total DOUBLE PRECISION;
+
+CREATE SEQUENCE order_line_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE order_line (
+	id BIGINT NOT NULL PRIMARY KEY,
+	orderid BIGINT NOT NULL REFERENCES orders (orderid),
+	bookid BIGINT NOT NULL,
+	title VARCHAR(255),
+	author VARCHAR(255),
+	isbn VARCHAR(255),
+	url VARCHAR(255),
+	category VARCHAR(255),
+	book_year INTEGER NOT NULL,
+	price DOUBLE PRECISION NOT NULL,
+	quantity INTEGER NOT NULL
+);
+
+CREATE INDEX order_line_order_idx ON order_line (orderid);
@@ -0,0 +1,9 @@
+-- Adds the indexes of the repository queries to databases that were created
+-- before they were declared on the entities. The lookups of the carts of a
+-- user use cart_sweep_idx (userid, current, expiry_date) from
+-- cart-expiry-date-migration.sql. The in-memory database is created from the
+-- entities and doesn't need it.
+CREATE INDEX IF NOT EXISTS cart_book_cart_idx ON cart_book (cartid);
+CREATE INDEX IF NOT EXISTS cart_book_book_idx ON cart_book (bookid);
+CREATE INDEX IF NOT EXISTS orders_cart_idx ON orders (cartid);
+CREATE INDEX IF NOT EXISTS users_verification_code_idx ON users (verification_code);
@@ -0,0 +1,8 @@
+-- Switches users.id from an identity column to the users_seq sequence for
+-- databases that were created before the change. The sequence restarts after
+-- the current ids; its increment must match IdGeneration.ALLOCATION_SIZE. The
+-- in-memory database is created from the entities and doesn't need it.
+ALTER TABLE users ALTER COLUMN id DROP IDENTITY;
+
+CREATE SEQUENCE users_seq START WITH 1 INCREMENT BY 50;
+ALTER SEQUENCE users_seq RESTART WITH (SELECT COALESCE(MAX(id), 0) + 50 FROM users);
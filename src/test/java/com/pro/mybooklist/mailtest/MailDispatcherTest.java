@@ -0,0 +1,152 @@
+package com.pro.mybooklist.mailtest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.pro.mybooklist.model.MailOutbox;
+import com.pro.mybooklist.model.MailOutboxRepository;
+import com.pro.mybooklist.service.MailDispatcher;
+import com.pro.mybooklist.service.MailService;
+import com.pro.mybooklist.service.SmtpConnection;
+
+import jakarta.mail.internet.MimeMessage;
+
+// The dispatcher is tested against the embedded GreenMail smtp server:
+@SpringBootTest(properties = { "spring.mail.host=localhost", "spring.mail.port=3025",
+		"spring.mail.username=shop@localhost", "spring.mail.password=secret",
+		"spring.mail.properties.mail.smtp.starttls.enable=false",
+		"spring.mail.properties.mail.smtp.starttls.required=false", "mail.outbox.poll-interval-ms=3600000" })
+public class MailDispatcherTest {
+	@RegisterExtension
+	static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP)
+			.withConfiguration(GreenMailConfiguration.aConfig().withUser("shop@localhost", "secret"));
+
+	@Autowired
+	private MailService mailService;
+
+	@Autowired
+	private MailDispatcher mailDispatcher;
+
+	@Autowired
+	private SmtpConnection smtpConnection;
+
+	@Autowired
+	private MailOutboxRepository mailOutboxRepository;
+
+	@BeforeEach
+	public void resetOutbox() {
+		mailOutboxRepository.deleteAll();
+	}
+
+	@Test
+	public void testDispatchSendsQueuedEmails() throws Exception {
+		mailService.queueOrderInfoEmail("user1", "user1@mail.com", Long.valueOf(1), "orderPassword");
+		mailService.queueOrderEmailChanged("John", "john@mail.com", Long.valueOf(1));
+		assertThat(greenMail.getReceivedMessages()).isEmpty();
+
+		mailDispatcher.dispatch();
+
+		MimeMessage[] receivedMessages = greenMail.getReceivedMessages();
+		assertThat(receivedMessages).hasSize(2);
+		assertThat(receivedMessages[0].getSubject()).isEqualTo("Your order information");
+		assertThat(receivedMessages[1].getSubject()).isEqualTo("Your order email changed");
+
+		List<MailOutbox> sentMails = mailOutboxRepository.findByStatus(MailOutbox.SENT);
+		assertThat(sentMails).hasSize(2);
+		assertThat(mailOutboxRepository.findByStatus(MailOutbox.PENDING)).isEmpty();
+
+		// The content with the order password isn't kept after sending:
+		assertThat(sentMails).allSatisfy(sentMail -> assertThat(sentMail.getContent()).isNull());
+	}
+
+	@Test
+	public void testDispatchSkipsEmailClaimedByAnotherDispatcher() {
+		mailService.queueOrderEmailChanged("John", "john@mail.com", Long.valueOf(1));
+		MailOutbox mail = mailOutboxRepository.findByStatus(MailOutbox.PENDING).get(0);
+
+		// Another instance claims the email first:
+		LocalDateTime now = LocalDateTime.now();
+		int claimed = mailOutboxRepository.claim(mail.getId(), MailOutbox.PENDING, now, now.plusMinutes(5));
+		assertThat(claimed).isEqualTo(1);
+		assertThat(mailOutboxRepository.claim(mail.getId(), MailOutbox.PENDING, now, now.plusMinutes(5))).isEqualTo(0);
+
+		mailDispatcher.dispatch();
+
+		assertThat(greenMail.getReceivedMessages()).isEmpty();
+		assertThat(mailOutboxRepository.findByStatus(MailOutbox.PENDING)).hasSize(1);
+	}
+
+	@Test
+	public void testPurgeDeletesOldFinishedEmails() {
+		LocalDateTime longAgo = LocalDateTime.now().minusDays(60);
+		MailOutbox oldSentMail = this.saveMail(MailOutbox.SENT, longAgo);
+		MailOutbox oldFailedMail = this.saveMail(MailOutbox.FAILED, longAgo);
+		MailOutbox oldPendingMail = this.saveMail(MailOutbox.PENDING, longAgo);
+		MailOutbox recentSentMail = this.saveMail(MailOutbox.SENT, LocalDateTime.now());
+
+		mailDispatcher.purge();
+
+		assertThat(mailOutboxRepository.findById(oldSentMail.getId())).isNotPresent();
+		assertThat(mailOutboxRepository.findById(oldFailedMail.getId())).isNotPresent();
+		assertThat(mailOutboxRepository.findById(oldPendingMail.getId())).isPresent();
+		assertThat(mailOutboxRepository.findById(recentSentMail.getId())).isPresent();
+	}
+
+	@Test
+	public void testDispatchPostponesFailedEmail() {
+		mailService.queueOrderInfoEmail("user1", "not an address", Long.valueOf(1), "orderPassword");
+		mailService.queueOrderInfoEmail("user1", "user1@mail.com", Long.valueOf(1), "orderPassword");
+
+		mailDispatcher.dispatch();
+
+		assertThat(greenMail.getReceivedMessages()).hasSize(1);
+
+		List<MailOutbox> pendingMails = mailOutboxRepository.findByStatus(MailOutbox.PENDING);
+		assertThat(pendingMails).hasSize(1);
+		MailOutbox failedMail = pendingMails.get(0);
+		assertThat(failedMail.getAttempts()).isEqualTo(1);
+		assertThat(failedMail.getLastError()).isNotNull();
+		assertThat(failedMail.getNextAttemptAt()).isAfter(failedMail.getCreatedAt());
+
+		// The postponed email is not due yet:
+		mailDispatcher.dispatch();
+		assertThat(greenMail.getReceivedMessages()).hasSize(1);
+	}
+
+	@Test
+	public void testDispatchReusesSmtpConnection() {
+		long handshakesBefore = smtpConnection.getHandshakeCount();
+
+		for (int i = 0; i < 3; i++) {
+			mailService.queueOrderEmailChanged("John", "john@mail.com", Long.valueOf(i));
+		}
+		mailDispatcher.dispatch();
+
+		mailService.queueOrderEmailChanged("John", "john@mail.com", Long.valueOf(3));
+		mailDispatcher.dispatch();
+
+		assertThat(greenMail.getReceivedMessages()).hasSize(4);
+		assertThat(smtpConnection.getHandshakeCount() - handshakesBefore).isEqualTo(1);
+		assertThat(smtpConnection.getMessagesPerSecond()).isPositive();
+	}
+
+	private MailOutbox saveMail(String status, LocalDateTime createdAt) {
+		MailOutbox mail = new MailOutbox("john@mail.com", "Subject", "Content");
+		mail.setStatus(status);
+		mail.setCreatedAt(createdAt);
+		// The pending email isn't due, so a dispatch of another test leaves it:
+		mail.setNextAttemptAt(LocalDateTime.now().plusDays(1));
+		return mailOutboxRepository.save(mail);
+	}
+}
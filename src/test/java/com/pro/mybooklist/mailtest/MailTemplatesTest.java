@@ -0,0 +1,81 @@
+package com.pro.mybooklist.mailtest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import com.pro.mybooklist.service.MailTemplate;
+import com.pro.mybooklist.service.MailTemplates;
+
+public class MailTemplatesTest {
+	private static final List<String> TEMPLATE_NAMES = List.of(MailTemplates.ORDER_INFO, MailTemplates.VERIFICATION,
+			MailTemplates.PASSWORD, MailTemplates.ORDER_EMAIL_CHANGED, MailTemplates.STATUS_CHANGE);
+
+	@Test
+	public void testCompileAndRender() {
+		MailTemplate template = MailTemplate.compile("Dear [[name]], order [[ORDERID]] of [[name]]",
+				List.of("name", "ORDERID"));
+		StringBuilder buffer = new StringBuilder();
+
+		template.renderTo(buffer, "John", "5");
+		assertThat(buffer.toString()).isEqualTo("Dear John, order 5 of John");
+
+		assertThatThrownBy(() -> MailTemplate.compile("Dear [[firstname]]", List.of("name")))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> template.renderTo(buffer, "John")).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	public void testRenderClasspathTemplates() {
+		MailTemplates mailTemplates = new MailTemplates(new DefaultResourceLoader(), "classpath:mail/", 0);
+
+		String content = mailTemplates.render(MailTemplates.ORDER_INFO, "user1", "1", "orderPassword");
+		assertThat(content).startsWith("Dear user1,<br><br>").contains("<h4>ORDER NUMBER: 1</h4>")
+				.contains("<h4>ORDER PASSWORD: orderPassword</h4>").endsWith("AXOS inc.").doesNotContain("[[");
+
+		content = mailTemplates.render(MailTemplates.STATUS_CHANGE, "John", "Delivered", "2");
+		assertThat(content).contains("<h5>Delivered</h5>").contains("<h4>ORDER NUMBER: 2</h4>");
+	}
+
+	@Test
+	public void testHotReloadFromFiles(@TempDir Path directory) throws IOException {
+		for (String name : TEMPLATE_NAMES) {
+			Files.copy(new ClassPathResource("mail/" + name + ".html").getInputStream(),
+					directory.resolve(name + ".html"));
+		}
+		MailTemplates mailTemplates = new MailTemplates(new DefaultResourceLoader(), directory.toUri().toString(), 1);
+
+		Path passwordTemplate = directory.resolve(MailTemplates.PASSWORD + ".html");
+		long lastModified = Files.getLastModifiedTime(passwordTemplate).toMillis();
+
+		Files.writeString(passwordTemplate, "Hello [[name]], the password is [[PASSWORD]]");
+		passwordTemplate.toFile().setLastModified(lastModified + 10000);
+		sleep();
+		assertThat(mailTemplates.render(MailTemplates.PASSWORD, "John", "secret"))
+				.isEqualTo("Hello John, the password is secret");
+
+		// The broken template is ignored:
+		Files.writeString(passwordTemplate, "Hello [[username]]");
+		passwordTemplate.toFile().setLastModified(lastModified + 20000);
+		sleep();
+		assertThat(mailTemplates.render(MailTemplates.PASSWORD, "John", "secret"))
+				.isEqualTo("Hello John, the password is secret");
+	}
+
+	private void sleep() {
+		try {
+			Thread.sleep(5);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -135,7 +135,7 @@ public class BookRepositoryTest {
 
 		topSalesBooks = bookrepository.findTopSales();
 		assertThat(topSalesBooks).hasSize(2);
-		assertThat(topSalesBooks.get(0).getTitle()).isEqualTo(topSaleBookTitle);
+		assertThat(topSalesBooks.get(0).title()).isEqualTo(topSaleBookTitle);
 	}
 
 	@Test
@@ -172,7 +172,7 @@ public class BookRepositoryTest {
 
 		booksInOrder = bookrepository.findBooksInOrder(orderId);
 		assertThat(booksInOrder).hasSize(1);
-		assertThat(booksInOrder.get(0).getTitle()).isEqualTo(bookTitle);
+		assertThat(booksInOrder.get(0).title()).isEqualTo(bookTitle);
 	}
 
 	@Test
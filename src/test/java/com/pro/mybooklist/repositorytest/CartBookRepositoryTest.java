@@ -181,6 +181,43 @@ public class CartBookRepositoryTest {
 		assertThat(quantityOfDeletedCartBooks).isEqualTo(3);
 	}
 
+	@Test
+	@Rollback
+	public void testUpsertAndDecrementQuantity() {
+		Cart cart = this.createCartNoUser();
+		Long cartid = cart.getCartid();
+		Book book = bookRepository.save(this.createBook("Little Women", "Other"));
+		Long bookId = book.getId();
+		CartBookKey key = new CartBookKey(cartid, bookId);
+
+		// Not existing book case:
+		int upserted = cartBookRepository.upsertQuantity(cartid, Long.valueOf(0), 2);
+		assertThat(upserted).isEqualTo(0);
+
+		upserted = cartBookRepository.upsertQuantity(cartid, bookId, 2);
+		assertThat(upserted).isEqualTo(1);
+		upserted = cartBookRepository.upsertQuantity(cartid, bookId, 3);
+		assertThat(upserted).isEqualTo(1);
+		CartBook cartBook = cartBookRepository.findById(key).get();
+		assertThat(cartBook.getQuantity()).isEqualTo(5);
+
+		// The loaded line stays attached until it's detached:
+		int decremented = cartBookRepository.decrementQuantity(cartid, bookId);
+		assertThat(decremented).isEqualTo(1);
+		assertThat(cartBookRepository.findById(key).get()).isSameAs(cartBook);
+		cartBookRepository.detachLine(cartid, bookId);
+		assertThat(cartBookRepository.findById(key).get().getQuantity()).isEqualTo(4);
+		assertThat(cartBookRepository.deleteIfLastOne(cartid, bookId)).isEqualTo(0);
+
+		cartBookRepository.upsertQuantity(cartid, bookId, -3);
+		assertThat(cartBookRepository.decrementQuantity(cartid, bookId)).isEqualTo(0);
+		assertThat(cartBookRepository.deleteIfLastOne(cartid, bookId)).isEqualTo(1);
+		cartBookRepository.detachLine(cartid, bookId);
+		assertThat(cartBookRepository.findById(key)).isNotPresent();
+
+		assertThat(cartBookRepository.deleteByCartidAndBookid(cartid, bookId)).isEqualTo(0);
+	}
+
 	private CartBook createCartBookCustomQuantityNoUser(int quantity, String title, String categoryName) {
 		Cart cart = this.createCartNoUser();
 		Book book = this.createBook(title, categoryName);
@@ -1,8 +1,10 @@
 package com.pro.mybooklist.repositorytest;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.data.Offset.offset;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -15,6 +17,8 @@ import org.junit.jupiter.api.TestInstance.Lifecycle;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.test.annotation.Rollback;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
@@ -70,6 +74,11 @@ public class CartRepositoryTest {
 		assertThat(carts).hasSize(2);
 	}
 
+	@Test
+	public void testDefaultPasswordHashMatchesDefaultPassword() {
+		assertThat(new BCryptPasswordEncoder().matches("test", new Cart(true).getPasswordHash())).isTrue();
+	}
+
 	@Test
 	@Rollback
 	public void testCreateCartNoUser() {
@@ -118,12 +127,12 @@ public class CartRepositoryTest {
 
 		quantityOfCart = cartrepository.findQuantityInCurrent(userId);
 		assertThat(quantityOfCart).isNotNull();
-		assertThat(quantityOfCart.getItems()).isEqualTo(2);
+		assertThat(quantityOfCart.items()).isEqualTo(2);
 
 		Book book2 = this.createBook("Little Women 2", "Other", 10.2);
 		this.createCartBookCustomQuantity(3, book2, cart);
 		quantityOfCart = cartrepository.findQuantityInCurrent(userId);
-		assertThat(quantityOfCart.getItems()).isEqualTo(5);
+		assertThat(quantityOfCart.items()).isEqualTo(5);
 	}
 
 	@Test
@@ -142,14 +151,14 @@ public class CartRepositoryTest {
 
 		totalOfCart = cartrepository.findTotalOfCart(cartid);
 		assertThat(totalOfCart).isNotNull();
-		assertThat(totalOfCart.getTotal()).isEqualTo(price1 * 2);
+		assertThat(totalOfCart.total()).isEqualTo(price1 * 2);
 
 		double price2 = 8.2;
 		Book book2 = this.createBook("Little Women 2", "Other", price2);
 		this.createCartBookCustomQuantity(3, book2, cart);
 		totalOfCart = cartrepository.findTotalOfCart(cartid);
 		assertThat(totalOfCart).isNotNull();
-		assertThat(totalOfCart.getTotal()).isEqualTo(price1 * 2 + price2 * 3);
+		assertThat(totalOfCart.total()).isEqualTo(price1 * 2 + price2 * 3);
 
 		Cart cartNoUser = this.createCartNoUser(true);
 		Long cart2Id = cartNoUser.getCartid();
@@ -160,7 +169,7 @@ public class CartRepositoryTest {
 		this.createCartBookCustomQuantity(1, book2, cartNoUser);
 		totalOfCart = cartrepository.findTotalOfCart(cart2Id);
 		assertThat(totalOfCart).isNotNull();
-		assertThat(totalOfCart.getTotal()).isEqualTo(price2);
+		assertThat(totalOfCart.total()).isEqualTo(price2);
 	}
 
 	@Test
@@ -184,7 +193,7 @@ public class CartRepositoryTest {
 
 		totalOfCart = cartrepository.findTotalOfOrder(order1Id);
 		assertThat(totalOfCart).isNotNull();
-		assertThat(totalOfCart.getTotal()).isCloseTo(quantity * (priceBook1 + priceBook2), offset(0.01));
+		assertThat(totalOfCart.total()).isCloseTo(quantity * (priceBook1 + priceBook2), offset(0.01));
 	}
 
 	@Test
@@ -204,14 +213,32 @@ public class CartRepositoryTest {
 
 		totalOfCurrent = cartrepository.findTotalOfCurrentCart(user1Id);
 		assertThat(totalOfCurrent).isNotNull();
-		assertThat(totalOfCurrent.getTotal()).isEqualTo(price1 * 2);
+		assertThat(totalOfCurrent.total()).isEqualTo(price1 * 2);
 
 		double price2 = 8.2;
 		Book book2 = this.createBook("Little Women 2", "Other", price2);
 		this.createCartBookCustomQuantity(3, book2, cart);
 		totalOfCurrent = cartrepository.findTotalOfCurrentCart(user1Id);
 		assertThat(totalOfCurrent).isNotNull();
-		assertThat(totalOfCurrent.getTotal()).isEqualTo(price1 * 2 + price2 * 3);
+		assertThat(totalOfCurrent.total()).isEqualTo(price1 * 2 + price2 * 3);
+	}
+
+	@Test
+	@Rollback
+	public void testRefreshTotalsOfCurrentCartsWithBook() {
+		Cart currentCart = this.createCartWithUser(true, "user1");
+		Cart closedCart = this.createCartNoUser(false);
+		Book book = this.createBook("Little Women", "Other", 10);
+		this.createCartBookCustomQuantity(2, book, currentCart);
+		this.createCartBookCustomQuantity(2, book, closedCart);
+
+		book.setPrice(5);
+		bookrepository.save(book);
+		int updated = cartrepository.refreshTotalsOfCurrentCartsWithBook(book.getId());
+		assertThat(updated).isEqualTo(1);
+
+		assertThat(cartrepository.findTotalOfCart(currentCart.getCartid()).total()).isEqualTo(10);
+		assertThat(cartrepository.findTotalOfCart(closedCart.getCartid()).total()).isEqualTo(20);
 	}
 
 	@Test
@@ -248,6 +275,64 @@ public class CartRepositoryTest {
 		assertThat(currentCarts).hasSize(1);
 	}
 	
+	@Test
+	@Rollback
+	public void testOneCurrentCartPerUser() {
+		String username = "user1";
+		this.createCartWithUser(true, username);
+		User user1 = urepository.findByUsername(username).get();
+
+		// The closed carts of the user are not limited:
+		cartrepository.save(new Cart(false, user1));
+		cartrepository.save(new Cart(false, user1));
+		assertThat(cartrepository.findCurrentByUserid(user1.getId())).hasSize(1);
+
+		// The second current cart is rejected when it's flushed:
+		cartrepository.save(new Cart(true, user1));
+		assertThatThrownBy(() -> cartrepository.findCurrentByUserid(user1.getId()))
+				.isInstanceOf(DataIntegrityViolationException.class);
+	}
+	
+	@Test
+	@Rollback
+	public void testFindExpiredNoUserCartIdsAndDeleteByCartids() {
+		LocalDate today = LocalDate.now();
+		List<Long> expiredCartIds = cartrepository.findExpiredNoUserCartIds(today, 10);
+		assertThat(expiredCartIds).isEmpty();
+
+		LocalDate yesterday = LocalDate.now().minusDays(1);
+		Cart expiredCart1 = this.createCartNoUser(true);
+		expiredCart1.setExpiryDate(yesterday);
+		cartrepository.save(expiredCart1);
+		Cart expiredCart2 = this.createCartNoUser(true);
+		expiredCart2.setExpiryDate(yesterday);
+		cartrepository.save(expiredCart2);
+
+		// Not expired, closed and user's carts are kept:
+		this.createCartNoUser(true);
+		Cart closedCart = this.createCartNoUser(false);
+		closedCart.setExpiryDate(yesterday);
+		cartrepository.save(closedCart);
+		this.createCartWithUser(true, "user1");
+
+		Book book = this.createBook("Little Women", "Other", 10.2);
+		this.createCartBookCustomQuantity(2, book, expiredCart1);
+
+		expiredCartIds = cartrepository.findExpiredNoUserCartIds(today, 1);
+		assertThat(expiredCartIds).hasSize(1);
+
+		expiredCartIds = cartrepository.findExpiredNoUserCartIds(today, 10);
+		assertThat(expiredCartIds).containsExactly(expiredCart1.getCartid(), expiredCart2.getCartid());
+
+		int deletedCartBooks = cartBookRepository.deleteByCartids(expiredCartIds);
+		assertThat(deletedCartBooks).isEqualTo(1);
+		int deletedCarts = cartrepository.deleteByCartids(expiredCartIds);
+		assertThat(deletedCarts).isEqualTo(2);
+
+		expiredCartIds = cartrepository.findExpiredNoUserCartIds(today, 10);
+		assertThat(expiredCartIds).isEmpty();
+	}
+
 	@Test
 	@Rollback
 	public void testUpdateCart() {
@@ -333,6 +418,7 @@ public class CartRepositoryTest {
 	private CartBook createCartBookCustomQuantity(int quantity, Book book, Cart cart) {
 		CartBook newCartBook = new CartBook(quantity, cart, book);
 		cartBookRepository.save(newCartBook);
+		cartrepository.refreshTotals(cart.getCartid());
 
 		return newCartBook;
 	}
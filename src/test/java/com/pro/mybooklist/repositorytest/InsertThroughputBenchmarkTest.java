@@ -0,0 +1,133 @@
+package com.pro.mybooklist.repositorytest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.annotation.Rollback;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.pro.mybooklist.model.Book;
+import com.pro.mybooklist.model.BookRepository;
+import com.pro.mybooklist.model.Category;
+import com.pro.mybooklist.model.CategoryRepository;
+import com.pro.mybooklist.model.User;
+import com.pro.mybooklist.model.UserRepository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.transaction.Transactional;
+
+// Insert throughput of the saveAll of users and books, with the pooled
+// sequences and the JDBC batching. Every round checks from the Hibernate
+// statistics that the rows are sent in batches and the ids are taken from the
+// sequences a block at a time. The rows/s of the last round are logged, the
+// first rounds warm up the JVM. It's excluded from the regular build (the
+// benchmark tag) and run with:
+// mvn test -Dtest=InsertThroughputBenchmarkTest -Dbenchmark=true -Dsurefire.excludedGroups=
+// The SQL logging is turned off, printing every insert would dominate the time.
+@ExtendWith(SpringExtension.class)
+@DataJpaTest(properties = { "spring.jpa.show-sql=false",
+		"spring.jpa.properties.hibernate.generate_statistics=true" })
+@TestInstance(Lifecycle.PER_CLASS)
+@Transactional
+@Tag("benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class InsertThroughputBenchmarkTest {
+	private static final int ROWS = 20000;
+	private static final int ROUNDS = 3;
+
+	// The hibernate.jdbc.batch_size of the application.properties and the
+	// allocation size of the sequences:
+	private static final int BATCH_SIZE = 50;
+	private static final int ALLOCATION_SIZE = 50;
+
+	private static final Logger log = LoggerFactory.getLogger(InsertThroughputBenchmarkTest.class);
+
+	@Autowired
+	private UserRepository urepository;
+
+	@Autowired
+	private BookRepository bookRepository;
+
+	@Autowired
+	private CategoryRepository crepository;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Test
+	@Rollback
+	public void benchmarkUserInserts() {
+		double rowsPerSecond = 0;
+
+		for (int round = 0; round < ROUNDS; round++) {
+			List<User> users = new ArrayList<>();
+			for (int i = 0; i < ROWS; i++) {
+				String username = "bench" + round + "_" + i;
+				users.add(new User("John", "Doe", username, "hash", "USER", username + "@mail.com", true));
+			}
+
+			rowsPerSecond = this.measure(() -> urepository.saveAll(users));
+		}
+
+		log.info("users: {} rows/s", Math.round(rowsPerSecond));
+	}
+
+	@Test
+	@Rollback
+	public void benchmarkBookInserts() {
+		Category category = crepository.save(new Category("Benchmark"));
+		entityManager.flush();
+		double rowsPerSecond = 0;
+
+		for (int round = 0; round < ROUNDS; round++) {
+			List<Book> books = new ArrayList<>();
+			for (int i = 0; i < ROWS; i++) {
+				String isbn = "bench" + round + "_" + i;
+				books.add(new Book("Title " + i, "Author", isbn, 2000, 10, category, "url"));
+			}
+
+			rowsPerSecond = this.measure(() -> bookRepository.saveAll(books));
+		}
+
+		log.info("books: {} rows/s", Math.round(rowsPerSecond));
+	}
+
+	// The rows are flushed inside the measurement, so the inserts are counted.
+	// One statement is prepared per batch of inserts and per sequence call, one
+	// more sequence call is allowed for the block left over from the previous
+	// round:
+	private double measure(Runnable save) {
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		long start = System.nanoTime();
+		save.run();
+		entityManager.flush();
+		long elapsed = System.nanoTime() - start;
+
+		assertThat(statistics.getEntityInsertCount()).isEqualTo(ROWS);
+		assertThat(statistics.getPrepareStatementCount())
+				.isLessThanOrEqualTo(ROWS / BATCH_SIZE + ROWS / ALLOCATION_SIZE + 1);
+
+		entityManager.clear();
+		return ROWS * 1e9 / elapsed;
+	}
+}
@@ -0,0 +1,114 @@
+package com.pro.mybooklist.resttest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.pro.mybooklist.MyUser;
+import com.pro.mybooklist.model.User;
+import com.pro.mybooklist.model.UserRepository;
+import com.pro.mybooklist.service.PrincipalCache;
+
+// The principals resolved by the AuthenticationFilter. The user is committed,
+// so the cache is tested across transactions like between requests. The
+// context is the one of the other REST tests:
+@SpringBootTest
+@AutoConfigureMockMvc
+public class PrincipalCacheTest {
+	private static final String USERNAME = "cacheduser";
+	private static final String EMAIL = "cacheduser@mail.com";
+
+	@Autowired
+	private UserRepository urepository;
+
+	@Autowired
+	private PrincipalCache principalCache;
+
+	@Autowired
+	private AutowireCapableBeanFactory beanFactory;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	private Long userId;
+
+	@BeforeEach
+	public void setUp() {
+		urepository.findByUsername(USERNAME).ifPresent(urepository::delete);
+		User user = new User("John", "Doe", USERNAME, "hash_pwd", "USER", EMAIL, true);
+		urepository.save(user);
+		userId = user.getId();
+		principalCache.invalidateAll();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		urepository.deleteById(userId);
+		principalCache.invalidateAll();
+	}
+
+	@Test
+	public void testCachedPrincipalIsReused() {
+		long hits = principalCache.getHits();
+		long misses = principalCache.getMisses();
+
+		MyUser principal = principalCache.getPrincipal(USERNAME).get();
+		assertThat(principalCache.getMisses()).isEqualTo(misses + 1);
+
+		assertThat(principalCache.getPrincipal(USERNAME).get()).isSameAs(principal);
+		assertThat(principalCache.getHits()).isEqualTo(hits + 1);
+		assertThat(principalCache.getMisses()).isEqualTo(misses + 1);
+	}
+
+	@Test
+	public void testCachedPrincipalExpires() {
+		PrincipalCache expiringCache = new PrincipalCache(10, 0);
+		beanFactory.autowireBean(expiringCache);
+
+		MyUser principal = expiringCache.getPrincipal(USERNAME).get();
+
+		assertThat(expiringCache.getPrincipal(USERNAME).get()).isNotSameAs(principal);
+		assertThat(expiringCache.getHits()).isZero();
+		assertThat(expiringCache.getMisses()).isEqualTo(2);
+	}
+
+	// A lookup made while the role change isn't committed yet reads the old
+	// row and caches it, the principal is evicted again after the commit:
+	@Test
+	public void testRoleChangeEvictsPrincipalAfterCommit() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		try {
+			MyUser principalBeforeCommit = transactionTemplate.execute(status -> {
+				User user = urepository.findById(userId).get();
+				user.setRole("ADMIN");
+				urepository.save(user);
+				principalCache.invalidate(USERNAME);
+
+				try {
+					return executor.submit(() -> principalCache.getPrincipal(USERNAME).get()).get();
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			});
+			assertThat(principalBeforeCommit.getAuthorities()).extracting(GrantedAuthority::getAuthority)
+					.containsExactly("USER");
+
+			MyUser principal = principalCache.getPrincipal(USERNAME).get();
+			assertThat(principal.getAuthorities()).extracting(GrantedAuthority::getAuthority).containsExactly("ADMIN");
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -18,17 +18,20 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.test.annotation.Rollback;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pro.mybooklist.MyUser;
 import com.pro.mybooklist.httpforms.AccountCredentials;
 import com.pro.mybooklist.httpforms.BookUpdate;
 import com.pro.mybooklist.httpforms.OrderInfo;
 import com.pro.mybooklist.httpforms.RoleVerificationInfo;
 import com.pro.mybooklist.model.Cart;
+import com.pro.mybooklist.service.PrincipalCache;
 
 import jakarta.transaction.Transactional;
 
@@ -81,6 +84,9 @@ public class RestAdminControllerTest {
 	@Autowired
 	private OrderRepository orepository;
 
+	@Autowired
+	private PrincipalCache principalCache;
+
 	private String jwt;
 	private Long adminId;
 
@@ -238,6 +244,11 @@ public class RestAdminControllerTest {
 
 			String requestURIGood = requestURI + userId;
 
+			// The principal of the user is cached before the changes:
+			MyUser principal = principalCache.getPrincipal(USERNAME).get();
+			assertThat(principal.getAuthorities()).extracting(GrantedAuthority::getAuthority).containsExactly("USER");
+			assertThat(principal.isEnabled()).isFalse();
+
 			// changing role and not verification
 
 			RoleVerificationInfo roleVerificationInfo = new RoleVerificationInfo("ADMIN", false);
@@ -251,6 +262,9 @@ public class RestAdminControllerTest {
 			user = optionalUser.get();
 			assertThat(user.getRole()).isEqualTo("ADMIN");
 
+			principal = principalCache.getPrincipal(USERNAME).get();
+			assertThat(principal.getAuthorities()).extracting(GrantedAuthority::getAuthority).containsExactly("ADMIN");
+
 			// verifying user:
 			roleVerificationInfo.setAccountVerified(true);
 			requestBody = objectMapper.writeValueAsString(roleVerificationInfo);
@@ -262,6 +276,7 @@ public class RestAdminControllerTest {
 			assertThat(optionalUser).isPresent();
 			user = optionalUser.get();
 			assertThat(user.isAccountVerified()).isTrue();
+			assertThat(principalCache.getPrincipal(USERNAME).get().isEnabled()).isTrue();
 
 			// Can't change verified user's verification case:
 			roleVerificationInfo.setAccountVerified(false);
@@ -363,6 +378,25 @@ public class RestAdminControllerTest {
 		}
 	}
 
+	@Test
+	@Rollback
+	public void testRebuildTopSalesAllCases() throws Exception {
+		String requestURI = "/rebuildtopsales";
+
+		mockMvc.perform(get("/topsales")).andExpect(status().isOk()).andExpect(jsonPath("$.size()").value(0));
+
+		// The order created directly in the repository isn't counted until the
+		// ranking is rebuilt:
+		this.createOrderWithDefaultStatusNoUser();
+		mockMvc.perform(get("/topsales")).andExpect(status().isOk()).andExpect(jsonPath("$.size()").value(0));
+
+		mockMvc.perform(put(requestURI).header("Authorization", jwt)).andExpect(status().isOk());
+		mockMvc.perform(get("/topsales")).andExpect(status().isOk()).andExpect(jsonPath("$.size()").value(2));
+
+		// Testing security:
+		mockMvc.perform(put(requestURI)).andExpect(status().isUnauthorized());
+	}
+
 	private Cart createCartWithUser(boolean current, String username, String email) {
 		User user = this.createUser(username, email);
 
@@ -397,6 +431,7 @@ public class RestAdminControllerTest {
 	private CartBook createCartBookCustomQuantity(int quantity, Book book, Cart cart) {
 		CartBook newCartBook = new CartBook(quantity, cart, book);
 		cartBookRepository.save(newCartBook);
+		cartRepository.refreshTotals(cart.getCartid());
 
 		return newCartBook;
 	}
@@ -7,6 +7,10 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.pro.mybooklist.model.*;
 import org.junit.jupiter.api.BeforeAll;
@@ -20,15 +24,22 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.test.annotation.Rollback;
+import org.springframework.test.context.transaction.TestTransaction;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.pro.mybooklist.httpforms.AccountCredentials;
 import com.pro.mybooklist.httpforms.AddressInfo;
+import com.pro.mybooklist.httpforms.CartChange;
+import com.pro.mybooklist.httpforms.CartChangesInfo;
 import com.pro.mybooklist.httpforms.PasswordInfo;
 import com.pro.mybooklist.httpforms.QuantityInfo;
 import com.pro.mybooklist.model.Cart;
+import com.pro.mybooklist.service.CurrentCartCache;
 
 import jakarta.transaction.Transactional;
 
@@ -52,6 +63,9 @@ public class RestAuthenticatedControllerTest {
 
 	private static final String USERNAME = "user1";
 	private static final String EMAIL = "user1@mail.com";
+	private static final String OTHER_USERNAME = "user2";
+	private static final int CONCURRENT_REQUESTS = 8;
+	private static final String OTHER_EMAIL = "user2@mail.com";
 
 	private static final String DEFAULT_PASSWORD = "test";
 	private static final String WRONG_PWD = "wrong_pwd";
@@ -80,6 +94,12 @@ public class RestAuthenticatedControllerTest {
 	@Autowired
 	private OrderRepository orepository;
 
+	@Autowired
+	private CurrentCartCache currentCartCache;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
 	private String jwt;
 	private Long authenticatedUserId;
 	private User authenticatedUser;
@@ -151,6 +171,49 @@ public class RestAuthenticatedControllerTest {
 		}
 	}
 
+	@Test
+	@Rollback
+	public void testChangeBooksInCurrentCartAllCases() throws Exception {
+		String requestURI = "/changeitems";
+
+		Book book1 = createBook(BOOK_TITLE, OTHER_CATEGORY, DEFAULT_PRICE);
+		Book book2 = createBook(BOOK_TITLE + " 2", OTHER_CATEGORY, DEFAULT_PRICE);
+
+		// Book not found case:
+		List<CartChange> changesBookNotFound = List.of(new CartChange(book1.getId(), 1),
+				new CartChange(Long.valueOf(0), 1));
+		String requestBodyBookNotFound = objectMapper.writeValueAsString(new CartChangesInfo(changesBookNotFound));
+		mockMvc.perform(post(requestURI).header("Authorization", jwt).contentType(MediaType.APPLICATION_JSON)
+				.content(requestBodyBookNotFound)).andExpect(status().isNotFound());
+		assertThat(cartBookRepository.findAll()).isEmpty();
+
+		// Good case, the changes of the same book are summed up:
+		List<CartChange> changes = List.of(new CartChange(book1.getId(), 2), new CartChange(book2.getId(), 1),
+				new CartChange(book1.getId(), 1));
+		String requestBody = objectMapper.writeValueAsString(new CartChangesInfo(changes));
+		mockMvc.perform(post(requestURI).header("Authorization", jwt).contentType(MediaType.APPLICATION_JSON)
+				.content(requestBody)).andExpect(status().isOk());
+
+		List<CartBook> cartBooks = (List<CartBook>) cartBookRepository.findAll();
+		assertThat(cartBooks).hasSize(2);
+		assertThat(cartBooks).extracting(CartBook::getQuantity).containsExactlyInAnyOrder(3, 1);
+
+		// Negative delta reduces the quantity or removes the book:
+		List<CartChange> reducingChanges = List.of(new CartChange(book1.getId(), -1),
+				new CartChange(book2.getId(), -1));
+		String requestBodyReducing = objectMapper.writeValueAsString(new CartChangesInfo(reducingChanges));
+		mockMvc.perform(post(requestURI).header("Authorization", jwt).contentType(MediaType.APPLICATION_JSON)
+				.content(requestBodyReducing)).andExpect(status().isOk());
+
+		cartBooks = (List<CartBook>) cartBookRepository.findAll();
+		assertThat(cartBooks).hasSize(1);
+		assertThat(cartBooks.get(0).getQuantity()).isEqualTo(2);
+
+		// Testing security:
+		mockMvc.perform(post(requestURI).contentType(MediaType.APPLICATION_JSON).content(requestBody))
+				.andExpect(status().isUnauthorized());
+	}
+
 	@Nested
 	class testAddBookToCurrentCart {
 		@Test
@@ -203,35 +266,18 @@ public class RestAuthenticatedControllerTest {
 			String requestURIGood = requestURI + bookId;
 			QuantityInfo quantityInfo = new QuantityInfo(1);
 			String requestBody = objectMapper.writeValueAsString(quantityInfo);
-			cartRepository.deleteAll();
-
-			mockMvc.perform(post(requestURIGood).header("Authorization", jwt).contentType(MediaType.APPLICATION_JSON)
-					.content(requestBody)).andExpect(status().isOk());
-
-			List<CartBook> cartBooks = (List<CartBook>) cartBookRepository.findAll();
-			assertThat(cartBooks).hasSize(1);
-			assertThat(cartBooks.get(0).getQuantity()).isEqualTo(1);
-		}
-
-		@Test
-		@Rollback
-		public void testAddBookToCurrentCartMoreThan1CurrentCartsCase() throws Exception {
-			String requestURI = "/additem/";
-
-			createSecondCurrentCartForAuthenticatedUser();
-
-			Book book = createBook(BOOK_TITLE, OTHER_CATEGORY, DEFAULT_PRICE);
-			Long bookId = book.getId();
-			String requestURIGood = requestURI + bookId;
-			QuantityInfo quantityInfo = new QuantityInfo(1);
-			String requestBody = objectMapper.writeValueAsString(quantityInfo);
-
-			mockMvc.perform(post(requestURIGood).header("Authorization", jwt).contentType(MediaType.APPLICATION_JSON)
-					.content(requestBody)).andExpect(status().isOk());
-
-			List<CartBook> cartBooks = (List<CartBook>) cartBookRepository.findAll();
-			assertThat(cartBooks).hasSize(1);
-			assertThat(cartBooks.get(0).getQuantity()).isEqualTo(1);
+			deleteCurrentCartOfAuthenticatedUserCommitted();
+
+			try {
+				mockMvc.perform(post(requestURIGood).header("Authorization", jwt)
+						.contentType(MediaType.APPLICATION_JSON).content(requestBody)).andExpect(status().isOk());
+
+				List<CartBook> cartBooks = (List<CartBook>) cartBookRepository.findAll();
+				assertThat(cartBooks).hasSize(1);
+				assertThat(cartBooks.get(0).getQuantity()).isEqualTo(1);
+			} finally {
+				restoreCurrentCartOfAuthenticatedUser();
+			}
 		}
 	}
 
@@ -242,21 +288,56 @@ public class RestAuthenticatedControllerTest {
 		public void testGetIdsOfBooksInCurrentCartNoCurrentCartsCase() throws Exception {
 			String requestURI = "/booksids";
 
-			cartRepository.deleteAll();
+			deleteAllCarts();
 
 			mockMvc.perform(get(requestURI).header("Authorization", jwt)).andExpect(status().isOk())
 					.andExpect(jsonPath("$.size()").value(0));
 		}
 
+		// The first requests of a user without a current cart create only one
+		// cart. The user is committed so that the requests run in their own
+		// transactions:
 		@Test
 		@Rollback
-		public void testGetIdsOfBooksInCurrentCartMoreThan1CurrentCartsCase() throws Exception {
+		public void testGetIdsOfBooksInCurrentCartConcurrentFirstRequestsCase() throws Exception {
 			String requestURI = "/booksids";
-
-			createSecondCurrentCartForAuthenticatedUser();
-
-			mockMvc.perform(get(requestURI).header("Authorization", jwt)).andExpect(status().isOk())
-					.andExpect(jsonPath("$.size()").value(0));
+			TransactionTemplate newTransaction = new TransactionTemplate(transactionManager);
+			newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+			User user = newTransaction.execute(status -> urepository.save(new User(FIRSTNAME, LASTNAME,
+					OTHER_USERNAME, encodePassword(DEFAULT_PASSWORD), "USER", OTHER_EMAIL, true)));
+			ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_REQUESTS);
+
+			try {
+				AccountCredentials creds = new AccountCredentials(OTHER_USERNAME, DEFAULT_PASSWORD);
+				String otherJwt = mockMvc
+						.perform(post("/login").contentType(MediaType.APPLICATION_JSON)
+								.content(objectMapper.writeValueAsString(creds)))
+						.andExpect(status().isOk()).andReturn().getResponse().getHeader("Authorization");
+
+				CountDownLatch start = new CountDownLatch(1);
+				List<Future<Integer>> statuses = new ArrayList<>();
+				for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+					statuses.add(executor.submit(() -> {
+						start.await();
+						return mockMvc.perform(get(requestURI).header("Authorization", otherJwt)).andReturn()
+								.getResponse().getStatus();
+					}));
+				}
+				start.countDown();
+
+				for (Future<Integer> requestStatus : statuses)
+					assertThat(requestStatus.get()).isEqualTo(200);
+
+				assertThat(cartRepository.findCurrentByUserid(user.getId())).hasSize(1);
+			} finally {
+				executor.shutdown();
+				newTransaction.executeWithoutResult(status -> {
+					cartRepository.deleteAll(cartRepository.findCurrentByUserid(user.getId()));
+					urepository.deleteById(user.getId());
+				});
+				currentCartCache.invalidateAll();
+			}
 		}
 
 		@Test
@@ -293,14 +374,8 @@ public class RestAuthenticatedControllerTest {
 			String requestURIGood = requestURI + authenticatedUserId;
 
 			// No current cart case:
-			cartRepository.deleteAll();
-
-			mockMvc.perform(get(requestURIGood).header("Authorization", jwt)).andExpect(status().isOk())
-					.andExpect(jsonPath("$.size()").value(0));
+			deleteAllCarts();
 
-			// More than one current Cart case:
-			createCartWithUser(true, USERNAME, EMAIL);
-			createSecondCurrentCartForAuthenticatedUser();
 			mockMvc.perform(get(requestURIGood).header("Authorization", jwt)).andExpect(status().isOk())
 					.andExpect(jsonPath("$.size()").value(0));
 		}
@@ -330,18 +405,11 @@ public class RestAuthenticatedControllerTest {
 			String requestURI = "/getcurrenttotal";
 
 			// No current cart case:
-			cartRepository.deleteAll();
+			deleteAllCarts();
 
 			MvcResult result = mockMvc.perform(get(requestURI).header("Authorization", jwt)).andExpect(status().isOk())
 					.andReturn();
 			assertThat(result.getResponse().getContentAsString()).isEqualTo("");
-
-			// More than one current Cart case:
-			createCartWithUser(true, USERNAME, EMAIL);
-			createSecondCurrentCartForAuthenticatedUser();
-			result = mockMvc.perform(get(requestURI).header("Authorization", jwt)).andExpect(status().isOk())
-					.andReturn();
-			assertThat(result.getResponse().getContentAsString()).isEqualTo("");
 		}
 
 		@Test
@@ -362,6 +430,46 @@ public class RestAuthenticatedControllerTest {
 		}
 	}
 
+	@Test
+	@Rollback
+	public void testCurrentCartTotalsFollowChanges() throws Exception {
+		Book book = createBook(BOOK_TITLE, OTHER_CATEGORY, DEFAULT_PRICE);
+		String requestBody = objectMapper.writeValueAsString(new QuantityInfo(3));
+
+		mockMvc.perform(post("/additem/" + book.getId()).header("Authorization", jwt)
+				.contentType(MediaType.APPLICATION_JSON).content(requestBody)).andExpect(status().isOk());
+		mockMvc.perform(get("/getcurrenttotal").header("Authorization", jwt)).andExpect(status().isOk())
+				.andExpect(jsonPath("$.total").value(DEFAULT_PRICE * 3));
+
+		mockMvc.perform(put("/reduceitem/" + book.getId()).header("Authorization", jwt)).andExpect(status().isOk());
+		mockMvc.perform(get("/currentcartquantity").header("Authorization", jwt)).andExpect(status().isOk())
+				.andExpect(jsonPath("$.items").value(2));
+
+		mockMvc.perform(delete("/deleteitem/" + book.getId()).header("Authorization", jwt))
+				.andExpect(status().isOk());
+		MvcResult result = mockMvc.perform(get("/getcurrenttotal").header("Authorization", jwt))
+				.andExpect(status().isOk()).andReturn();
+		assertThat(result.getResponse().getContentAsString()).isEqualTo("");
+	}
+
+	@Test
+	@Rollback
+	public void testGetCurrentCartViewAllCases() throws Exception {
+		String requestURI = "/cartview";
+
+		// Empty current cart case:
+		mockMvc.perform(get(requestURI).header("Authorization", jwt)).andExpect(status().isOk())
+				.andExpect(jsonPath("$.cartid").value(authenticatedUserCurrentCart.getCartid()))
+				.andExpect(jsonPath("$.books.size()").value(0)).andExpect(jsonPath("$.total").value(0.0))
+				.andExpect(jsonPath("$.items").value(0));
+
+		// Current Cart is not empty case:
+		addTwoBooksToAuthenticatedUserCurrentCart();
+		mockMvc.perform(get(requestURI).header("Authorization", jwt)).andExpect(status().isOk())
+				.andExpect(jsonPath("$.books.size()").value(2)).andExpect(jsonPath("$.total").value(DEFAULT_PRICE * 4))
+				.andExpect(jsonPath("$.items").value(4));
+	}
+
 	@Nested
 	class testClearCurrentCart {
 		@Test
@@ -380,14 +488,13 @@ public class RestAuthenticatedControllerTest {
 			String requestURIGood = requestURI + authenticatedUserId;
 
 			// No current cart case:
-			cartRepository.deleteAll();
+			deleteCurrentCartOfAuthenticatedUserCommitted();
 
-			mockMvc.perform(delete(requestURIGood).header("Authorization", jwt)).andExpect(status().isOk());
-
-			// More than one current Cart case:
-			createCartWithUser(true, USERNAME, EMAIL);
-			createSecondCurrentCartForAuthenticatedUser();
-			mockMvc.perform(delete(requestURIGood).header("Authorization", jwt)).andExpect(status().isOk());
+			try {
+				mockMvc.perform(delete(requestURIGood).header("Authorization", jwt)).andExpect(status().isOk());
+			} finally {
+				restoreCurrentCartOfAuthenticatedUser();
+			}
 		}
 
 		@Test
@@ -440,16 +547,14 @@ public class RestAuthenticatedControllerTest {
 			String requestURIBookNotInCart = requestURI + bookId;
 
 			// No current cart case:
-			cartRepository.deleteAll();
-
-			mockMvc.perform(put(requestURIBookNotInCart).header("Authorization", jwt))
-			.andExpect(status().isConflict());
-
-			// More than one current Cart case:
-			createCartWithUser(true, USERNAME, EMAIL);
-			createSecondCurrentCartForAuthenticatedUser();
-			mockMvc.perform(put(requestURIBookNotInCart).header("Authorization", jwt))
-			.andExpect(status().isConflict());
+			deleteCurrentCartOfAuthenticatedUserCommitted();
+
+			try {
+				mockMvc.perform(put(requestURIBookNotInCart).header("Authorization", jwt))
+						.andExpect(status().isConflict());
+			} finally {
+				restoreCurrentCartOfAuthenticatedUser();
+			}
 		}
 
 		@Test
@@ -518,14 +623,14 @@ public class RestAuthenticatedControllerTest {
 			String requestURIGood = requestURI + bookId;
 
 			// No current cart case:
-			cartRepository.deleteAll();
-
-			mockMvc.perform(delete(requestURIGood).header("Authorization", jwt)).andExpect(status().isConflict());
-
-			// More than one current Cart case:
-			createCartWithUser(true, USERNAME, EMAIL);
-			createSecondCurrentCartForAuthenticatedUser();
-			mockMvc.perform(delete(requestURIGood).header("Authorization", jwt)).andExpect(status().isConflict());
+			deleteCurrentCartOfAuthenticatedUserCommitted();
+
+			try {
+				mockMvc.perform(delete(requestURIGood).header("Authorization", jwt))
+						.andExpect(status().isConflict());
+			} finally {
+				restoreCurrentCartOfAuthenticatedUser();
+			}
 		}
 
 		@Test
@@ -565,18 +670,11 @@ public class RestAuthenticatedControllerTest {
 			String requestURI = "/currentcartquantity";
 
 			// No current cart case:
-			cartRepository.deleteAll();
+			deleteAllCarts();
 
 			MvcResult result = mockMvc.perform(get(requestURI).header("Authorization", jwt)).andExpect(status().isOk())
 					.andReturn();
 			assertThat(result.getResponse().getContentAsString()).isEqualTo("");
-
-			// More than one current Cart case:
-			createCartWithUser(true, USERNAME, EMAIL);
-			createSecondCurrentCartForAuthenticatedUser();
-			result = mockMvc.perform(get(requestURI).header("Authorization", jwt)).andExpect(status().isOk())
-					.andReturn();
-			assertThat(result.getResponse().getContentAsString()).isEqualTo("");
 		}
 
 		@Test
@@ -618,17 +716,15 @@ public class RestAuthenticatedControllerTest {
 			String requestBody = objectMapper.writeValueAsString(addressInfoDefaultEmail);
 
 			// No current cart case:
-			cartRepository.deleteAll();
-
-			mockMvc.perform(post(requestURIGood).header("Authorization", jwt).contentType(MediaType.APPLICATION_JSON)
-					.content(requestBody)).andExpect(status().isNotAcceptable());
-
-			// More than one current Cart case:
-			createCartWithUser(true, USERNAME, EMAIL);
-			createSecondCurrentCartForAuthenticatedUser();
-
-			mockMvc.perform(post(requestURIGood).header("Authorization", jwt).contentType(MediaType.APPLICATION_JSON)
-					.content(requestBody)).andExpect(status().isNotAcceptable());
+			deleteCurrentCartOfAuthenticatedUserCommitted();
+
+			try {
+				mockMvc.perform(post(requestURIGood).header("Authorization", jwt)
+						.contentType(MediaType.APPLICATION_JSON).content(requestBody))
+						.andExpect(status().isNotAcceptable());
+			} finally {
+				restoreCurrentCartOfAuthenticatedUser();
+			}
 		}
 
 		@Test
@@ -830,6 +926,7 @@ public class RestAuthenticatedControllerTest {
 	private CartBook createCartBookCustomQuantity(int quantity, Book book, Cart cart) {
 		CartBook newCartBook = new CartBook(quantity, cart, book);
 		cartBookRepository.save(newCartBook);
+		cartRepository.refreshTotals(cart.getCartid());
 
 		return newCartBook;
 	}
@@ -867,6 +964,42 @@ public class RestAuthenticatedControllerTest {
 		bookRepository.deleteAll();
 		cartBookRepository.deleteAll();
 		orepository.deleteAll();
+		currentCartCache.invalidateAll();
+	}
+
+	// The cached current cart of the user is dropped with the carts:
+	private void deleteAllCarts() {
+		cartRepository.deleteAll();
+		currentCartCache.invalidateAll();
+	}
+
+	// A missing current cart is created in a transaction of its own, which
+	// doesn't see the deletes of the test transaction, so the current cart of
+	// the user is deleted by a committed transaction:
+	private void deleteCurrentCartOfAuthenticatedUserCommitted() {
+		this.getNewTransaction().executeWithoutResult(
+				status -> cartRepository.deleteAll(cartRepository.findCurrentByUserid(authenticatedUserId)));
+		currentCartCache.invalidateAll();
+	}
+
+	// The test transaction is ended first, as the request may have added lines
+	// to the created cart in it. Then the created cart is replaced by a new
+	// empty one. The delete is committed before the insert, Hibernate would
+	// flush the insert first and break the one current cart per user index:
+	private void restoreCurrentCartOfAuthenticatedUser() {
+		if (TestTransaction.isActive())
+			TestTransaction.end();
+
+		this.deleteCurrentCartOfAuthenticatedUserCommitted();
+		authenticatedUserCurrentCart = this.getNewTransaction()
+				.execute(status -> cartRepository.save(new Cart(true, authenticatedUser)));
+		currentCartCache.invalidateAll();
+	}
+
+	private TransactionTemplate getNewTransaction() {
+		TransactionTemplate newTransaction = new TransactionTemplate(transactionManager);
+		newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		return newTransaction;
 	}
 
 	private void getToken() throws Exception {
@@ -891,11 +1024,6 @@ public class RestAuthenticatedControllerTest {
 		authenticatedUserCurrentCart = currentCart;
 	}
 
-	private void createSecondCurrentCartForAuthenticatedUser() {
-		Cart newCurrentCart = new Cart(true, authenticatedUser);
-		cartRepository.save(newCurrentCart);
-	}
-
 	private void addTwoBooksToAuthenticatedUserCurrentCart() {
 		Book book1 = createBook(BOOK_TITLE, OTHER_CATEGORY, DEFAULT_PRICE);
 		Book book2 = createBook(BOOK_TITLE + " 2", ROMANCE_CATEGORY, DEFAULT_PRICE);
@@ -1,12 +1,17 @@
 package com.pro.mybooklist.resttest;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.pro.mybooklist.model.*;
 import org.hamcrest.Matchers;
@@ -24,11 +29,16 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.test.annotation.Rollback;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.pro.mybooklist.httpforms.AccountCredentials;
 import com.pro.mybooklist.httpforms.AddressInfoNoAuthentication;
+import com.pro.mybooklist.httpforms.CartChange;
+import com.pro.mybooklist.httpforms.CartChangesInfo;
 import com.pro.mybooklist.httpforms.CartInfo;
 import com.pro.mybooklist.httpforms.BookQuantityInfo;
 import com.pro.mybooklist.httpforms.EmailInfo;
@@ -36,6 +46,11 @@ import com.pro.mybooklist.httpforms.OrderPasswordInfo;
 import com.pro.mybooklist.httpforms.SignupCredentials;
 import com.pro.mybooklist.httpforms.TokenInfo;
 import com.pro.mybooklist.model.Cart;
+import com.pro.mybooklist.service.AutocompleteIndex;
+import com.pro.mybooklist.service.BookSearchIndex;
+import com.pro.mybooklist.service.CatalogCache;
+import com.pro.mybooklist.service.PasswordHashingService;
+import com.pro.mybooklist.service.SalesRanking;
 
 import jakarta.transaction.Transactional;
 
@@ -47,6 +62,7 @@ public class RestPublicControllerTest {
 	private static final String BOOK_TITLE = "Little Women";
 	private static final String OTHER_CATEGORY = "Other";
 	private static final String ROMANCE_CATEGORY = "Romance";
+	private static final String CONCURRENCY_CATEGORY = "Concurrency";
 	private static final Double DEFAULT_PRICE = 10.5;
 
 	private static final String FIRSTNAME = "John";
@@ -61,6 +77,8 @@ public class RestPublicControllerTest {
 	private static final String EMAIL = "user1@mail.com";
 
 	private static final String DEFAULT_PASSWORD = "test";
+
+	private static final int CONCURRENT_REQUESTS = 8;
 	private static final String WRONG_PWD = "wrong_pwd";
 
 	@Value("${spring.mail.username}")
@@ -90,6 +108,27 @@ public class RestPublicControllerTest {
 	@Autowired
 	private OrderRepository orepository;
 
+	@Autowired
+	private OrderLineRepository orderLineRepository;
+
+	@Autowired
+	private SalesRanking salesRanking;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private PasswordHashingService passwordHashingService;
+
+	@Autowired
+	private CatalogCache catalogCache;
+
+	@Autowired
+	private BookSearchIndex bookSearchIndex;
+
+	@Autowired
+	private AutocompleteIndex autocompleteIndex;
+
 	@BeforeAll
 	public void setUp() throws Exception {
 		crepository.deleteAll();
@@ -114,6 +153,248 @@ public class RestPublicControllerTest {
 		mockMvc.perform(get(requestURI)).andExpect(status().isOk()).andExpect(jsonPath("$.size()").value(3));
 	}
 
+	@Test
+	@Rollback
+	public void testGetBooksPageAllCases() throws Exception {
+		String requestURI = "/bookspage";
+
+		mockMvc.perform(get(requestURI)).andExpect(status().isOk()).andExpect(jsonPath("$.books.size()").value(0))
+				.andExpect(jsonPath("$.nextAfterId").isEmpty());
+
+		// Wrong sort and size cases:
+		mockMvc.perform(get(requestURI).param("sort", "price")).andExpect(status().isBadRequest());
+		mockMvc.perform(get(requestURI).param("size", "0")).andExpect(status().isBadRequest());
+
+		Book book1 = this.createBook("C", OTHER_CATEGORY, DEFAULT_PRICE);
+		Book book2 = this.createBook("A", OTHER_CATEGORY, DEFAULT_PRICE);
+		Book book3 = this.createBook("B", ROMANCE_CATEGORY, DEFAULT_PRICE);
+
+		// By id case:
+		mockMvc.perform(get(requestURI).param("size", "2")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.books.size()").value(2))
+				.andExpect(jsonPath("$.books[0].bookid").value(book1.getId()))
+				.andExpect(jsonPath("$.nextAfterId").value(book2.getId()));
+		mockMvc.perform(get(requestURI).param("size", "2").param("afterId", book2.getId().toString()))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.books.size()").value(1))
+				.andExpect(jsonPath("$.books[0].bookid").value(book3.getId()))
+				.andExpect(jsonPath("$.nextAfterId").isEmpty());
+
+		// By title case:
+		mockMvc.perform(get(requestURI).param("sort", "title").param("size", "2")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.books[0].title").value("A")).andExpect(jsonPath("$.books[1].title").value("B"))
+				.andExpect(jsonPath("$.nextAfterTitle").value("B"));
+		mockMvc.perform(get(requestURI).param("sort", "title").param("afterTitle", "B")
+				.param("afterId", book3.getId().toString())).andExpect(status().isOk())
+				.andExpect(jsonPath("$.books.size()").value(1)).andExpect(jsonPath("$.books[0].title").value("C"));
+
+		// Half of the title key case:
+		mockMvc.perform(get(requestURI).param("sort", "title").param("afterTitle", "B"))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(get(requestURI).param("sort", "title").param("afterId", book3.getId().toString()))
+				.andExpect(status().isBadRequest());
+
+		// By category case:
+		Long categoryid = book3.getCategory().getCategoryid();
+		mockMvc.perform(get(requestURI).param("categoryid", categoryid.toString())).andExpect(status().isOk())
+				.andExpect(jsonPath("$.books.size()").value(1))
+				.andExpect(jsonPath("$.books[0].categoryid").value(categoryid));
+	}
+
+	@Test
+	@Rollback
+	public void testSearchBooksAllCases() throws Exception {
+		String requestURI = "/search";
+
+		// Empty query case:
+		mockMvc.perform(get(requestURI).param("q", " ")).andExpect(status().isBadRequest());
+
+		// The books are committed, the index takes them as their transactions
+		// commit, without a rebuild:
+		TransactionTemplate newTransaction = new TransactionTemplate(transactionManager);
+		newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+		List<Book> books = newTransaction.execute(status -> List.of(
+				this.createBook("Les Misérables", OTHER_CATEGORY, DEFAULT_PRICE),
+				this.createBook(BOOK_TITLE, OTHER_CATEGORY, DEFAULT_PRICE),
+				this.createBook("Little Prince", ROMANCE_CATEGORY, DEFAULT_PRICE)));
+		Book littlePrince = books.get(2);
+
+		try {
+			// Diacritics and case are ignored:
+			mockMvc.perform(get(requestURI).param("q", "MISERABLES")).andExpect(status().isOk())
+					.andExpect(jsonPath("$.total").value(1))
+					.andExpect(jsonPath("$.books[0].title").value("Les Misérables"));
+
+			// Prefix case:
+			mockMvc.perform(get(requestURI).param("q", "litt")).andExpect(status().isOk())
+					.andExpect(jsonPath("$.total").value(2));
+
+			// Fuzzy case:
+			mockMvc.perform(get(requestURI).param("q", "litle women")).andExpect(status().isOk())
+					.andExpect(jsonPath("$.total").value(1))
+					.andExpect(jsonPath("$.books[0].title").value(BOOK_TITLE));
+
+			// Author and pagination case:
+			mockMvc.perform(get(requestURI).param("q", "palahniuk").param("size", "2")).andExpect(status().isOk())
+					.andExpect(jsonPath("$.total").value(3)).andExpect(jsonPath("$.books.size()").value(2));
+			mockMvc.perform(get(requestURI).param("q", "palahniuk").param("size", "2").param("page", "1"))
+					.andExpect(status().isOk()).andExpect(jsonPath("$.books.size()").value(1));
+			mockMvc.perform(get(requestURI).param("q", "palahniuk").param("size", "100")
+					.param("page", String.valueOf(Integer.MAX_VALUE))).andExpect(status().isOk())
+					.andExpect(jsonPath("$.total").value(3)).andExpect(jsonPath("$.books.size()").value(0));
+
+			// Changed book case:
+			newTransaction.executeWithoutResult(status -> {
+				Book changedBook = bookRepository.findById(books.get(0).getId()).get();
+				changedBook.setTitle("Notre-Dame de Paris");
+			});
+			mockMvc.perform(get(requestURI).param("q", "miserables")).andExpect(status().isOk())
+					.andExpect(jsonPath("$.total").value(0));
+			mockMvc.perform(get(requestURI).param("q", "notre dame")).andExpect(status().isOk())
+					.andExpect(jsonPath("$.total").value(1));
+
+			// Deleted book case:
+			newTransaction.executeWithoutResult(status -> bookRepository.deleteById(littlePrince.getId()));
+			mockMvc.perform(get(requestURI).param("q", "litt")).andExpect(status().isOk())
+					.andExpect(jsonPath("$.total").value(1));
+
+			// The uncommitted books aren't found:
+			this.createBook("Great Gatsby", "Uncommitted", DEFAULT_PRICE);
+			mockMvc.perform(get(requestURI).param("q", "gatsby")).andExpect(status().isOk())
+					.andExpect(jsonPath("$.total").value(0)).andExpect(jsonPath("$.books.size()").value(0));
+
+			// A rebuild gives the same results:
+			bookSearchIndex.rebuild();
+			mockMvc.perform(get(requestURI).param("q", "palahniuk")).andExpect(status().isOk())
+					.andExpect(jsonPath("$.total").value(2));
+		} finally {
+			newTransaction.executeWithoutResult(status -> {
+				bookRepository.deleteAll(bookRepository.findAllById(books.stream().map(Book::getId).toList()));
+				books.stream().map(book -> book.getCategory().getCategoryid()).distinct()
+						.forEach(crepository::deleteById);
+			});
+		}
+	}
+
+	@Test
+	@Rollback
+	public void testAutocompleteAllCases() throws Exception {
+		String requestURI = "/autocomplete";
+
+		// The books and the order are committed, the trie takes the books as
+		// their transactions commit:
+		TransactionTemplate newTransaction = new TransactionTemplate(transactionManager);
+		newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+		List<Book> books = newTransaction.execute(status -> List.of(
+				this.createBook(BOOK_TITLE, OTHER_CATEGORY, DEFAULT_PRICE),
+				this.createBook("Little Prince", ROMANCE_CATEGORY, DEFAULT_PRICE),
+				this.createBook("Les Misérables", ROMANCE_CATEGORY, DEFAULT_PRICE)));
+		Book littleWomen = books.get(0);
+		Book bestSeller = books.get(1);
+		Order order = newTransaction.execute(
+				status -> this.createOrderWithDefaultStatusNoUser(2, List.of(bestSeller), DEFAULT_PASSWORD));
+
+		try {
+			// The trie takes the sales of the ranking and is rebuilt after it:
+			salesRanking.rebuild();
+			autocompleteIndex.rebuild();
+
+			// Empty prefix and nothing found cases:
+			mockMvc.perform(get(requestURI).param("q", " ")).andExpect(status().isOk())
+					.andExpect(jsonPath("$.size()").value(0));
+			mockMvc.perform(get(requestURI).param("q", "gats")).andExpect(status().isOk())
+					.andExpect(jsonPath("$.size()").value(0));
+
+			// The best selling title goes first:
+			mockMvc.perform(get(requestURI).param("q", "Lit")).andExpect(status().isOk())
+					.andExpect(jsonPath("$.size()").value(2)).andExpect(jsonPath("$[0].text").value("Little Prince"))
+					.andExpect(jsonPath("$[1].text").value(BOOK_TITLE));
+			mockMvc.perform(get(requestURI).param("q", "l").param("limit", "1")).andExpect(status().isOk())
+					.andExpect(jsonPath("$.size()").value(1));
+
+			// Any word and the author cases:
+			mockMvc.perform(get(requestURI).param("q", "miser")).andExpect(status().isOk())
+					.andExpect(jsonPath("$[0].text").value("Les Misérables"));
+			mockMvc.perform(get(requestURI).param("q", "chuck")).andExpect(status().isOk())
+					.andExpect(jsonPath("$.size()").value(1)).andExpect(jsonPath("$[0].type").value("author"));
+
+			// The sales committed later reorder the suggestions without a rebuild:
+			newTransaction.executeWithoutResult(
+					status -> salesRanking.addSales(List.of(new CartBook(3, new Cart(false), littleWomen))));
+
+			mockMvc.perform(get(requestURI).param("q", "Lit")).andExpect(status().isOk())
+					.andExpect(jsonPath("$[0].text").value(BOOK_TITLE))
+					.andExpect(jsonPath("$[1].text").value("Little Prince"));
+
+			// The changed and the deleted books are applied without a rebuild:
+			newTransaction.executeWithoutResult(status -> {
+				Book changedBook = bookRepository.findById(books.get(2).getId()).get();
+				changedBook.setTitle("Notre-Dame de Paris");
+			});
+			mockMvc.perform(get(requestURI).param("q", "miser")).andExpect(status().isOk())
+					.andExpect(jsonPath("$.size()").value(0));
+			mockMvc.perform(get(requestURI).param("q", "dame")).andExpect(status().isOk())
+					.andExpect(jsonPath("$[0].text").value("Notre-Dame de Paris"));
+
+			newTransaction.executeWithoutResult(status -> bookRepository.deleteById(littleWomen.getId()));
+			mockMvc.perform(get(requestURI).param("q", "Lit")).andExpect(status().isOk())
+					.andExpect(jsonPath("$.size()").value(1)).andExpect(jsonPath("$[0].text").value("Little Prince"));
+
+			// The author is shared by the books left:
+			mockMvc.perform(get(requestURI).param("q", "chuck")).andExpect(status().isOk())
+					.andExpect(jsonPath("$.size()").value(1));
+		} finally {
+			newTransaction.executeWithoutResult(status -> {
+				Long cartid = order.getCart().getCartid();
+				cartBookRepository.deleteByCartids(List.of(cartid));
+				cartRepository.deleteById(cartid);
+				bookRepository.deleteAll(bookRepository.findAllById(books.stream().map(Book::getId).toList()));
+				books.stream().map(book -> book.getCategory().getCategoryid()).distinct()
+						.forEach(crepository::deleteById);
+			});
+		}
+	}
+
+	@Test
+	@Rollback
+	public void testFilterBooksAllCases() throws Exception {
+		String requestURI = "/filterbooks";
+
+		mockMvc.perform(get(requestURI)).andExpect(status().isOk()).andExpect(jsonPath("$.total").value(0));
+		mockMvc.perform(get(requestURI).param("sort", "isbn")).andExpect(status().isBadRequest());
+
+		Category otherCategory = this.createCategory(OTHER_CATEGORY);
+		Category romanceCategory = this.createCategory(ROMANCE_CATEGORY);
+		bookRepository.save(new Book("A", "Ann", "isbnA", 2000, 5, otherCategory, "url"));
+		bookRepository.save(new Book("B", "Bob", "isbnB", 2010, 15, otherCategory, "url"));
+		bookRepository.save(new Book("C", "Ann", "isbnC", 2020, 25, romanceCategory, "url"));
+
+		// Price range and sorting case:
+		mockMvc.perform(get(requestURI).param("minPrice", "10").param("sort", "-price")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.total").value(2)).andExpect(jsonPath("$.books[0].title").value("C"))
+				.andExpect(jsonPath("$.books[1].title").value("B"));
+
+		// The category facet ignores the category condition:
+		mockMvc.perform(get(requestURI).param("categoryid", String.valueOf(otherCategory.getCategoryid())))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.total").value(2))
+				.andExpect(jsonPath("$.categories.size()").value(2))
+				.andExpect(jsonPath("$.authors[0].name").value("Ann")).andExpect(jsonPath("$.authors[0].count").value(1));
+
+		// Author and year range case:
+		mockMvc.perform(get(requestURI).param("author", "ann").param("maxYear", "2010")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.total").value(1)).andExpect(jsonPath("$.books[0].title").value("A"))
+				.andExpect(jsonPath("$.authors.size()").value(2));
+
+		// Pagination case:
+		mockMvc.perform(get(requestURI).param("sort", "title").param("size", "2").param("page", "1"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.total").value(3))
+				.andExpect(jsonPath("$.books.size()").value(1)).andExpect(jsonPath("$.books[0].title").value("C"));
+		mockMvc.perform(get(requestURI).param("size", "100").param("page", String.valueOf(Integer.MAX_VALUE)))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.total").value(3))
+				.andExpect(jsonPath("$.books.size()").value(0));
+	}
+
 	@Test
 	@Rollback
 	public void testGetCategoriesAllCases() throws Exception {
@@ -157,6 +438,25 @@ public class RestPublicControllerTest {
 		assertThat(bookResponse.getCategory().getName()).isEqualTo(OTHER_CATEGORY);
 	}
 
+	@Test
+	@Rollback
+	public void testCachedBookIsReadOnlyCopy() throws Exception {
+		// Arrange
+		Book book = this.createBook(BOOK_TITLE, OTHER_CATEGORY, DEFAULT_PRICE);
+
+		// Act
+		Book cachedBook = catalogCache.getBookById(book.getId()).get();
+
+		// Assert
+		assertThat(cachedBook).isNotSameAs(book);
+		assertThat(cachedBook.getTitle()).isEqualTo(BOOK_TITLE);
+		assertThat(cachedBook.getCategory().getName()).isEqualTo(OTHER_CATEGORY);
+		assertThatThrownBy(() -> cachedBook.setPrice(0)).isInstanceOf(UnsupportedOperationException.class);
+		assertThatThrownBy(() -> cachedBook.getCategory().setName(ROMANCE_CATEGORY))
+				.isInstanceOf(UnsupportedOperationException.class);
+		assertThat(catalogCache.getBookById(book.getId()).get().getPrice()).isEqualTo(DEFAULT_PRICE);
+	}
+
 	@Test
 	@Rollback
 	public void testGetBooksByCategoryAllCases() throws Exception {
@@ -239,12 +539,59 @@ public class RestPublicControllerTest {
 		String requestURI = "/createcart";
 
 		mockMvc.perform(post(requestURI)).andExpect(status().isOk()).andExpect(jsonPath("$.id").exists())
-				.andExpect(jsonPath("$.password").exists());
+				.andExpect(jsonPath("$.password").exists()).andExpect(jsonPath("$.token").exists());
 
 		List<Cart> carts = (List<Cart>) cartRepository.findAll();
 		assertThat(carts).hasSize(1);
 	}
 
+	@Nested
+	class testGetCartToken {
+		@Test
+		@Rollback
+		public void testGetCartTokenWrongPasswordCase() throws Exception {
+			String requestURI = "/carttoken";
+
+			Cart cart = createCartNoUser(true);
+			Long cartid = cart.getCartid();
+
+			CartInfo cartInfoWrongPwd = new CartInfo(cartid, WRONG_PWD);
+			String requestBodyWrongPwd = objectMapper.writeValueAsString(cartInfoWrongPwd);
+			mockMvc.perform(post(requestURI).contentType(MediaType.APPLICATION_JSON).content(requestBodyWrongPwd))
+					.andExpect(status().isBadRequest());
+		}
+
+		@Test
+		@Rollback
+		public void testGetCartTokenGoodCase() throws Exception {
+			String requestURI = "/carttoken";
+
+			Cart cart = createCartNoUser(true);
+			Long cartid = cart.getCartid();
+
+			CartInfo cartInfo = new CartInfo(cartid, DEFAULT_PASSWORD);
+			String requestBody = objectMapper.writeValueAsString(cartInfo);
+			MvcResult result = mockMvc
+					.perform(post(requestURI).contentType(MediaType.APPLICATION_JSON).content(requestBody))
+					.andExpect(status().isOk()).andExpect(jsonPath("$.id").value(cartid))
+					.andExpect(jsonPath("$.token").exists()).andReturn();
+			CartInfo cartTokenInfo = objectMapper.readValue(result.getResponse().getContentAsString(), CartInfo.class);
+
+			// The token is accepted instead of the password:
+			CartInfo cartInfoWithToken = new CartInfo(cartid, null, cartTokenInfo.getToken());
+			String requestBodyWithToken = objectMapper.writeValueAsString(cartInfoWithToken);
+			mockMvc.perform(post("/showcart").contentType(MediaType.APPLICATION_JSON).content(requestBodyWithToken))
+					.andExpect(status().isOk()).andExpect(jsonPath("$.size()").value(0));
+
+			// The token is issued for the certain cart only:
+			Cart otherCart = createCartNoUser(false);
+			CartInfo otherCartInfo = new CartInfo(otherCart.getCartid(), null, cartTokenInfo.getToken());
+			String requestBodyOtherCart = objectMapper.writeValueAsString(otherCartInfo);
+			mockMvc.perform(post("/showcart").contentType(MediaType.APPLICATION_JSON).content(requestBodyOtherCart))
+					.andExpect(status().isBadRequest());
+		}
+	}
+
 	@Nested
 	class testAddBookToCartNoAuthentication {
 		@Test
@@ -359,6 +706,142 @@ public class RestPublicControllerTest {
 			assertThat(cartBooks).hasSize(1);
 			assertThat(cartBooks.get(0).getQuantity()).isEqualTo(4);
 		}
+
+		// Concurrent additions and reductions in one cart leave the totals of the
+		// cart equal to the sums over its lines. The cart and the books are
+		// committed so that the requests run in their own transactions:
+		@Test
+		@Rollback
+		public void testAddAndReduceConcurrentlyKeepsCartTotalsCase() throws Exception {
+			TransactionTemplate newTransaction = new TransactionTemplate(transactionManager);
+			newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+			Category category = newTransaction.execute(status -> crepository.save(new Category(CONCURRENCY_CATEGORY)));
+			Book addedBook = newTransaction.execute(status -> bookRepository
+					.save(new Book("Added", "Author", "isbnAdded", 2000, DEFAULT_PRICE, category, "url")));
+			Book reducedBook = newTransaction.execute(status -> bookRepository
+					.save(new Book("Reduced", "Author", "isbnReduced", 2000, 2 * DEFAULT_PRICE, category, "url")));
+			Cart cart = newTransaction.execute(status -> {
+				Cart newCart = cartRepository.save(new Cart(true));
+				cartBookRepository.save(new CartBook(CONCURRENT_REQUESTS, newCart, reducedBook));
+				cartRepository.refreshTotals(newCart.getCartid());
+				return newCart;
+			});
+			Long cartid = cart.getCartid();
+			ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_REQUESTS);
+
+			try {
+				String addBody = objectMapper
+						.writeValueAsString(new BookQuantityInfo(1, addedBook.getId(), DEFAULT_PASSWORD));
+				String reduceBody = objectMapper.writeValueAsString(new CartInfo(cartid, DEFAULT_PASSWORD));
+
+				CountDownLatch start = new CountDownLatch(1);
+				List<Future<Integer>> statuses = new ArrayList<>();
+				for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+					boolean add = i % 2 == 0;
+					statuses.add(executor.submit(() -> {
+						start.await();
+						if (add)
+							return mockMvc.perform(post("/addbook/" + cartid).contentType(MediaType.APPLICATION_JSON)
+									.content(addBody)).andReturn().getResponse().getStatus();
+
+						return mockMvc.perform(put("/reduceitemnoauth/" + reducedBook.getId())
+								.contentType(MediaType.APPLICATION_JSON).content(reduceBody)).andReturn()
+								.getResponse().getStatus();
+					}));
+				}
+				start.countDown();
+
+				for (Future<Integer> requestStatus : statuses)
+					assertThat(requestStatus.get()).isEqualTo(200);
+
+				Cart changedCart = cartRepository.findById(cartid).get();
+				List<CartBook> lines = cartBookRepository.findByCart(changedCart);
+				int quantitySum = lines.stream().mapToInt(CartBook::getQuantity).sum();
+				double amountSum = lines.stream()
+						.mapToDouble(line -> line.getQuantity() * line.getBook().getPrice()).sum();
+
+				assertThat(quantitySum).isEqualTo(CONCURRENT_REQUESTS);
+				assertThat(changedCart.getItemCount()).isEqualTo(quantitySum);
+				assertThat(changedCart.getTotalAmount()).isEqualTo(amountSum);
+			} finally {
+				executor.shutdown();
+				newTransaction.executeWithoutResult(status -> {
+					cartBookRepository.deleteByCartids(List.of(cartid));
+					cartRepository.deleteById(cartid);
+					bookRepository.deleteAll(List.of(addedBook, reducedBook));
+					crepository.deleteById(category.getCategoryid());
+				});
+			}
+		}
+	}
+
+	@Nested
+	class testChangeBooksInCartNoAuthentication {
+		@Test
+		@Rollback
+		public void testChangeBooksInCartNoAuthenticationWrongPasswordCase() throws Exception {
+			String requestURI = "/changebooks/";
+
+			Cart cart = createCartNoUser(true);
+			Book book = createBook(BOOK_TITLE, OTHER_CATEGORY, DEFAULT_PRICE);
+
+			CartChangesInfo cartChangesInfo = new CartChangesInfo(List.of(new CartChange(book.getId(), 1)),
+					WRONG_PWD, null);
+			String requestBody = objectMapper.writeValueAsString(cartChangesInfo);
+			mockMvc.perform(post(requestURI + cart.getCartid()).contentType(MediaType.APPLICATION_JSON)
+					.content(requestBody)).andExpect(status().isBadRequest());
+		}
+
+		@Test
+		@Rollback
+		public void testChangeBooksInCartNoAuthenticationEmptyChangesCase() throws Exception {
+			String requestURI = "/changebooks/";
+
+			Cart cart = createCartNoUser(true);
+
+			CartChangesInfo cartChangesInfo = new CartChangesInfo(new ArrayList<CartChange>(), DEFAULT_PASSWORD,
+					null);
+			String requestBody = objectMapper.writeValueAsString(cartChangesInfo);
+			MvcResult result = mockMvc.perform(post(requestURI + cart.getCartid())
+					.contentType(MediaType.APPLICATION_JSON).content(requestBody)).andExpect(status().isBadRequest())
+					.andReturn();
+			assertThat(result.getResponse().getErrorMessage()).isEqualTo("The list of changes is empty");
+		}
+
+		@Test
+		@Rollback
+		public void testChangeBooksInCartNoAuthenticationGoodCase() throws Exception {
+			String requestURI = "/changebooks/";
+
+			Cart cart = createCartNoUser(true);
+			Book book1 = createBook(BOOK_TITLE, OTHER_CATEGORY, DEFAULT_PRICE);
+			Book book2 = createBook(BOOK_TITLE + " 2", OTHER_CATEGORY, DEFAULT_PRICE);
+			Book book3 = createBook(BOOK_TITLE + " 3", OTHER_CATEGORY, DEFAULT_PRICE);
+			createCartBookCustomQuantity(2, book1, cart);
+			createCartBookCustomQuantity(1, book2, cart);
+
+			List<CartChange> changes = List.of(new CartChange(book1.getId(), 3), new CartChange(book2.getId(), -1),
+					new CartChange(book3.getId(), 2));
+			CartChangesInfo cartChangesInfo = new CartChangesInfo(changes, DEFAULT_PASSWORD, null);
+			String requestBody = objectMapper.writeValueAsString(cartChangesInfo);
+			mockMvc.perform(post(requestURI + cart.getCartid()).contentType(MediaType.APPLICATION_JSON)
+					.content(requestBody)).andExpect(status().isOk());
+
+			Optional<CartBook> optionalCartBook1 = cartBookRepository
+					.findById(new CartBookKey(cart.getCartid(), book1.getId()));
+			assertThat(optionalCartBook1).isPresent();
+			assertThat(optionalCartBook1.get().getQuantity()).isEqualTo(5);
+
+			Optional<CartBook> optionalCartBook2 = cartBookRepository
+					.findById(new CartBookKey(cart.getCartid(), book2.getId()));
+			assertThat(optionalCartBook2).isNotPresent();
+
+			Optional<CartBook> optionalCartBook3 = cartBookRepository
+					.findById(new CartBookKey(cart.getCartid(), book3.getId()));
+			assertThat(optionalCartBook3).isPresent();
+			assertThat(optionalCartBook3.get().getQuantity()).isEqualTo(2);
+		}
 	}
 
 	@Nested
@@ -406,6 +889,37 @@ public class RestPublicControllerTest {
 		}
 	}
 
+	@Test
+	@Rollback
+	public void testGetCartViewNoAuthenticationAllCases() throws Exception {
+		String requestURI = "/cartview";
+
+		Cart cart = createCartNoUser(true);
+		Long cartid = cart.getCartid();
+
+		// Wrong password case:
+		String requestBodyWrongPwd = objectMapper.writeValueAsString(new CartInfo(cartid, WRONG_PWD));
+		mockMvc.perform(post(requestURI).contentType(MediaType.APPLICATION_JSON).content(requestBodyWrongPwd))
+				.andExpect(status().isBadRequest());
+
+		// Empty cart case:
+		String requestBody = objectMapper.writeValueAsString(new CartInfo(cartid, DEFAULT_PASSWORD));
+		mockMvc.perform(post(requestURI).contentType(MediaType.APPLICATION_JSON).content(requestBody))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.books.size()").value(0))
+				.andExpect(jsonPath("$.items").value(0));
+
+		// Good case:
+		Book book1 = createBook(BOOK_TITLE, OTHER_CATEGORY, DEFAULT_PRICE);
+		Book book2 = createBook(BOOK_TITLE + " 2", ROMANCE_CATEGORY, DEFAULT_PRICE);
+		createCartBookCustomQuantity(1, book1, cart);
+		createCartBookCustomQuantity(3, book2, cart);
+
+		mockMvc.perform(post(requestURI).contentType(MediaType.APPLICATION_JSON).content(requestBody))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.cartid").value(cartid))
+				.andExpect(jsonPath("$.books.size()").value(2)).andExpect(jsonPath("$.total").value(DEFAULT_PRICE * 4))
+				.andExpect(jsonPath("$.items").value(4));
+	}
+
 	@Nested
 	class testGetBooksInCartByIdAndPassword {
 		@Test
@@ -1000,6 +1514,98 @@ public class RestPublicControllerTest {
 
 			assertThat(cart.isCurrent()).isFalse();
 		}
+
+		@Test
+		@Rollback
+		public void testMakeSaleNoAuthenticationOrderKeepsPricesCase() throws Exception {
+			String requestURI = "/makesale";
+
+			Cart cart = createCartNoUser(true);
+			Long bakcetId = cart.getCartid();
+
+			Book book1 = createBook(BOOK_TITLE, OTHER_CATEGORY, DEFAULT_PRICE);
+			createCartBookCustomQuantity(2, book1, cart);
+
+			AddressInfoNoAuthentication addressInfo = new AddressInfoNoAuthentication(FIRSTNAME, LASTNAME, COUNTRY,
+					CITY, STREET, POSTCODE, EMAIL, NOTE, bakcetId, DEFAULT_PASSWORD);
+			String requestBody = objectMapper.writeValueAsString(addressInfo);
+
+			MvcResult result = mockMvc
+					.perform(post(requestURI).contentType(MediaType.APPLICATION_JSON).content(requestBody))
+					.andExpect(status().isOk()).andReturn();
+			Long orderId = objectMapper.readTree(result.getResponse().getContentAsString()).get("orderid").asLong();
+
+			// The order lines keep the price and the title of the checkout:
+			book1.setPrice(DEFAULT_PRICE * 2);
+			book1.setTitle(BOOK_TITLE + " edited");
+			bookRepository.save(book1);
+
+			mockMvc.perform(get("/getordertotal/" + orderId)).andExpect(status().isOk())
+					.andExpect(jsonPath("$.total").value(DEFAULT_PRICE * 2));
+			mockMvc.perform(get("/booksinorder/" + orderId)).andExpect(status().isOk())
+					.andExpect(jsonPath("$.size()").value(1)).andExpect(jsonPath("$[0].price").value(DEFAULT_PRICE))
+					.andExpect(jsonPath("$[0].title").value(BOOK_TITLE))
+					.andExpect(jsonPath("$[0].quantity").value(2));
+		}
+		// Concurrent checkouts of one cart make one order, the others find the
+		// cart closed. The cart and the book are committed so that the requests
+		// run in their own transactions:
+		@Test
+		@Rollback
+		public void testMakeSaleNoAuthenticationConcurrentCheckoutsCase() throws Exception {
+			TransactionTemplate newTransaction = new TransactionTemplate(transactionManager);
+			newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+			Category category = newTransaction.execute(status -> crepository.save(new Category(CONCURRENCY_CATEGORY)));
+			Book book = newTransaction.execute(status -> bookRepository
+					.save(new Book("Checked out", "Author", "isbnCheckedOut", 2000, DEFAULT_PRICE, category, "url")));
+			Cart cart = newTransaction.execute(status -> {
+				Cart newCart = cartRepository.save(new Cart(true));
+				cartBookRepository.save(new CartBook(1, newCart, book));
+				cartRepository.refreshTotals(newCart.getCartid());
+				return newCart;
+			});
+			Long cartid = cart.getCartid();
+			ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_REQUESTS);
+
+			try {
+				String requestBody = objectMapper.writeValueAsString(new AddressInfoNoAuthentication(FIRSTNAME,
+						LASTNAME, COUNTRY, CITY, STREET, POSTCODE, EMAIL, NOTE, cartid, DEFAULT_PASSWORD));
+
+				CountDownLatch start = new CountDownLatch(1);
+				List<Future<Integer>> statuses = new ArrayList<>();
+				for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+					statuses.add(executor.submit(() -> {
+						start.await();
+						return mockMvc.perform(
+								post("/makesale").contentType(MediaType.APPLICATION_JSON).content(requestBody))
+								.andReturn().getResponse().getStatus();
+					}));
+				}
+				start.countDown();
+
+				List<Integer> responseStatuses = new ArrayList<>();
+				for (Future<Integer> requestStatus : statuses)
+					responseStatuses.add(requestStatus.get());
+
+				assertThat(responseStatuses).containsOnlyOnce(200);
+				assertThat(responseStatuses).filteredOn(responseStatus -> responseStatus != 200).containsOnly(409);
+			} finally {
+				executor.shutdown();
+				newTransaction.executeWithoutResult(status -> {
+					Order order = cartRepository.findById(cartid).get().getOrder();
+					if (order != null) {
+						orderLineRepository.deleteAll(((List<OrderLine>) orderLineRepository.findAll()).stream()
+								.filter(line -> line.getOrder().getOrderid().equals(order.getOrderid())).toList());
+						orepository.delete(order);
+					}
+					cartBookRepository.deleteByCartids(List.of(cartid));
+					cartRepository.deleteById(cartid);
+					bookRepository.delete(book);
+					crepository.deleteById(category.getCategoryid());
+				});
+			}
+		}
 	}
 
 	@Nested
@@ -1017,6 +1623,9 @@ public class RestPublicControllerTest {
 
 			createOrderWithDefaultStatusNoUser(2, booksInOrder, DEFAULT_PASSWORD);
 			createOrderWithDefaultStatusNoUser(2, booksInOrder, DEFAULT_PASSWORD);
+			// The orders are created directly in the repository, so the ranking is
+			// rebuilt from the closed carts:
+			salesRanking.rebuild();
 
 			mockMvc.perform(get(requestURI)).andExpect(status().isOk()).andExpect(jsonPath("$.size()").value(2));
 		}
@@ -1281,14 +1890,16 @@ public class RestPublicControllerTest {
 			user.setAccountVerified(true);
 			urepository.save(user);
 
-			// By username case:
+			// By username case, the password is checked by the PasswordHashingService:
 			AccountCredentials credentials = new AccountCredentials(USERNAME, DEFAULT_PASSWORD);
 			String requestBody = objectMapper.writeValueAsString(credentials);
+			long verifyCount = passwordHashingService.getVerifyCount();
 
 			mockMvc.perform(post(requestURI).contentType(MediaType.APPLICATION_JSON).content(requestBody))
 					.andExpect(status().isOk())
 					.andExpect(header().string("Authorization", Matchers.containsString("Bearer")))
 					.andExpect(header().string("Allow", "USER"));
+			assertThat(passwordHashingService.getVerifyCount()).isEqualTo(verifyCount + 1);
 
 			// By email case:
 			credentials = new AccountCredentials(EMAIL, DEFAULT_PASSWORD);
@@ -1574,6 +2185,7 @@ public class RestPublicControllerTest {
 	private CartBook createCartBookCustomQuantity(int quantity, Book book, Cart cart) {
 		CartBook newCartBook = new CartBook(quantity, cart, book);
 		cartBookRepository.save(newCartBook);
+		cartRepository.refreshTotals(cart.getCartid());
 
 		return newCartBook;
 	}
@@ -0,0 +1,264 @@
+package com.pro.mybooklist.resttest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import java.util.Optional;
+
+import com.pro.mybooklist.model.*;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.annotation.Rollback;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pro.mybooklist.httpforms.AccountCredentials;
+import com.pro.mybooklist.httpforms.OrderPasswordInfo;
+import com.pro.mybooklist.model.Cart;
+import com.pro.mybooklist.service.PrincipalCache;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.transaction.Transactional;
+
+// Counts the SQL statements of the endpoints that serialize entities. The
+// persistence context is flushed and cleared before every request, so each
+// association is loaded from the database as it would be in a new request.
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+@TestInstance(Lifecycle.PER_CLASS)
+@Transactional
+public class RestQueryCountTest {
+	private static final String OTHER_CATEGORY = "Other";
+	private static final String ROMANCE_CATEGORY = "Romance";
+	private static final String HORROR_CATEGORY = "Horror";
+	private static final Double DEFAULT_PRICE = 10.5;
+
+	private static final String FIRSTNAME = "John";
+	private static final String LASTNAME = "Doe";
+	private static final String COUNTRY = "Finland";
+	private static final String CITY = "Helsinki";
+	private static final String STREET = "Kitarakuja 3B";
+	private static final String POSTCODE = "00410";
+	private static final String NOTE = "Complete my order quickly";
+
+	private static final String USERNAME = "user1";
+	private static final String EMAIL = "user1@mail.com";
+	private static final String ADMIN_USERNAME = "admin";
+	private static final String ADMIN_EMAIL = "admin@mail.com";
+
+	private static final String DEFAULT_PASSWORD = "test";
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private CategoryRepository crepository;
+
+	@Autowired
+	private UserRepository urepository;
+
+	@Autowired
+	private CartRepository cartRepository;
+
+	@Autowired
+	private BookRepository bookRepository;
+
+	@Autowired
+	private CartBookRepository cartBookRepository;
+
+	@Autowired
+	private OrderRepository orepository;
+
+	@Autowired
+	private PrincipalCache principalCache;
+
+	private String jwt;
+	private Long adminId;
+
+	@BeforeAll
+	public void setUp() throws Exception {
+		this.resetRepos();
+		this.getToken();
+	}
+
+	@Test
+	@Rollback
+	public void testGetBooksQueryCount() throws Exception {
+		this.createBook("Book 1", OTHER_CATEGORY);
+		this.createBook("Book 2", ROMANCE_CATEGORY);
+		this.createBook("Book 3", HORROR_CATEGORY);
+
+		// The catalog is loaded with the categories of the books in one query:
+		long statements = this.countStatements(get("/books"));
+		assertThat(statements).isEqualTo(2);
+	}
+
+	@Test
+	@Rollback
+	public void testGetOrdersQueryCount() throws Exception {
+		this.createOrder(this.createUser(USERNAME, EMAIL));
+		long statementsOneOrder = this.countStatements(get("/orders").header("Authorization", jwt));
+
+		this.createOrder(this.createUser(USERNAME + "2", "2" + EMAIL));
+		this.createOrder(null);
+		long statementsThreeOrders = this.countStatements(get("/orders").header("Authorization", jwt));
+
+		assertThat(statementsThreeOrders).isEqualTo(statementsOneOrder).isEqualTo(1);
+	}
+
+	@Test
+	@Rollback
+	public void testGetOrderByIdQueryCount() throws Exception {
+		Order order = this.createOrder(this.createUser(USERNAME, EMAIL));
+
+		long statements = this.countStatements(get("/orders/" + order.getOrderid()).header("Authorization", jwt));
+		assertThat(statements).isEqualTo(1);
+	}
+
+	@Test
+	@Rollback
+	public void testGetOrderByPasswordQueryCount() throws Exception {
+		Order order = this.createOrder(null);
+
+		OrderPasswordInfo orderInfo = new OrderPasswordInfo(order.getOrderid(), DEFAULT_PASSWORD);
+		String requestBody = objectMapper.writeValueAsString(orderInfo);
+
+		long statements = this.countStatements(
+				post("/orderbypassword").contentType(MediaType.APPLICATION_JSON).content(requestBody));
+		assertThat(statements).isEqualTo(1);
+	}
+
+	@Test
+	@Rollback
+	public void testGetOrdersOfUserQueryCount() throws Exception {
+		User admin = urepository.findById(adminId).get();
+
+		this.createOrder(admin);
+		long statementsOneOrder = this.countStatements(get("/users/" + adminId + "/orders").header("Authorization", jwt));
+
+		this.createOrder(admin);
+		this.createOrder(admin);
+		long statementsThreeOrders = this
+				.countStatements(get("/users/" + adminId + "/orders").header("Authorization", jwt));
+
+		assertThat(statementsThreeOrders).isEqualTo(statementsOneOrder);
+	}
+
+	private long countStatements(RequestBuilder request) throws Exception {
+		entityManager.flush();
+		entityManager.clear();
+
+		// The principal of the token is cached before counting, so the count
+		// doesn't depend on the order of the tests:
+		principalCache.getPrincipal(ADMIN_USERNAME);
+
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		mockMvc.perform(request).andExpect(status().isOk());
+
+		return statistics.getPrepareStatementCount();
+	}
+
+	private Order createOrder(User user) {
+		Cart cart = user == null ? new Cart(false) : new Cart(false, user);
+		cartRepository.save(cart);
+
+		Book book1 = this.createBook("Order book 1", OTHER_CATEGORY);
+		Book book2 = this.createBook("Order book 2", ROMANCE_CATEGORY);
+		cartBookRepository.save(new CartBook(1, cart, book1));
+		cartBookRepository.save(new CartBook(2, cart, book2));
+
+		Order order = new Order(FIRSTNAME, LASTNAME, COUNTRY, CITY, STREET, POSTCODE, EMAIL, cart, NOTE,
+				this.encodePassword(DEFAULT_PASSWORD));
+		orepository.save(order);
+
+		return order;
+	}
+
+	private User createUser(String username, String email) {
+		User user = new User(FIRSTNAME, LASTNAME, username, this.encodePassword(DEFAULT_PASSWORD), "USER", email,
+				true);
+		urepository.save(user);
+
+		return user;
+	}
+
+	private Book createBook(String title, String categoryName) {
+		Optional<Book> bookByIsbn = bookRepository.findByIsbn(title + "isbn");
+		if (bookByIsbn.isPresent())
+			return bookByIsbn.get();
+
+		Category category = this.createCategory(categoryName);
+		Book newBook = new Book(title, "Chuck Palahniuk", title + "isbn", 1998, DEFAULT_PRICE, category,
+				"someurlToPicture");
+		bookRepository.save(newBook);
+
+		return newBook;
+	}
+
+	private Category createCategory(String categoryName) {
+		Optional<Category> optionalCategory = crepository.findByName(categoryName);
+		if (optionalCategory.isPresent())
+			return optionalCategory.get();
+
+		Category category = new Category(categoryName);
+		crepository.save(category);
+
+		return category;
+	}
+
+	private String encodePassword(String password) {
+		BCryptPasswordEncoder bc = new BCryptPasswordEncoder();
+		String hashPwd = bc.encode(password);
+
+		return hashPwd;
+	}
+
+	private void resetRepos() {
+		crepository.deleteAll();
+		urepository.deleteAll();
+		cartRepository.deleteAll();
+		bookRepository.deleteAll();
+		cartBookRepository.deleteAll();
+		orepository.deleteAll();
+	}
+
+	private void getToken() throws Exception {
+		String hashPwd = this.encodePassword(DEFAULT_PASSWORD);
+		User admin = new User(FIRSTNAME, FIRSTNAME, ADMIN_USERNAME, hashPwd, "ADMIN", ADMIN_EMAIL, true);
+		urepository.save(admin);
+		cartRepository.save(new Cart(true, admin));
+
+		AccountCredentials creds = new AccountCredentials(ADMIN_USERNAME, DEFAULT_PASSWORD);
+		String requestBody = objectMapper.writeValueAsString(creds);
+		MvcResult result = mockMvc
+				.perform(post("/login").contentType(MediaType.APPLICATION_JSON).content(requestBody))
+				.andExpect(status().isOk()).andReturn();
+
+		jwt = result.getResponse().getHeader("Authorization");
+		adminId = Long.valueOf(result.getResponse().getHeader("Host"));
+	}
+}